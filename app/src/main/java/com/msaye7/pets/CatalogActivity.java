@@ -1,27 +1,49 @@
 package com.msaye7.pets;
 
+import android.content.ContentResolver;
 import android.content.ContentUris;
-import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.RelativeLayout;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.msaye7.pets.data.Pet;
+import com.msaye7.pets.data.PetContract;
 import com.msaye7.pets.data.PetContract.PetEntry;
+import com.msaye7.pets.data.PetDataGenerator;
+import com.msaye7.pets.data.ProgressListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Displays list of pets that were entered and stored in the app.
@@ -31,10 +53,155 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
     // LOG_TAG of the class.
     private static final String LOG_TAG = CatalogActivity.class.getSimpleName();
 
-    PetCursorAdapter mAdapter;
+    PetAdapter mAdapter;
+
+    private LinearLayoutManager mLayoutManager;
+
+    private RelativeLayout mEmptyView;
 
+    /** reads ahead the details of the shown pets, handed to the editor with the pet. */
+    private PetPrefetcher mPrefetcher;
+
+    /**
+     * id of the loader of the first page. The loader of page i uses LOADER_ID + i.
+     */
     private static final int LOADER_ID = 0;
 
+    /** id of the loader of the search results, below the ids used by the pages. */
+    private static final int SEARCH_LOADER_ID = LOADER_ID - 1;
+
+    /** how long the user has to stop typing before the search runs, in milliseconds. */
+    private static final long SEARCH_DELAY_MS = 300;
+
+    /** loader argument holding the search query. */
+    private static final String ARG_QUERY = "query";
+
+    /** number of pets loaded per page, the provider reads the first one ahead at startup. */
+    private static final int PAGE_SIZE = PetEntry.CATALOG_PAGE_SIZE;
+
+    /** how close to the end of the loaded pets the list can scroll before the next page loads. */
+    private static final int PREFETCH_DISTANCE = 15;
+
+    /** loader arguments holding the _ID and the sort key of the last pet of the previous page. */
+    private static final String ARG_AFTER_ID = "after_id";
+    private static final String ARG_AFTER_KEY = "after_key";
+
+    /** loader arguments holding the end of a page read again, see {@link Page#mEndId}. */
+    private static final String ARG_UNTIL_ID = "until_id";
+    private static final String ARG_UNTIL_KEY = "until_key";
+
+    /** the loaded pages in order, page i holds the pets of the loader LOADER_ID + i. */
+    private final List<Page> mPages = new ArrayList<>();
+
+    private boolean mLoadingPage;
+
+    /** set while the adapter shows the loaded pages, then only the reloaded pages are compared. */
+    private boolean mPagesShown;
+
+    /** the pages to reload because their pets changed, by index. */
+    private final SparseBooleanArray mPagesToReload = new SparseBooleanArray();
+
+    /** the _IDs of the changed pets whose page in a sorted order is unknown. */
+    private final Set<Long> mPetsToLocate = new LinkedHashSet<>();
+
+    /** reads the changed pets to find the pages of a sorted order they belong to. */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /** number of pets inserted by the "Insert dummy data" menu option. */
+    private static final int DUMMY_DATA_COUNT = 1000;
+
+    /** set while the dummy pets are being inserted. */
+    private boolean mGeneratingPets;
+
+    /** saved state keys of the order and gender filter of the pages. */
+    private static final String STATE_SORT = "sort";
+    private static final String STATE_GENDER = "gender";
+
+    /** the order of the pages, one of the SORT_ values of {@link PetEntry}. */
+    private String mSort = PetEntry.SORT_ID;
+
+    /** the gender of the shown pets, or {@link PetEntry#GENDER_ANY}. */
+    private int mGender = PetEntry.GENDER_ANY;
+
+    /** the results of the current search, or null when the catalog isn't searched. */
+    private List<Pet> mSearchResults;
+
+    private String mPendingQuery;
+
+    /** set once the time to the first pets shown since the process started was reported. */
+    private static boolean sFirstRowsReported;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Reloads the pages of the changed pets, or all the pages when the notification doesn't say
+     * which pets changed. The page loaders don't reload by themselves, see {@link PageLoader}.
+     */
+    private final ContentObserver mPetsObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long[] ids = uri == null ? null : PetEntry.getChangedIds(uri);
+            if (ids == null) {
+                for (int i = 0; i < mPages.size(); i++) {
+                    reloadPage(i);
+                }
+                return;
+            }
+
+            boolean deleted = PetEntry.OPERATION_DELETE.equals(PetEntry.getChangeOperation(uri));
+            for (long id : ids) {
+                // the page the pet was shown in.
+                reloadPage(findShownPage(id));
+
+                // the page the pet is now in. By _ID it doesn't move, and is inserted at its
+                // _ID. The sort key of the other orders has to be read.
+                if (PetEntry.SORT_ID.equals(mSort)) {
+                    reloadPage(findPage(String.valueOf(id), id));
+                } else if (!deleted) {
+                    mPetsToLocate.add(id);
+                    schedulePageReloads();
+                }
+            }
+        }
+    };
+
+    /** reloads the pages of the changed pets, once for all the changes notified together. */
+    private final Runnable mReloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            for (int i = 0; i < mPagesToReload.size(); i++) {
+                int page = mPagesToReload.keyAt(i);
+                if (page >= mPages.size()) {
+                    continue;
+                }
+                if (mPages.get(page).mEnded) {
+                    // the page is read again between the same pets, so the pages after it
+                    // still start where it ends.
+                    getSupportLoaderManager().restartLoader(LOADER_ID + page, getRangeArgs(page), CatalogActivity.this);
+                } else {
+                    Loader<Cursor> loader = getSupportLoaderManager().getLoader(LOADER_ID + page);
+                    if (loader instanceof PageLoader) {
+                        ((PageLoader) loader).reload();
+                    }
+                }
+            }
+            mPagesToReload.clear();
+
+            if (!mPetsToLocate.isEmpty()) {
+                locatePets(new ArrayList<>(mPetsToLocate));
+                mPetsToLocate.clear();
+            }
+        }
+    };
+
+    /** runs the search for the pending query once the user stopped typing. */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            search(mPendingQuery);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -51,23 +218,48 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        getSupportLoaderManager().initLoader(LOADER_ID, null, this);
-
-        mAdapter = new PetCursorAdapter(this, null);
+        if (savedInstanceState != null) {
+            mSort = savedInstanceState.getString(STATE_SORT, PetEntry.SORT_ID);
+            mGender = savedInstanceState.getInt(STATE_GENDER, PetEntry.GENDER_ANY);
+        }
 
-        ListView listView = findViewById(R.id.pet_list_view);
-        listView.setAdapter(mAdapter);
+        getSupportLoaderManager().initLoader(LOADER_ID, null, this);
+        getContentResolver().registerContentObserver(PetEntry.CONTENT_URI, true, mPetsObserver);
 
-        RelativeLayout emptyView = findViewById(R.id.empty_view);
-        listView.setEmptyView(emptyView);
+        // the shelter of the pages, read from the pets uri.
+        mPrefetcher = new PetPrefetcher(this, PetContract.getShelterId(PetEntry.CONTENT_URI));
 
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        mAdapter = new PetAdapter(new PetAdapter.OnPetClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onPetClick(Pet pet) {
                 Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-                intent.setData(ContentUris.withAppendedId(PetEntry.CONTENT_URI, id));
+                intent.setData(ContentUris.withAppendedId(PetEntry.CONTENT_URI, pet.getId()));
+                // the editor shows the pet right away, then reloads it.
+                intent.putExtra(EditorActivity.EXTRA_PET, mPrefetcher.getDetails(pet));
                 startActivity(intent);
             }
+        }, PetThumbnailLoader.getInstance(this));
+
+        RecyclerView recyclerView = findViewById(R.id.pet_list_view);
+        mLayoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(mLayoutManager);
+        recyclerView.setAdapter(mAdapter);
+
+        mEmptyView = findViewById(R.id.empty_view);
+
+        // loads the next page once the user scrolls close to the last loaded pet, and reads
+        // ahead the details of the pets around the shown ones. It is also called with no scroll
+        // when the shown pets change after a layout.
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                int lastVisiblePosition = mLayoutManager.findLastVisibleItemPosition();
+                if (lastVisiblePosition >= mAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+                mPrefetcher.prefetch(mAdapter.getPets(), mLayoutManager.findFirstVisibleItemPosition(),
+                        lastVisiblePosition);
+            }
         });
     }
 
@@ -76,13 +268,82 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+        menu.findItem(getSortItemId(mSort)).setChecked(true);
+        menu.findItem(getGenderItemId(mGender)).setChecked(true);
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mHandler.removeCallbacks(mSearchRunnable);
+                search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // waits for the user to stop typing instead of querying on every key.
+                mPendingQuery = newText;
+                mHandler.removeCallbacks(mSearchRunnable);
+                mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MS);
+                return true;
+            }
+        });
         return true;
     }
 
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SORT, mSort);
+        outState.putInt(STATE_GENDER, mGender);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.removeCallbacks(mReloadRunnable);
+        getContentResolver().unregisterContentObserver(mPetsObserver);
+        mExecutor.shutdownNow();
+        mPrefetcher.close();
+    }
+
+    /**
+     * Shows the pets matching the query instead of the pages, or goes back to the pages when
+     * the query is empty.
+     */
+    private void search(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            if (mSearchResults != null || getSupportLoaderManager().getLoader(SEARCH_LOADER_ID) != null) {
+                getSupportLoaderManager().destroyLoader(SEARCH_LOADER_ID);
+                mSearchResults = null;
+                showPets();
+            }
+            return;
+        }
+
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query.trim());
+        getSupportLoaderManager().restartLoader(SEARCH_LOADER_ID, args, this);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Respond to a click on an order or a gender filter of the pages
+            case R.id.action_sort_by_id:
+            case R.id.action_sort_by_name:
+            case R.id.action_sort_by_weight:
+            case R.id.action_filter_any_gender:
+            case R.id.action_filter_male:
+            case R.id.action_filter_female:
+            case R.id.action_filter_unknown_gender:
+                item.setChecked(true);
+                showPages(getSort(item.getItemId(), mSort), getGender(item.getItemId(), mGender));
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 insertDummyData();
@@ -96,41 +357,527 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Reloads the pages in the given order with the given gender filter. The provider caches
+     * the recent pages, so going back to an order that was just shown doesn't query the
+     * database again.
+     */
+    private void showPages(String sort, int gender) {
+        if (sort.equals(mSort) && gender == mGender) {
+            return;
+        }
+        mSort = sort;
+        mGender = gender;
+
+        // the shown pets stay until the first page in the new order replaces them.
+        dropPagesFrom(0);
+        mPagesShown = false;
+        getSupportLoaderManager().restartLoader(LOADER_ID, null, this);
+    }
+
+    /**
+     * Returns the order selected by the menu item with the given id, or the given order if the
+     * item isn't an order.
+     */
+    private static String getSort(int itemId, String sort) {
+        switch (itemId) {
+            case R.id.action_sort_by_id:
+                return PetEntry.SORT_ID;
+            case R.id.action_sort_by_name:
+                return PetEntry.SORT_NAME;
+            case R.id.action_sort_by_weight:
+                return PetEntry.SORT_WEIGHT;
+            default:
+                return sort;
+        }
+    }
+
+    /**
+     * Returns the gender selected by the menu item with the given id, or the given gender if
+     * the item isn't a gender filter.
+     */
+    private static int getGender(int itemId, int gender) {
+        switch (itemId) {
+            case R.id.action_filter_any_gender:
+                return PetEntry.GENDER_ANY;
+            case R.id.action_filter_male:
+                return PetEntry.GENDER_MALE;
+            case R.id.action_filter_female:
+                return PetEntry.GENDER_FEMALE;
+            case R.id.action_filter_unknown_gender:
+                return PetEntry.GENDER_UNKNOWN;
+            default:
+                return gender;
+        }
+    }
+
+    private static int getSortItemId(String sort) {
+        switch (sort) {
+            case PetEntry.SORT_NAME:
+                return R.id.action_sort_by_name;
+            case PetEntry.SORT_WEIGHT:
+                return R.id.action_sort_by_weight;
+            default:
+                return R.id.action_sort_by_id;
+        }
+    }
+
+    private static int getGenderItemId(int gender) {
+        switch (gender) {
+            case PetEntry.GENDER_MALE:
+                return R.id.action_filter_male;
+            case PetEntry.GENDER_FEMALE:
+                return R.id.action_filter_female;
+            case PetEntry.GENDER_UNKNOWN:
+                return R.id.action_filter_unknown_gender;
+            default:
+                return R.id.action_filter_any_gender;
+        }
+    }
+
+    /**
+     * Inserts {@link #DUMMY_DATA_COUNT} generated pets in the background, showing the progress in
+     * the app bar. The pets are generated from {@link PetDataGenerator#DEFAULT_SEED}, so they are
+     * the same every time.
+     */
     private void insertDummyData(){
-        ContentValues values = new ContentValues();
-        values.put(PetEntry.COLUMN_PET_NAME, "Toto");
-        values.put(PetEntry.COLUMN_PET_BREED, "Terrier");
-        values.put(PetEntry.COLUMN_PET_GENDER, 1);
-        values.put(PetEntry.COLUMN_PET_WEIGHT, 7);
+        if (mGeneratingPets) {
+            return;
+        }
+        mGeneratingPets = true;
+
+        final ContentResolver resolver = getContentResolver();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final int inserted = new PetDataGenerator(PetDataGenerator.DEFAULT_SEED).insertPets(resolver,
+                        DUMMY_DATA_COUNT, new ProgressListener() {
+                            @Override
+                            public void onProgress(final int processedRows, int rejectedRows) {
+                                runOnUiThread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        showGeneratorProgress(processedRows);
+                                    }
+                                });
+                            }
+                        });
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mGeneratingPets = false;
+                        if (getSupportActionBar() != null) {
+                            getSupportActionBar().setSubtitle(null);
+                        }
+                        Toast.makeText(CatalogActivity.this, getString(R.string.inserted_pets, inserted),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        }, "PetDataGenerator").start();
+    }
+
+    private void showGeneratorProgress(int processedRows) {
+        if (mGeneratingPets && getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(getString(R.string.inserting_pets, processedRows, DUMMY_DATA_COUNT));
+        }
+    }
+
+    /**
+     * Starts loading the page after the last loaded one, unless a page is already loading or the
+     * last page wasn't full, which means there are no more pets.
+     */
+    private void loadNextPage() {
+        if (mLoadingPage || mPages.isEmpty() || mSearchResults != null) {
+            return;
+        }
+
+        Page lastPage = mPages.get(mPages.size() - 1);
+        if (!lastPage.mEnded) {
+            return;
+        }
+
+        // the page starts at the end of the last page, which is still right once its last pet
+        // is deleted.
+        mLoadingPage = true;
+        Bundle args = new Bundle();
+        args.putLong(ARG_AFTER_ID, lastPage.mEndId);
+        args.putString(ARG_AFTER_KEY, lastPage.mEndKey);
+        getSupportLoaderManager().restartLoader(LOADER_ID + mPages.size(), args, this);
+    }
+
+    /**
+     * Returns the loader arguments reading the loaded page with the given index again, from the
+     * end of the previous page to its own end.
+     */
+    private Bundle getRangeArgs(int page) {
+        Bundle args = new Bundle();
+        if (page > 0) {
+            Page previousPage = mPages.get(page - 1);
+            args.putLong(ARG_AFTER_ID, previousPage.mEndId);
+            args.putString(ARG_AFTER_KEY, previousPage.mEndKey);
+        }
+        args.putLong(ARG_UNTIL_ID, mPages.get(page).mEndId);
+        args.putString(ARG_UNTIL_KEY, mPages.get(page).mEndKey);
+        return args;
+    }
+
+    /**
+     * Reloads the page with the given index once the current changes are all notified. Does
+     * nothing if the index isn't the one of a loaded page.
+     */
+    private void reloadPage(int page) {
+        if (page < 0 || page >= mPages.size()) {
+            return;
+        }
+        mPagesToReload.put(page, true);
+        schedulePageReloads();
+    }
+
+    private void schedulePageReloads() {
+        mHandler.removeCallbacks(mReloadRunnable);
+        mHandler.post(mReloadRunnable);
+    }
+
+    /**
+     * Returns the index of the loaded page showing the pet with the given _ID, or -1 if none.
+     */
+    private int findShownPage(long id) {
+        for (int i = 0; i < mPages.size(); i++) {
+            for (Pet pet : mPages.get(i).mPets) {
+                if (pet.getId() == id) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the loaded page a pet with the given sort key and _ID belongs to, in
+     * the current order, or -1 if it comes after the loaded pages.
+     */
+    private int findPage(String key, long id) {
+        for (int i = 0; i < mPages.size(); i++) {
+            Page page = mPages.get(i);
+            // the last page holds all the pets after the other ones until it is full.
+            if (!page.mEnded) {
+                return i;
+            }
+            int order = compareKeys(key, page.mEndKey);
+            if (order < 0 || (order == 0 && id <= page.mEndId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares two sort keys of the current order, like the provider does. A null key, of a
+     * pet without weight, comes first.
+     */
+    private int compareKeys(String key, String otherKey) {
+        if (key == null || otherKey == null) {
+            return key == null ? (otherKey == null ? 0 : -1) : 1;
+        }
+        if (PetEntry.SORT_NAME.equals(mSort)) {
+            return compareNames(key, otherKey);
+        }
+        return Long.compare(Long.parseLong(key), Long.parseLong(otherKey));
+    }
+
+    /**
+     * Compares two names like the NOCASE collation of the name index, which only ignores the
+     * case of the ASCII letters.
+     */
+    private static int compareNames(String name, String otherName) {
+        int length = Math.min(name.length(), otherName.length());
+        for (int i = 0; i < length; i++) {
+            int order = Character.compare(toLowerAscii(name.charAt(i)), toLowerAscii(otherName.charAt(i)));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(name.length(), otherName.length());
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+    }
+
+    /**
+     * Reads the pets with the given _IDs in the background, then reloads the pages of the
+     * current order they belong to. The pets are read at most {@link PetEntry#MAX_IDS} at a time.
+     */
+    private void locatePets(final List<Long> ids) {
+        final ContentResolver resolver = getContentResolver();
+        final String sort = mSort;
+        final int gender = mGender;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int start = 0; start < ids.size(); start += PetEntry.MAX_IDS) {
+                    long[] chunk = new long[Math.min(PetEntry.MAX_IDS, ids.size() - start)];
+                    for (int i = 0; i < chunk.length; i++) {
+                        chunk[i] = ids.get(start + i);
+                    }
+
+                    final List<Pet> pets;
+                    Cursor cursor = null;
+                    try {
+                        cursor = resolver.query(PetEntry.buildPetsUri(chunk), PetEntry.DETAIL_PROJECTION,
+                                null, null, null);
+                        if (cursor == null) {
+                            return;
+                        }
+                        pets = Pet.fromCursor(cursor);
+                    } catch (RuntimeException e) {
+                        Log.w(LOG_TAG, "Cannot read " + chunk.length + " changed pets", e);
+                        return;
+                    } finally {
+                        if (cursor != null) {
+                            cursor.close();
+                        }
+                    }
+
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            // the pages were replaced by the ones of another order.
+                            if (!sort.equals(mSort) || gender != mGender) {
+                                return;
+                            }
+                            for (Pet pet : pets) {
+                                if (gender == PetEntry.GENDER_ANY || pet.getGender() == gender) {
+                                    String key = PetEntry.SORT_NAME.equals(sort) ? pet.getName()
+                                            : String.valueOf(pet.getWeight());
+                                    reloadPage(findPage(key, pet.getId()));
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the pages starting from the given one and destroys their loaders.
+     */
+    private void dropPagesFrom(int page) {
+        for (int i = mPages.size() - 1; i >= page; i--) {
+            mPages.remove(i);
+            getSupportLoaderManager().destroyLoader(LOADER_ID + i);
+        }
+        mLoadingPage = false;
+    }
+
+    /**
+     * Shows the search results, or all the loaded pages when the catalog isn't searched.
+     */
+    private void showPets() {
+        List<Pet> pets = mSearchResults != null ? mSearchResults : getPagedPets();
+        mPagesShown = mSearchResults == null;
+        mAdapter.setPets(pets);
+        mEmptyView.setVisibility(pets.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Shows the loaded pages once the count shown pets from start were replaced by the newCount
+     * pets of a loaded page. The adapter only compares that range with the shown pets, and
+     * rebinds the rows that changed.
+     */
+    private void showPets(int start, int count, int newCount) {
+        if (mSearchResults != null) {
+            return;
+        }
+        if (!mPagesShown) {
+            showPets();
+            return;
+        }
+
+        List<Pet> pets = getPagedPets();
+        mAdapter.setPets(pets, start, count, newCount);
+        mEmptyView.setVisibility(pets.isEmpty() ? View.VISIBLE : View.GONE);
+    }
 
-        getContentResolver().insert(PetEntry.CONTENT_URI, values);
+    /**
+     * Returns the pets of all the loaded pages.
+     */
+    private List<Pet> getPagedPets() {
+        List<Pet> pets = new ArrayList<>();
+        for (Page page : mPages) {
+            pets.addAll(page.mPets);
+        }
+        return pets;
     }
 
     @NonNull
     @Override
     public Loader<Cursor> onCreateLoader(int id, @Nullable Bundle args) {
 
-        String[] projection = new String[]{
-                PetEntry._ID,
-                PetEntry.COLUMN_PET_NAME,
-                PetEntry.COLUMN_PET_BREED
-        };
+        // the projection of the first page the provider reads ahead, so it is served from memory.
+        String[] projection = PetEntry.CATALOG_PROJECTION;
+
+        if (id == SEARCH_LOADER_ID) {
+            return new CursorLoader(this,
+                    PetEntry.buildSearchUri(args.getString(ARG_QUERY)),
+                    projection,
+                    null,
+                    null,
+                    null);
+        }
 
-        return new CursorLoader(this,
-                PetEntry.CONTENT_URI,
-                projection,
-                null,
-                null,
-                null);
+        // the pages also read the sort key of their pets, which starts the next page.
+        String sortColumn = PetEntry.getSortColumn(mSort);
+        if (!Arrays.asList(projection).contains(sortColumn)) {
+            projection = Arrays.copyOf(projection, projection.length + 1);
+            projection[projection.length - 1] = sortColumn;
+        }
+
+        long afterId = args == null ? 0 : args.getLong(ARG_AFTER_ID);
+        String afterKey = args == null ? null : args.getString(ARG_AFTER_KEY);
+        long untilId = args == null ? 0 : args.getLong(ARG_UNTIL_ID);
+        String untilKey = args == null ? null : args.getString(ARG_UNTIL_KEY);
+
+        Uri uri = untilId > 0 ? PetEntry.buildPageRangeUri(afterId, afterKey, untilId, untilKey, mSort, mGender)
+                : PetEntry.buildPageUri(afterId, afterKey, PAGE_SIZE, mSort, mGender);
+        return new PageLoader(this, uri, projection, untilId, untilKey);
     }
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
-        mAdapter.swapCursor(data);
+        if (loader.getId() == SEARCH_LOADER_ID) {
+            mSearchResults = Pet.fromCursor(data);
+            showPets();
+            return;
+        }
+
+        int page = loader.getId() - LOADER_ID;
+        PageLoader pageLoader = (PageLoader) loader;
+        Page pets = new Page(data, mSort, pageLoader.mUntilId, pageLoader.mUntilKey);
+
+        // the position of the page among the shown pets, and the number of shown pets it
+        // replaces.
+        int start = 0;
+        for (int i = 0; i < page && i < mPages.size(); i++) {
+            start += mPages.get(i).mPets.size();
+        }
+        int count = 0;
+
+        if (page < mPages.size()) {
+            // a loaded page was reloaded after the pets changed. It kept its end, so the pages
+            // after it stay and only its pets are compared with the shown ones.
+            count = mPages.set(page, pets).mPets.size();
+            showPets(start, count, pets.mPets.size());
+        } else if (page == mPages.size()) {
+            mPages.add(pets);
+            mLoadingPage = false;
+            showPets(start, count, pets.mPets.size());
+        }
+
+        if (page == 0 && !sFirstRowsReported) {
+            sFirstRowsReported = true;
+            reportFirstRows();
+        }
+    }
+
+    /**
+     * Logs the time from the start of the process to the first page of pets shown, and reports
+     * the activity as fully drawn, which the system logs and the startup benchmarks measure as
+     * the time to full display of a cold start.
+     */
+    private void reportFirstRows() {
+        long elapsed = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        Log.i(LOG_TAG, "Time to first row: " + elapsed + " ms");
+        reportFullyDrawn();
     }
 
     @Override
     public void onLoaderReset(@NonNull Loader<Cursor> loader) {
-        mAdapter.swapCursor(null);
+        // the search results are dropped by search() once the query is cleared.
+        if (loader.getId() == SEARCH_LOADER_ID) {
+            return;
+        }
+
+        // the loaders are reset together when the activity is destroyed, so the pages are only
+        // forgotten here instead of destroying the loaders of the following pages.
+        int page = loader.getId() - LOADER_ID;
+        if (page < mPages.size()) {
+            mPages.subList(page, mPages.size()).clear();
+            mLoadingPage = false;
+            showPets();
+        }
+    }
+
+    /** the pets of a loaded page, with the end of the page in its order. */
+    private static final class Page {
+
+        final List<Pet> mPets;
+
+        /**
+         * the _ID and the sort key of the last pet of the page when it was first read full. The
+         * page keeps that end when it is read again, whichever pets changed, so the next page
+         * still starts after it.
+         */
+        final long mEndId;
+        final String mEndKey;
+
+        /**
+         * set if the page has an end. Until it is full, the last page holds all the pets after
+         * the other pages.
+         */
+        final boolean mEnded;
+
+        /**
+         * @param untilId the end of the page if it was read again, 0 if it was read up to
+         *                {@link #PAGE_SIZE} pets.
+         */
+        Page(Cursor cursor, String sort, long untilId, String untilKey) {
+            mPets = Pet.fromCursor(cursor);
+            if (untilId > 0) {
+                mEndId = untilId;
+                mEndKey = untilKey;
+                mEnded = true;
+            } else if (cursor.moveToLast()) {
+                mEndId = cursor.getLong(cursor.getColumnIndexOrThrow(PetEntry._ID));
+                mEndKey = cursor.getString(cursor.getColumnIndexOrThrow(PetEntry.getSortColumn(sort)));
+                mEnded = mPets.size() >= PAGE_SIZE;
+            } else {
+                mEndId = 0;
+                mEndKey = null;
+                mEnded = false;
+            }
+        }
+    }
+
+    /**
+     * Loads a page without reloading it whenever any pet changes, the activity reloads only the
+     * pages of the changed pets.
+     */
+    private static final class PageLoader extends CursorLoader {
+
+        /** the end of the page read again, 0 if the page is read up to {@link #PAGE_SIZE} pets. */
+        final long mUntilId;
+        final String mUntilKey;
+
+        PageLoader(Context context, Uri uri, String[] projection, long untilId, String untilKey) {
+            super(context, uri, projection, null, null, null);
+            mUntilId = untilId;
+            mUntilKey = untilKey;
+        }
+
+        @Override
+        public void onContentChanged() {
+            // every change of the pets notifies the cursor of every page.
+        }
+
+        /**
+         * Reloads the page now if the loader is started, or else once it is.
+         */
+        void reload() {
+            super.onContentChanged();
+        }
     }
 }
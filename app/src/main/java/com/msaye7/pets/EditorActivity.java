@@ -2,7 +2,9 @@ package com.msaye7.pets;
 
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -14,6 +16,7 @@ import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
@@ -26,8 +29,12 @@ import androidx.loader.app.LoaderManager;
 import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 
+import com.msaye7.pets.data.Pet;
 import com.msaye7.pets.data.PetContract.PetEntry;
+import com.msaye7.pets.data.PetValidator;
+import com.msaye7.pets.data.PetWriteQueue;
 
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -35,6 +42,12 @@ import java.util.Objects;
  */
 public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
+    /**
+     * extra holding the {@link Pet} of the edited uri, as the catalog shows it. The editor shows
+     * it right away, then reloads the pet.
+     */
+    public static final String EXTRA_PET = "com.msaye7.pets.extra.PET";
+
     /** EditText field to enter the pet's name */
     private EditText mNameEditText;
 
@@ -47,6 +60,12 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     /** EditText field to enter the pet's gender */
     private Spinner mGenderSpinner;
 
+    /** ImageView showing the pet's photo, tapping it picks another one */
+    private ImageView mPhotoView;
+
+    /** the photo picked by the user, saved with the pet, or null if none was picked */
+    private Uri mPickedPhoto;
+
     boolean isDeleteVisible;
 
     private boolean mPetHasChanged = false;
@@ -55,6 +74,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     private static final int LOADER_ID = 0;
 
+    private static final int REQUEST_PICK_PHOTO = 1;
+
+    private static final String STATE_PICKED_PHOTO = "picked_photo";
+
     // LOG_TAG of the class.
     private static final String LOG_TAG = EditorActivity.class.getSimpleName();
 
@@ -94,13 +117,83 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mBreedEditText = (EditText) findViewById(R.id.edit_pet_breed);
         mWeightEditText = (EditText) findViewById(R.id.edit_pet_weight);
         mGenderSpinner = (Spinner) findViewById(R.id.spinner_gender);
+        mPhotoView = (ImageView) findViewById(R.id.edit_pet_photo);
 
         mNameEditText.setOnTouchListener(mOnTouchListener);
         mBreedEditText.setOnTouchListener(mOnTouchListener);
         mWeightEditText.setOnTouchListener(mOnTouchListener);
         mGenderSpinner.setOnTouchListener(mOnTouchListener);
 
+        mPhotoView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+                intent.setType("image/*");
+                startActivityForResult(intent, REQUEST_PICK_PHOTO);
+            }
+        });
+
+        if (savedInstanceState != null) {
+            mPickedPhoto = savedInstanceState.getParcelable(STATE_PICKED_PHOTO);
+            if (mPickedPhoto != null) {
+                showPickedPhoto();
+            }
+        }
+
         setupSpinner();
+
+        // a recreated editor restores the values it showed instead.
+        Pet pet = getIntent().getParcelableExtra(EXTRA_PET);
+        if (savedInstanceState == null && editablePetURI != null && pet != null) {
+            showPet(pet);
+        }
+    }
+
+    /**
+     * Shows the values of the pet, but not over the values the user changed, and its photo
+     * unless the user picked another one. The weight and gender are only shown if the pet has
+     * them.
+     */
+    private void showPet(Pet pet) {
+        if (!mPetHasChanged) {
+            mNameEditText.setText(pet.getName());
+            mBreedEditText.setText(pet.getBreed());
+            if (pet.hasDetails()) {
+                mWeightEditText.setText(String.valueOf(pet.getWeight()));
+                mGenderSpinner.setSelection(pet.getGender());
+            }
+        }
+
+        // a photo picked since the editor opened isn't saved yet, and stays shown.
+        if (mPickedPhoto == null) {
+            PetThumbnailLoader.getInstance(this).loadPetPhoto(mPhotoView, pet.getId(), pet.getPhoto(),
+                    getResources().getDimensionPixelSize(R.dimen.editor_photo_size),
+                    R.drawable.bg_pet_thumbnail);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_PICKED_PHOTO, mPickedPhoto);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_PICK_PHOTO && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            mPickedPhoto = data.getData();
+            mPetHasChanged = true;
+            showPickedPhoto();
+        }
+    }
+
+    /**
+     * Shows the picked photo, decoded in the background at the size of the view.
+     */
+    private void showPickedPhoto() {
+        PetThumbnailLoader.getInstance(this).loadImage(mPhotoView, mPickedPhoto,
+                getResources().getDimensionPixelSize(R.dimen.editor_photo_size), R.drawable.bg_pet_thumbnail);
     }
 
     @Override
@@ -198,29 +291,35 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 values.put(PetEntry.COLUMN_PET_GENDER, mGender);
                 values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
 
+                // values the provider would reject keep the editor open, so the user can fix them.
+                if (PetValidator.isRejected(PetValidator.validate(values))) {
+                    Toast.makeText(this, getString(editablePetURI == null ? R.string.error_adding_pet
+                            : R.string.error_update), Toast.LENGTH_SHORT).show();
+                    return true;
+                }
+
+                // the write runs in the background and the editor closes right away, the result
+                // is shown once the write is done.
+                // the picked photo is copied after the pet is written, a new pet once its uri
+                // is known.
                 if(editablePetURI == null){
-                    Uri insert = getContentResolver().insert(PetEntry.CONTENT_URI, values);
-                    if (insert == null)
-                        Toast.makeText(this, getString(R.string.error_adding_pet), Toast.LENGTH_SHORT).show();
-                    else {
-                        Toast.makeText(this, getString(R.string.added_pet), Toast.LENGTH_SHORT).show();
-                        finish();
-                    }
+                    PetWriteQueue.getInstance(this).insert(values, new PhotoCallback(this, mPickedPhoto,
+                            new ToastCallback(this, R.string.added_pet, R.string.error_adding_pet)));
                 }else{
-                    int update = getContentResolver().update(editablePetURI, values, null, null);
-                    if (update != PetEntry.NOT_VALID_DATA) {
-                        Toast.makeText(this, getString(R.string.update_success), Toast.LENGTH_SHORT).show();
-                        finish();
+                    PetWriteQueue.getInstance(this).update(editablePetURI, values,
+                            new ToastCallback(this, R.string.update_success, R.string.error_update));
+                    if (mPickedPhoto != null) {
+                        PetWriteQueue.getInstance(this).writePhoto(editablePetURI, mPickedPhoto,
+                                new ToastCallback(this, 0, R.string.error_photo));
                     }
-                    else
-                        Toast.makeText(this, getString(R.string.error_update), Toast.LENGTH_SHORT).show();
-
                 }
+                finish();
                 return true;
             // Respond to a click on the "Delete" menu option
             case R.id.action_delete:
+                PetWriteQueue.getInstance(this).delete(editablePetURI,
+                        new ToastCallback(this, 0, R.string.error_delete));
                 finish();
-                getContentResolver().delete(editablePetURI, null);
                 return true;
             // Respond to a click on the "Up" arrow button in the app bar
             case android.R.id.home:
@@ -235,21 +334,21 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // writes the queued pets now instead of after their coalescing window.
+        PetWriteQueue.getInstance(this).flush();
+    }
+
     @NonNull
     @Override
     public Loader<Cursor> onCreateLoader(int id, @Nullable Bundle args) {
-        String[] projection = new String[]{
-                PetEntry._ID,
-                PetEntry.COLUMN_PET_NAME,
-                PetEntry.COLUMN_PET_BREED,
-                PetEntry.COLUMN_PET_GENDER,
-                PetEntry.COLUMN_PET_WEIGHT,
-        };
-
+        // the pets read ahead by the catalog are served from memory with this projection.
         return new CursorLoader(
                 this,
                 editablePetURI,
-                projection,
+                PetEntry.DETAIL_PROJECTION,
                 null,
                 null,
                 null
@@ -258,11 +357,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
-        if(cursor.moveToFirst()) {
-            mNameEditText.setText(cursor.getString(cursor.getColumnIndex(PetEntry.COLUMN_PET_NAME)));
-            mBreedEditText.setText(cursor.getString(cursor.getColumnIndex(PetEntry.COLUMN_PET_BREED)));
-            mWeightEditText.setText(String.valueOf(cursor.getInt(cursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT))));
-            mGenderSpinner.setSelection(cursor.getInt(cursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER)));
+        // replaces the values the editor opened with, which may be outdated.
+        List<Pet> pets = Pet.fromCursor(cursor);
+        if (!pets.isEmpty()) {
+            showPet(pets.get(0));
         }
     }
 
@@ -272,5 +370,72 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mBreedEditText.setText("");
         mWeightEditText.setText("");
         mGenderSpinner.setSelection(PetEntry.GENDER_UNKNOWN);
+        PetThumbnailLoader.getInstance(this).cancel(mPhotoView);
+    }
+
+    /**
+     * Queues the copy of the picked photo once the new pet is inserted, then passes the result
+     * of the insert on.
+     */
+    private static final class PhotoCallback implements PetWriteQueue.Callback {
+
+        private final Context mContext;
+        private final Uri mPhoto;
+        private final PetWriteQueue.Callback mCallback;
+
+        /**
+         * @param photo the picked photo, or null for none.
+         */
+        PhotoCallback(Context context, @Nullable Uri photo, PetWriteQueue.Callback callback) {
+            mContext = context.getApplicationContext();
+            mPhoto = photo;
+            mCallback = callback;
+        }
+
+        @Override
+        public void onWriteSucceeded(Uri uri) {
+            if (mPhoto != null) {
+                PetWriteQueue.getInstance(mContext).writePhoto(uri, mPhoto,
+                        new ToastCallback(mContext, 0, R.string.error_photo));
+            }
+            mCallback.onWriteSucceeded(uri);
+        }
+
+        @Override
+        public void onWriteFailed(Uri uri, @Nullable Exception error) {
+            mCallback.onWriteFailed(uri, error);
+        }
+    }
+
+    /**
+     * Shows the result of a queued write. Keeps only the application context, since the editor
+     * is usually closed by the time the write is done.
+     */
+    private static final class ToastCallback implements PetWriteQueue.Callback {
+
+        private final Context mContext;
+        private final int mSuccessMessage;
+        private final int mFailureMessage;
+
+        /**
+         * @param successMessage the message shown once the write is done, or 0 for none.
+         */
+        ToastCallback(Context context, int successMessage, int failureMessage) {
+            mContext = context.getApplicationContext();
+            mSuccessMessage = successMessage;
+            mFailureMessage = failureMessage;
+        }
+
+        @Override
+        public void onWriteSucceeded(Uri uri) {
+            if (mSuccessMessage != 0) {
+                Toast.makeText(mContext, mSuccessMessage, Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        @Override
+        public void onWriteFailed(Uri uri, @Nullable Exception error) {
+            Toast.makeText(mContext, mFailureMessage, Toast.LENGTH_SHORT).show();
+        }
     }
-}
\ No newline at end of file
+}
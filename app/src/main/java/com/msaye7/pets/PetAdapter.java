@@ -0,0 +1,217 @@
+package com.msaye7.pets;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.msaye7.pets.data.Pet;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link PetAdapter} is an adapter for a {@link RecyclerView} that uses a list of {@link Pet}s
+ * as its data source. A new list that only differs from the shown one in a range, like a
+ * reloaded page, is only compared with the shown one in that range, so the rows of the pets
+ * that were added, removed or changed get rebound without going through the whole list. The
+ * photos are loaded by a {@link PetThumbnailLoader}, rows that are rebound or recycled cancel
+ * the loading of their previous photo.
+ */
+public class PetAdapter extends RecyclerView.Adapter<PetAdapter.PetViewHolder> {
+
+    /**
+     * Callback invoked when a pet of the list is clicked.
+     */
+    public interface OnPetClickListener {
+        void onPetClick(Pet pet);
+    }
+
+    /**
+     * Tells the differ how to find the same pet in two lists and whether its row has changed.
+     */
+    private static final DiffUtil.ItemCallback<Pet> DIFF_CALLBACK = new DiffUtil.ItemCallback<Pet>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Pet oldItem, @NonNull Pet newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Pet oldItem, @NonNull Pet newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final OnPetClickListener mClickListener;
+
+    /** the shown pets, never changed once shown. */
+    private List<Pet> mPets = Collections.emptyList();
+
+    private final PetThumbnailLoader mThumbnailLoader;
+
+    /**
+     * Constructs a new {@link PetAdapter}.
+     *
+     * @param clickListener   The listener notified when a pet is clicked.
+     * @param thumbnailLoader The loader of the thumbnails of the pet photos.
+     */
+    public PetAdapter(OnPetClickListener clickListener, PetThumbnailLoader thumbnailLoader) {
+        mClickListener = clickListener;
+        mThumbnailLoader = thumbnailLoader;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Returns the shown pets.
+     */
+    public List<Pet> getPets() {
+        return mPets;
+    }
+
+    /**
+     * Shows the given pets instead of the shown ones, rebinding all the rows. The list must not
+     * be changed afterwards.
+     */
+    public void setPets(List<Pet> pets) {
+        mPets = pets;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Shows the given pets, which are the shown ones with the count pets from start replaced
+     * by the newCount pets from start. Only that range is compared, the other rows are kept
+     * as they are. The list must not be changed afterwards.
+     */
+    public void setPets(List<Pet> pets, final int start, int count, int newCount) {
+        final List<Pet> oldRange = mPets.subList(start, start + count);
+        final List<Pet> newRange = pets.subList(start, start + newCount);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldRange.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newRange.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return DIFF_CALLBACK.areItemsTheSame(oldRange.get(oldPosition), newRange.get(newPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return DIFF_CALLBACK.areContentsTheSame(oldRange.get(oldPosition), newRange.get(newPosition));
+            }
+        });
+
+        mPets = pets;
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(start + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(start + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(start + fromPosition, start + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(start + position, count, payload);
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPets.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mPets.get(position).getId();
+    }
+
+    /**
+     * Makes a new blank list item view and its holder. No data is set (or bound) to the views yet.
+     */
+    @NonNull
+    @Override
+    public PetViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_pet, parent, false);
+        return new PetViewHolder(view);
+    }
+
+    /**
+     * Binds the pet at the given position to the views of the holder.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull PetViewHolder holder, int position) {
+        holder.bind(mPets.get(position));
+    }
+
+    /**
+     * Stops loading the photo of a row that scrolled out of the list.
+     */
+    @Override
+    public void onViewRecycled(@NonNull PetViewHolder holder) {
+        holder.recycle();
+    }
+
+    /**
+     * Holds the views of a list item, so they are only looked up once when the item is created.
+     */
+    class PetViewHolder extends RecyclerView.ViewHolder {
+
+        private final TextView mName;
+        private final TextView mBreed;
+        private final ImageView mPhoto;
+
+        /** size of the thumbnails, in pixels. */
+        private final int mThumbnailSize;
+
+        PetViewHolder(@NonNull View itemView) {
+            super(itemView);
+            mName = itemView.findViewById(R.id.name);
+            mBreed = itemView.findViewById(R.id.summary);
+            mPhoto = itemView.findViewById(R.id.photo);
+            mThumbnailSize = itemView.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        mClickListener.onPetClick(mPets.get(position));
+                    }
+                }
+            });
+        }
+
+        void bind(Pet pet) {
+            mName.setText(pet.getName());
+            mBreed.setText(pet.getBreed());
+            mThumbnailLoader.loadPetPhoto(mPhoto, pet.getId(), pet.getPhoto(), mThumbnailSize,
+                    R.drawable.bg_pet_thumbnail);
+        }
+
+        void recycle() {
+            mThumbnailLoader.cancel(mPhoto);
+        }
+    }
+}
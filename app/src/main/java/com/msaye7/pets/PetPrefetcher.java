@@ -0,0 +1,221 @@
+package com.msaye7.pets;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import com.msaye7.pets.data.Pet;
+import com.msaye7.pets.data.PetContract;
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads ahead, on a background thread, the details of the pets shown by the catalog and of the
+ * pets around them, so the editor of any shown pet opens with all its values. The pets are read
+ * in batches through {@link PetEntry#buildPetsUri(long...)}, which also keeps them in the
+ * single pet cache of the provider, so the editor reloading the pet is served from memory.
+ *
+ * Pets that change are dropped, as well as the ones being read when they change, the other pets
+ * being read are kept. The editor still reloads the pet it was opened for.
+ */
+final class PetPrefetcher {
+
+    // LOG_TAG of the class.
+    private static final String LOG_TAG = PetPrefetcher.class.getSimpleName();
+
+    /** number of pets read ahead before and after the shown ones. */
+    private static final int MARGIN = 10;
+
+    /** maximum number of pets kept with their details. */
+    private static final int CACHE_SIZE = 200;
+
+    private final ContentResolver mResolver;
+
+    /** the shelter of the pets, the one shown by the catalog. */
+    private final long mShelterId;
+
+    /** the pets with details by _ID. */
+    private final LruCache<Long, Pet> mPets = new LruCache<>(CACHE_SIZE);
+
+    /** the _IDs of the pets being read, only used on the main thread. */
+    private final LongSparseArray<Boolean> mPending = new LongSparseArray<>();
+
+    /** the reads in progress, guarded by this. */
+    private final List<Read> mReads = new ArrayList<>();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "PetPrefetcher");
+        }
+    });
+
+    /**
+     * Drops the pets that change, or all of them when the notification doesn't say which. The
+     * reads in progress drop them too when they end.
+     */
+    private final ContentObserver mObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long[] ids = uri == null ? null : PetEntry.getChangedIds(uri);
+            synchronized (PetPrefetcher.this) {
+                if (ids == null) {
+                    mPets.evictAll();
+                    for (Read read : mReads) {
+                        read.mAllChanged = true;
+                    }
+                    return;
+                }
+                for (long id : ids) {
+                    mPets.remove(id);
+                    for (Read read : mReads) {
+                        read.mChanged.add(id);
+                    }
+                }
+            }
+        }
+    };
+
+    /**
+     * @param shelterId the _ID of the shelter of the pets, see {@link PetContract#forShelter}.
+     */
+    PetPrefetcher(Context context, long shelterId) {
+        mResolver = context.getContentResolver();
+        mShelterId = shelterId;
+        mResolver.registerContentObserver(PetContract.forShelter(PetEntry.CONTENT_URI, shelterId), true, mObserver);
+    }
+
+    /**
+     * Returns the pet with its details if they were read, the given pet otherwise.
+     */
+    Pet getDetails(Pet pet) {
+        Pet details = mPets.get(pet.getId());
+        return details != null ? details : pet;
+    }
+
+    /**
+     * Reads the details of the shown pets and of the {@link #MARGIN} pets around them, unless
+     * they were already read. Call it on the main thread whenever the shown pets change.
+     *
+     * @param pets the pets of the list.
+     * @param first the position of the first shown pet, or -1 if none is shown.
+     * @param last the position of the last shown pet.
+     */
+    void prefetch(List<Pet> pets, int first, int last) {
+        if (first < 0 || pets.isEmpty()) {
+            return;
+        }
+
+        int start = Math.max(0, first - MARGIN);
+        int end = Math.min(pets.size() - 1, last + MARGIN);
+        final long[] ids = new long[Math.min(end - start + 1, PetEntry.MAX_IDS)];
+        int count = 0;
+        for (int i = start; i <= end && count < ids.length; i++) {
+            long id = pets.get(i).getId();
+            if (mPets.get(id) == null && mPending.get(id) == null) {
+                mPending.put(id, Boolean.TRUE);
+                ids[count++] = id;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        final long[] missingIds = count == ids.length ? ids : Arrays.copyOf(ids, count);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                read(missingIds);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (long id : missingIds) {
+                            mPending.remove(id);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops observing the pets and reading them. Pets being read are dropped.
+     */
+    void close() {
+        mResolver.unregisterContentObserver(mObserver);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Reads the pets with the given _IDs and keeps the ones that didn't change during the read.
+     */
+    private void read(long[] ids) {
+        Read read = new Read();
+        synchronized (this) {
+            mReads.add(read);
+        }
+
+        List<Pet> pets = null;
+        Cursor cursor = null;
+        try {
+            cursor = mResolver.query(PetContract.forShelter(PetEntry.buildPetsUri(ids), mShelterId),
+                    PetEntry.DETAIL_PROJECTION, null, null, null);
+            if (cursor != null) {
+                pets = Pet.fromCursor(cursor);
+            }
+        } catch (RuntimeException e) {
+            // the editor reads the pet itself.
+            Log.w(LOG_TAG, "Cannot read ahead " + ids.length + " pets", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        synchronized (this) {
+            mReads.remove(read);
+            if (pets == null || read.mAllChanged) {
+                return;
+            }
+            for (Pet pet : pets) {
+                if (!read.mChanged.contains(pet.getId())) {
+                    mPets.put(pet.getId(), pet);
+                }
+            }
+        }
+    }
+
+    /** the pets that changed during a read. */
+    private static final class Read {
+
+        /** the _IDs of the changed pets. */
+        final Set<Long> mChanged = new HashSet<>();
+
+        /** set when any pet may have changed. */
+        boolean mAllChanged;
+    }
+}
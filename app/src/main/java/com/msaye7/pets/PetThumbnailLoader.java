@@ -0,0 +1,379 @@
+package com.msaye7.pets;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * App-wide loader of the pet photos as square thumbnails, decoded on background threads at the
+ * size they are shown, so a full size photo is never decoded on the main thread.
+ *
+ * Thumbnails are cached at two levels: the decoded bitmaps in a memory LRU cache, and the
+ * downsampled thumbnails as JPEG files in a disk cache, so a photo is only decoded at full size
+ * once per thumbnail size. A view asking for a new thumbnail cancels the request it had, and the
+ * newest requests run first, so a fast fling through the catalog doesn't keep decoding the rows
+ * that already scrolled away.
+ */
+public final class PetThumbnailLoader {
+
+    // LOG_TAG of the class.
+    private static final String LOG_TAG = PetThumbnailLoader.class.getSimpleName();
+
+    /** number of threads decoding the thumbnails. */
+    private static final int THREAD_COUNT = 2;
+
+    /** the memory cache gets this fraction of the maximum heap size. */
+    private static final int MEMORY_CACHE_HEAP_FRACTION = 8;
+
+    /** maximum size of the disk cache, in bytes. */
+    private static final long DISK_CACHE_SIZE_BYTES = 16 * 1024 * 1024;
+
+    /** directory of the disk cache, in the cache directory of the app. */
+    private static final String DISK_CACHE_DIRECTORY = "thumbnails";
+
+    /** quality of the thumbnails written to the disk cache. */
+    private static final int JPEG_QUALITY = 85;
+
+    private static PetThumbnailLoader sInstance;
+
+    private final ContentResolver mResolver;
+
+    private final File mDiskCacheDirectory;
+
+    /** the decoded thumbnails by key, sized in bytes. */
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** guards the files of the disk cache and their size. */
+    private final Object mDiskLock = new Object();
+
+    /** total size of the files of the disk cache, -1 until it is first measured. */
+    private long mDiskCacheBytes = -1;
+
+    private PetThumbnailLoader(Context context) {
+        mResolver = context.getContentResolver();
+        mDiskCacheDirectory = new File(context.getCacheDir(), DISK_CACHE_DIRECTORY);
+
+        int maxSizeBytes = (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_FRACTION);
+        mMemoryCache = new LruCache<String, Bitmap>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0, TimeUnit.MILLISECONDS,
+                new LifoQueue(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "PetThumbnailLoader");
+                    }
+                });
+    }
+
+    public static synchronized PetThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PetThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the thumbnail of the photo of a pet in the view, and the placeholder until it is
+     * loaded. Call it on the main thread.
+     *
+     * @param photo       the name of the photo, from the photo column, or null if the pet has
+     *                    no photo. It changes with the photo, so it keys the caches.
+     * @param size        the width and height of the thumbnail, in pixels.
+     * @param placeholder the drawable resource shown while loading and for pets without photo.
+     */
+    public void loadPetPhoto(ImageView view, long petId, String photo, int size, int placeholder) {
+        if (photo == null) {
+            cancel(view);
+            view.setImageResource(placeholder);
+            return;
+        }
+        String key = photo + "-" + size + ".jpg";
+        load(view, new Request(view, PetEntry.buildPhotoUri(petId), key, true, size), placeholder);
+    }
+
+    /**
+     * Shows a thumbnail of the image at the uri in the view, like
+     * {@link #loadPetPhoto(ImageView, long, String, int, int)}. The image may change without
+     * its uri changing, so the thumbnail is only cached in memory.
+     */
+    public void loadImage(ImageView view, Uri uri, int size, int placeholder) {
+        load(view, new Request(view, uri, uri + "#" + size, false, size), placeholder);
+    }
+
+    /**
+     * Cancels the request of the view, if it has one. Call it on the main thread, for example
+     * when the view is recycled.
+     */
+    public void cancel(ImageView view) {
+        Request request = (Request) view.getTag(R.id.thumbnail_request);
+        if (request == null) {
+            return;
+        }
+        view.setTag(R.id.thumbnail_request, null);
+        request.mCanceled = true;
+
+        // a request that didn't start yet leaves the queue right away.
+        if (request.mFuture.cancel(false)) {
+            mExecutor.remove((Runnable) request.mFuture);
+        }
+    }
+
+    private void load(ImageView view, Request request, int placeholder) {
+        cancel(view);
+
+        Bitmap cached = mMemoryCache.get(request.mKey);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageResource(placeholder);
+        view.setTag(R.id.thumbnail_request, request);
+        request.mFuture = mExecutor.submit(request);
+    }
+
+    /**
+     * Returns the thumbnail of the request from the disk cache, or decodes it from the image and
+     * adds it to the disk cache. Returns null if the image can't be read or the request was
+     * cancelled before it was decoded.
+     */
+    private Bitmap loadThumbnail(Request request) {
+        File cached = request.mDiskCached ? new File(mDiskCacheDirectory, request.mKey) : null;
+        if (cached != null && cached.isFile()) {
+            Bitmap thumbnail = BitmapFactory.decodeFile(cached.getPath());
+            if (thumbnail != null) {
+                // the disk cache is trimmed from the least recently used files.
+                cached.setLastModified(System.currentTimeMillis());
+                return thumbnail;
+            }
+        }
+
+        Bitmap thumbnail;
+        try {
+            thumbnail = decode(request);
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Cannot decode " + request.mUri, e);
+            return null;
+        }
+
+        // the thumbnail is cached even if it isn't needed anymore, the decoding is done.
+        if (thumbnail != null && cached != null) {
+            writeToDiskCache(cached, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Decodes the image of the request into a thumbnail. The image is subsampled while it is
+     * decoded, so it is never held in memory at full size.
+     */
+    private Bitmap decode(Request request) throws IOException {
+        ParcelFileDescriptor image = mResolver.openFileDescriptor(request.mUri, "r");
+        if (image == null) {
+            return null;
+        }
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(image.getFileDescriptor(), null, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0 || request.mCanceled) {
+                return null;
+            }
+
+            // decoding the bounds doesn't move the position of the descriptor.
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, request.mSize);
+            Bitmap decoded = BitmapFactory.decodeFileDescriptor(image.getFileDescriptor(), null, options);
+            if (decoded == null) {
+                return null;
+            }
+            return ThumbnailUtils.extractThumbnail(decoded, request.mSize, request.mSize,
+                    ThumbnailUtils.OPTIONS_RECYCLE_INPUT);
+        } finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Returns the largest power of 2 subsampling the image without making its shorter side
+     * smaller than the thumbnail.
+     */
+    private static int getSampleSize(int width, int height, int size) {
+        int shorterSide = Math.min(width, height);
+        int sampleSize = 1;
+        while (shorterSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Writes the thumbnail to the disk cache, and trims the cache to
+     * {@link #DISK_CACHE_SIZE_BYTES} if it grew past it.
+     */
+    private void writeToDiskCache(File file, Bitmap thumbnail) {
+        synchronized (mDiskLock) {
+            if (!mDiskCacheDirectory.isDirectory() && !mDiskCacheDirectory.mkdirs()) {
+                Log.w(LOG_TAG, "Cannot create " + mDiskCacheDirectory);
+                return;
+            }
+
+            // written under another name first, so a partial file is never read as a thumbnail.
+            File temporary = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temporary)) {
+                thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Cannot write " + file, e);
+                temporary.delete();
+                return;
+            }
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+                return;
+            }
+
+            if (mDiskCacheBytes < 0) {
+                trimDiskCache();
+            } else {
+                mDiskCacheBytes += file.length();
+                if (mDiskCacheBytes > DISK_CACHE_SIZE_BYTES) {
+                    trimDiskCache();
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the disk cache and deletes its least recently used files until it is back under
+     * three quarters of its maximum size, so it isn't trimmed again on the next write.
+     */
+    private void trimDiskCache() {
+        File[] files = mDiskCacheDirectory.listFiles();
+        if (files == null) {
+            mDiskCacheBytes = 0;
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+
+        if (size > DISK_CACHE_SIZE_BYTES) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.compare(a.lastModified(), b.lastModified());
+                }
+            });
+            long targetSize = DISK_CACHE_SIZE_BYTES * 3 / 4;
+            for (int i = 0; i < files.length && size > targetSize; i++) {
+                long length = files[i].length();
+                if (files[i].delete()) {
+                    size -= length;
+                }
+            }
+        }
+        mDiskCacheBytes = size;
+    }
+
+    /**
+     * Loads the thumbnail of a view. Only the main thread touches the view and the future.
+     */
+    private final class Request implements Runnable {
+
+        final ImageView mView;
+        final Uri mUri;
+
+        /** key of the thumbnail in the memory cache, and its file name in the disk cache. */
+        final String mKey;
+
+        final boolean mDiskCached;
+        final int mSize;
+
+        volatile boolean mCanceled;
+
+        Future<?> mFuture;
+
+        Request(ImageView view, Uri uri, String key, boolean diskCached, int size) {
+            mView = view;
+            mUri = uri;
+            mKey = key;
+            mDiskCached = diskCached;
+            mSize = size;
+        }
+
+        @Override
+        public void run() {
+            if (mCanceled) {
+                return;
+            }
+            final Bitmap thumbnail = loadThumbnail(this);
+            if (thumbnail == null) {
+                return;
+            }
+            mMemoryCache.put(mKey, thumbnail);
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // the view may have been rebound to another pet since.
+                    if (!mCanceled && mView.getTag(R.id.thumbnail_request) == Request.this) {
+                        mView.setTag(R.id.thumbnail_request, null);
+                        mView.setImageBitmap(thumbnail);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Queue handing out the newest request first, the one of the row that was shown last.
+     */
+    private static final class LifoQueue extends LinkedBlockingDeque<Runnable> {
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    }
+}
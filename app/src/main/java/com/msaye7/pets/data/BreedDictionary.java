@@ -0,0 +1,109 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the breed names written to {@link PetProvider} to the _IDs of the breeds dictionary
+ * table, adding the breeds that aren't in it yet. The _IDs are cached, there are few breeds and
+ * they are never deleted.
+ *
+ * Breeds added inside a transaction are only cached for the other threads once the transaction
+ * is committed, see {@link #endTransaction(boolean)}, so they never see the _ID of a breed that
+ * was rolled back.
+ */
+final class BreedDictionary {
+
+    /** the _IDs of the committed breeds. */
+    private final Map<String, Long> mIds = new ConcurrentHashMap<>();
+
+    /** the _IDs of the breeds added by the transaction of the current thread. */
+    private final ThreadLocal<Map<String, Long>> mTransactionIds = new ThreadLocal<>();
+
+    /**
+     * Replaces the breed name of the values by the _ID of the breed, in a copy of the values.
+     * Returns the values themselves if they don't set the breed.
+     */
+    ContentValues encode(SQLiteDatabase db, ContentValues values) {
+        if (!values.containsKey(PetEntry.COLUMN_PET_BREED)) {
+            return values;
+        }
+
+        ContentValues encoded = new ContentValues(values);
+        String breed = encoded.getAsString(PetEntry.COLUMN_PET_BREED);
+        encoded.remove(PetEntry.COLUMN_PET_BREED);
+        if (breed == null) {
+            encoded.putNull(PetDbHelper.COLUMN_BREED_ID);
+        } else {
+            encoded.put(PetDbHelper.COLUMN_BREED_ID, getId(db, breed));
+        }
+        return encoded;
+    }
+
+    /**
+     * Returns the _ID of the breed, adding it to the dictionary if needed. Call it on the
+     * connection, and inside the transaction, of the write that uses it.
+     */
+    long getId(SQLiteDatabase db, String breed) {
+        Long id = mIds.get(breed);
+        if (id != null) {
+            return id;
+        }
+
+        boolean inTransaction = db.inTransaction();
+        Map<String, Long> transactionIds = mTransactionIds.get();
+        if (inTransaction && transactionIds != null) {
+            id = transactionIds.get(breed);
+            if (id != null) {
+                return id;
+            }
+        }
+
+        db.execSQL("INSERT OR IGNORE INTO " + PetDbHelper.BREEDS_TABLE_NAME + " ("
+                + PetEntry.COLUMN_PET_BREED + ") VALUES (?)", new Object[]{breed});
+        id = DatabaseUtils.longForQuery(db, "SELECT " + BaseColumns._ID + " FROM "
+                + PetDbHelper.BREEDS_TABLE_NAME + " WHERE " + PetEntry.COLUMN_PET_BREED + " = ?",
+                new String[]{breed});
+
+        if (inTransaction) {
+            if (transactionIds == null) {
+                transactionIds = new HashMap<>();
+                mTransactionIds.set(transactionIds);
+            }
+            transactionIds.put(breed, id);
+        } else {
+            mIds.put(breed, id);
+        }
+        return id;
+    }
+
+    /**
+     * Caches the breeds added by the transaction of the current thread if it was committed,
+     * forgets them otherwise. Call it once the transaction has ended.
+     */
+    void endTransaction(boolean committed) {
+        Map<String, Long> transactionIds = mTransactionIds.get();
+        if (transactionIds == null) {
+            return;
+        }
+        mTransactionIds.remove();
+        if (committed) {
+            mIds.putAll(transactionIds);
+        }
+    }
+
+    /**
+     * Forgets the cached _IDs, when the database is replaced.
+     */
+    void clear() {
+        mIds.clear();
+    }
+}
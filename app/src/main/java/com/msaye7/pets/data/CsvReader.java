@@ -0,0 +1,113 @@
+package com.msaye7.pets.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV records one at a time from a stream. Fields can be quoted, quoted fields
+ * can hold commas, line breaks and doubled quotes. Only the current record is held in memory.
+ */
+final class CsvReader {
+
+    private final Reader mReader;
+
+    /** the character read ahead, or -2 if none. */
+    private int mPeeked = -2;
+
+    /** the last character read from the stream. */
+    private int mPrevious = -1;
+
+    /** the line the next record starts on, from 1. */
+    private int mLineNumber = 1;
+
+    /** the line the last returned record started on. */
+    private int mRecordLineNumber;
+
+    private final StringBuilder mField = new StringBuilder();
+
+    CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Returns the fields of the next record, or null at the end of the stream. Empty lines
+     * are skipped.
+     */
+    String[] readRecord() throws IOException {
+        int c = read();
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+
+        mRecordLineNumber = mLineNumber;
+        List<String> fields = new ArrayList<>();
+        mField.setLength(0);
+        boolean quoted = false;
+
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field on line " + mRecordLineNumber);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        mField.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    mField.append((char) c);
+                }
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(mField.toString());
+                mField.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        mPeeked = next;
+                    }
+                }
+                fields.add(mField.toString());
+                return fields.toArray(new String[0]);
+            } else {
+                mField.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Returns the line the last returned record started on.
+     */
+    int getRecordLineNumber() {
+        return mRecordLineNumber;
+    }
+
+    private int read() throws IOException {
+        if (mPeeked != -2) {
+            // already counted when it was read.
+            int c = mPeeked;
+            mPeeked = -2;
+            return c;
+        }
+
+        int c = mReader.read();
+        // lines end with LF, CRLF or a lone CR.
+        if (c == '\r' || (c == '\n' && mPrevious != '\r')) {
+            mLineNumber++;
+        }
+        mPrevious = c;
+        return c;
+    }
+}
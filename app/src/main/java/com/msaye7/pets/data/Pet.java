@@ -0,0 +1,170 @@
+package com.msaye7.pets.data;
+
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable row of the pets table, used to hand pets to the views without keeping the
+ * {@link Cursor} they were read from open. The rows of the catalog only hold the _ID, name,
+ * breed and photo, the details of a pet, its gender and weight, are read for the editor.
+ *
+ * It is {@link Parcelable}, so the editor can show the pet it was opened for right away.
+ */
+public final class Pet implements Parcelable {
+
+    private final long mId;
+    private final String mName;
+    private final String mBreed;
+    private final boolean mHasDetails;
+    private final int mGender;
+    private final int mWeight;
+    private final String mPhoto;
+
+    /**
+     * Creates a pet without details.
+     */
+    public Pet(long id, String name, String breed, String photo) {
+        this(id, name, breed, false, PetEntry.GENDER_UNKNOWN, 0, photo);
+    }
+
+    /**
+     * Creates a pet with details.
+     */
+    public Pet(long id, String name, String breed, int gender, int weight, String photo) {
+        this(id, name, breed, true, gender, weight, photo);
+    }
+
+    private Pet(long id, String name, String breed, boolean hasDetails, int gender, int weight, String photo) {
+        mId = id;
+        mName = name;
+        mBreed = breed;
+        mHasDetails = hasDetails;
+        mGender = gender;
+        mWeight = weight;
+        mPhoto = photo;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getBreed() {
+        return mBreed;
+    }
+
+    /**
+     * Returns true if the pet holds its gender and weight.
+     */
+    public boolean hasDetails() {
+        return mHasDetails;
+    }
+
+    /**
+     * Returns the gender, {@link PetEntry#GENDER_UNKNOWN} if the pet has no details.
+     */
+    public int getGender() {
+        return mGender;
+    }
+
+    /**
+     * Returns the weight, 0 if the pet has no details.
+     */
+    public int getWeight() {
+        return mWeight;
+    }
+
+    /**
+     * Returns the name of the photo file, which changes with the photo, or null if the pet has
+     * no photo. The photo itself is read through {@link PetContract.PetEntry#buildPhotoUri(long)}.
+     */
+    public String getPhoto() {
+        return mPhoto;
+    }
+
+    /**
+     * Reads all the rows of the cursor into a list of pets. The cursor must hold the _ID, name,
+     * breed and photo columns, the pets have details if it also holds the gender and weight.
+     */
+    @NonNull
+    public static List<Pet> fromCursor(Cursor cursor) {
+        List<Pet> pets = new ArrayList<>(cursor.getCount());
+
+        // the wrapper gets the column indices once for the whole cursor.
+        PetCursor petCursor = PetCursor.wrap(cursor);
+        boolean hasDetails = petCursor.hasDetails();
+        petCursor.moveToPosition(-1);
+        while (petCursor.moveToNext()) {
+            pets.add(hasDetails
+                    ? new Pet(petCursor.getId(), petCursor.getName(), petCursor.getBreed(),
+                    petCursor.getGender(), petCursor.getWeight(), petCursor.getPhoto())
+                    : new Pet(petCursor.getId(), petCursor.getName(), petCursor.getBreed(),
+                    petCursor.getPhoto()));
+        }
+        return pets;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(mId);
+        dest.writeString(mName);
+        dest.writeString(mBreed);
+        dest.writeInt(mHasDetails ? 1 : 0);
+        dest.writeInt(mGender);
+        dest.writeInt(mWeight);
+        dest.writeString(mPhoto);
+    }
+
+    public static final Creator<Pet> CREATOR = new Creator<Pet>() {
+        @Override
+        public Pet createFromParcel(Parcel source) {
+            return new Pet(source.readLong(), source.readString(), source.readString(), source.readInt() != 0,
+                    source.readInt(), source.readInt(), source.readString());
+        }
+
+        @Override
+        public Pet[] newArray(int size) {
+            return new Pet[size];
+        }
+    };
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Pet)) {
+            return false;
+        }
+        Pet pet = (Pet) o;
+        return mId == pet.mId
+                && mHasDetails == pet.mHasDetails
+                && mGender == pet.mGender
+                && mWeight == pet.mWeight
+                && Objects.equals(mName, pet.mName)
+                && Objects.equals(mBreed, pet.mBreed)
+                && Objects.equals(mPhoto, pet.mPhoto);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mId, mName, mBreed, mHasDetails, mGender, mWeight, mPhoto);
+    }
+}
@@ -0,0 +1,115 @@
+package com.msaye7.pets.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * File operations of the backups of pets.db. Every backup file has a sidecar file holding the
+ * SHA-256 checksum of its content, checked before the backup is restored.
+ */
+final class PetBackup {
+
+    /** extension of the checksum file written next to each backup. */
+    private static final String CHECKSUM_EXTENSION = ".sha256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private PetBackup() { }
+
+    /**
+     * Computes the checksum of the backup and writes it next to it.
+     *
+     * @return the checksum, as lower case hexadecimal.
+     */
+    static String writeChecksum(File backup) throws IOException {
+        String checksum = computeChecksum(backup);
+        try (OutputStream out = new FileOutputStream(getChecksumFile(backup))) {
+            out.write(checksum.getBytes(StandardCharsets.US_ASCII));
+        }
+        return checksum;
+    }
+
+    /**
+     * Throws if the backup doesn't match the checksum written next to it.
+     */
+    static void verifyChecksum(File backup) throws IOException {
+        File checksumFile = getChecksumFile(backup);
+        byte[] expected = new byte[(int) checksumFile.length()];
+        try (InputStream in = new FileInputStream(checksumFile)) {
+            int read = 0;
+            while (read < expected.length) {
+                int count = in.read(expected, read, expected.length - read);
+                if (count == -1) {
+                    break;
+                }
+                read += count;
+            }
+        }
+
+        String checksum = computeChecksum(backup);
+        if (!checksum.equals(new String(expected, StandardCharsets.US_ASCII).trim())) {
+            throw new IOException("Checksum mismatch for backup " + backup);
+        }
+    }
+
+    /**
+     * Copies the file with the kernel doing the transfer, then syncs the copy to the disk.
+     */
+    static void copy(File source, File destination) throws IOException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(destination)) {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long size = inChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += inChannel.transferTo(position, size - position, outChannel);
+            }
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Deletes the backup and its checksum file.
+     */
+    static void delete(File backup) {
+        backup.delete();
+        getChecksumFile(backup).delete();
+    }
+
+    private static File getChecksumFile(File backup) {
+        return new File(backup.getPath() + CHECKSUM_EXTENSION);
+    }
+
+    private static String computeChecksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.msaye7.pets.data;
+
+import androidx.annotation.Nullable;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.Objects;
+
+/**
+ * Immutable row of the change log of the pets, see {@link PetContract.ChangeEntry}. It holds the
+ * values of the pet when the change was read, so applying the changes in order rebuilds the
+ * current pets.
+ */
+public final class PetChange {
+
+    private final long mSequence;
+    private final long mPetId;
+    private final String mOperation;
+    private final String mName;
+    private final String mBreed;
+    private final int mGender;
+    private final int mWeight;
+
+    /**
+     * @param name the name of the pet, null if the pet doesn't exist anymore.
+     */
+    public PetChange(long sequence, long petId, String operation, @Nullable String name,
+                     @Nullable String breed, int gender, int weight) {
+        mSequence = sequence;
+        mPetId = petId;
+        mOperation = operation;
+        mName = name;
+        mBreed = breed;
+        mGender = gender;
+        mWeight = weight;
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public long getPetId() {
+        return mPetId;
+    }
+
+    /**
+     * Returns the logged operation, one of the OPERATION_ constants of {@link PetEntry}.
+     */
+    public String getOperation() {
+        return mOperation;
+    }
+
+    /**
+     * Returns true if the pet has to be deleted. An insert or update of a pet that was deleted
+     * since is also a delete, the values of the pet are gone.
+     */
+    public boolean isDelete() {
+        return PetEntry.OPERATION_DELETE.equals(mOperation) || mName == null;
+    }
+
+    @Nullable
+    public String getName() {
+        return mName;
+    }
+
+    @Nullable
+    public String getBreed() {
+        return mBreed;
+    }
+
+    public int getGender() {
+        return mGender;
+    }
+
+    public int getWeight() {
+        return mWeight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PetChange)) {
+            return false;
+        }
+        PetChange change = (PetChange) o;
+        return mSequence == change.mSequence
+                && mPetId == change.mPetId
+                && mGender == change.mGender
+                && mWeight == change.mWeight
+                && Objects.equals(mOperation, change.mOperation)
+                && Objects.equals(mName, change.mName)
+                && Objects.equals(mBreed, change.mBreed);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mSequence, mPetId, mOperation, mName, mBreed, mGender, mWeight);
+    }
+
+    @Override
+    public String toString() {
+        return mSequence + ":" + mOperation + " " + mPetId + (mName == null ? "" : " " + mName);
+    }
+}
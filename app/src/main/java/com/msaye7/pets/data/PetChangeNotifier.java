@@ -0,0 +1,243 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the change notifications of {@link PetProvider}. Changes are collected for a short
+ * window, or until the end of a batch, and sent together: each changed row is notified through
+ * its own uri carrying the operation, so observers of a single pet are only woken by changes to
+ * that pet. Before Android 11, which can't send several uris at once, a single notification of
+ * the pets uri is sent, listing the changed _IDs in {@link PetEntry#QUERY_PARAMETER_IDS}. When
+ * too many rows changed at once, a single notification of the whole table is sent instead.
+ *
+ * The changes made inside a batch are held back by the thread making them, and dropped if the
+ * batch is rolled back, so other threads keep sending theirs.
+ */
+final class PetChangeNotifier {
+
+    /** how long changes are collected before they are sent, in milliseconds. */
+    private static final long COALESCE_WINDOW_MS = 100;
+
+    /** maximum number of row uris sent at once, above it the whole table is notified. */
+    private static final int MAX_ROW_URIS = 32;
+
+    private final ContentResolver mResolver;
+
+    /** the pets uri of the shelter of the changes, the row uris are built on it. */
+    private final Uri mPetsUri;
+
+    /** sends the notifications off the threads that write. */
+    private final Handler mHandler;
+
+    private final Object mLock = new Object();
+
+    /** the operation of every changed row not notified yet, by _ID. */
+    private final Map<Long, String> mPendingRows = new LinkedHashMap<>();
+
+    /** set when rows changed without their _IDs being known. */
+    private boolean mPendingTable;
+
+    /** the batch in progress on the current thread, if any. */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    PetChangeNotifier(ContentResolver resolver, Uri petsUri) {
+        mResolver = resolver;
+        mPetsUri = petsUri;
+
+        HandlerThread thread = new HandlerThread("PetChangeNotifier");
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Records a change of the pet with the given _ID by one of the OPERATION_ constants of
+     * {@link PetEntry}.
+     */
+    void rowChanged(long id, String operation) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            merge(batch.mRows, id, operation);
+            return;
+        }
+        synchronized (mLock) {
+            merge(mPendingRows, id, operation);
+            scheduleFlushLocked(COALESCE_WINDOW_MS);
+        }
+    }
+
+    /**
+     * Records a change of an unknown set of pets.
+     */
+    void tableChanged() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.mTable = true;
+            return;
+        }
+        synchronized (mLock) {
+            mPendingTable = true;
+            scheduleFlushLocked(COALESCE_WINDOW_MS);
+        }
+    }
+
+    /**
+     * Holds back the changes recorded by the current thread until the matching
+     * {@link #endBatch(boolean)}. Batches can be nested.
+     */
+    void beginBatch() {
+        Batch batch = mBatch.get();
+        if (batch == null) {
+            batch = new Batch();
+            mBatch.set(batch);
+        }
+        batch.mDepth++;
+    }
+
+    /**
+     * Ends a batch of the current thread. Once the outermost batch ends, the changes collected
+     * during it are sent right away if every batch was committed, or dropped otherwise, like
+     * the transaction they were made in.
+     *
+     * @param committed whether the changes of the batch were committed.
+     */
+    void endBatch(boolean committed) {
+        Batch batch = mBatch.get();
+        if (batch == null) {
+            throw new IllegalStateException("No batch in progress");
+        }
+        batch.mCommitted &= committed;
+        if (--batch.mDepth > 0) {
+            return;
+        }
+        mBatch.remove();
+        if (!batch.mCommitted || (!batch.mTable && batch.mRows.isEmpty())) {
+            return;
+        }
+
+        synchronized (mLock) {
+            for (Map.Entry<Long, String> row : batch.mRows.entrySet()) {
+                merge(mPendingRows, row.getKey(), row.getValue());
+            }
+            mPendingTable |= batch.mTable;
+            mHandler.removeCallbacks(mFlushRunnable);
+            mFlushScheduled = false;
+            scheduleFlushLocked(0);
+        }
+    }
+
+    /**
+     * Adds the change of a row to the given changes by _ID.
+     */
+    private static void merge(Map<Long, String> rows, long id, String operation) {
+        String previous = rows.get(id);
+        if (PetEntry.OPERATION_INSERT.equals(previous)) {
+            // nobody has seen the row yet, so it is still an insert, or nothing at all.
+            if (PetEntry.OPERATION_DELETE.equals(operation)) {
+                rows.remove(id);
+            }
+        } else {
+            rows.put(id, operation);
+        }
+    }
+
+    private void scheduleFlushLocked(long delayMs) {
+        if (mFlushScheduled) {
+            return;
+        }
+        mFlushScheduled = true;
+        mHandler.postDelayed(mFlushRunnable, delayMs);
+    }
+
+    /**
+     * Sends the collected changes.
+     */
+    private void flush() {
+        Map<Long, String> rows;
+        boolean table;
+        synchronized (mLock) {
+            mFlushScheduled = false;
+            rows = new LinkedHashMap<>(mPendingRows);
+            table = mPendingTable;
+            mPendingRows.clear();
+            mPendingTable = false;
+        }
+
+        if (table || rows.size() > MAX_ROW_URIS) {
+            mResolver.notifyChange(mPetsUri, null);
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // sends one notification per operation, carrying all its row uris.
+            notifyRows(rows, PetEntry.OPERATION_INSERT, ContentResolver.NOTIFY_INSERT);
+            notifyRows(rows, PetEntry.OPERATION_UPDATE, ContentResolver.NOTIFY_UPDATE);
+            notifyRows(rows, PetEntry.OPERATION_DELETE, ContentResolver.NOTIFY_DELETE);
+        } else {
+            // a notification per row would wake the observers of the table once per row.
+            StringBuilder ids = new StringBuilder();
+            for (long id : rows.keySet()) {
+                if (ids.length() > 0) {
+                    ids.append(',');
+                }
+                ids.append(id);
+            }
+            mResolver.notifyChange(mPetsUri.buildUpon()
+                    .appendQueryParameter(PetEntry.QUERY_PARAMETER_IDS, ids.toString()).build(), null);
+        }
+    }
+
+    private void notifyRows(Map<Long, String> rows, String operation, int flags) {
+        List<Uri> uris = new ArrayList<>();
+        for (Map.Entry<Long, String> row : rows.entrySet()) {
+            if (operation.equals(row.getValue())) {
+                uris.add(buildChangeUri(row.getKey(), operation));
+            }
+        }
+        if (!uris.isEmpty()) {
+            mResolver.notifyChange(uris, null, flags);
+        }
+    }
+
+    private Uri buildChangeUri(long id, String operation) {
+        return ContentUris.withAppendedId(mPetsUri, id).buildUpon()
+                .appendQueryParameter(PetEntry.QUERY_PARAMETER_OPERATION, operation)
+                .build();
+    }
+
+    /** the changes of the batches in progress on a thread. */
+    private static final class Batch {
+
+        /** number of nested batches in progress. */
+        int mDepth;
+
+        /** cleared once any of the nested batches isn't committed. */
+        boolean mCommitted = true;
+
+        /** the operation of every row changed during the batch, by _ID. */
+        final Map<Long, String> mRows = new LinkedHashMap<>();
+
+        /** set when rows changed without their _IDs being known. */
+        boolean mTable;
+    }
+}
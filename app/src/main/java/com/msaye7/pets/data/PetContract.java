@@ -4,6 +4,8 @@ import android.content.ContentResolver;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import java.util.List;
+
 public final class PetContract {
 
     /** content authority of the content provider of the app. */
@@ -15,9 +17,211 @@ public final class PetContract {
     /** the path of the pets table */
     public static final String PATH_PETS = "pets";
 
+    /** the path of the pets search, appended to the path of the pets table */
+    public static final String PATH_SEARCH = "search";
+
+    /** the path of the photo of a pet, appended to the uri of the pet */
+    public static final String PATH_PHOTO = "photo";
+
+    /** the path of the pets statistics */
+    public static final String PATH_STATS = "stats";
+
+    /** the paths of the statistics by gender and by breed, appended to the path of the statistics */
+    public static final String PATH_GENDER = "gender";
+    public static final String PATH_BREED = "breed";
+
+    /** the path of the change log of the pets */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * the path of the shelters. Each shelter has its own database, so the uris of its pets,
+     * statistics and photos start with shelters/{id}/, see {@link #forShelter}.
+     */
+    public static final String PATH_SHELTERS = "shelters";
+
+    /** the path of the reads across all the shelters, appended to the path of the shelters */
+    public static final String PATH_ALL_SHELTERS = "all";
+
+    /**
+     * identify the shelter of the uris without shelter, whose pets are the ones stored before
+     * there were shelters.
+     */
+    public static final long DEFAULT_SHELTER_ID = 0;
+
+    /**
+     * key of the extras of the {@link android.content.ContentResolver#call} methods holding the
+     * _ID of the shelter they work on, {@link #DEFAULT_SHELTER_ID} if they don't have it.
+     * {@link #METHOD_GET_METRICS} always covers all the shelters.
+     */
+    public static final String KEY_SHELTER_ID = "shelter_id";
+
+    /**
+     * {@link android.content.ContentResolver#call} method adding the shelter of
+     * {@link #KEY_SHELTER_ID}, with an empty database. Does nothing if the shelter exists. The
+     * uris and methods of a shelter other than {@link #DEFAULT_SHELTER_ID} that wasn't added
+     * throw IllegalArgumentException.
+     */
+    public static final String METHOD_ADD_SHELTER = "add_shelter";
+
+
+    /**
+     * {@link android.content.ContentResolver#call} method returning the hit and miss counters
+     * of the single pet cache of the provider, under the KEY_ constants below.
+     */
+    public static final String METHOD_GET_ROW_CACHE_STATS = "get_row_cache_stats";
+
+    /**
+     * {@link android.content.ContentResolver#call} method recomputing the statistics tables
+     * from the pets table.
+     */
+    public static final String METHOD_REBUILD_STATS = "rebuild_stats";
+
+    /**
+     * {@link android.content.ContentResolver#call} method importing the pets of the file at
+     * {@link #KEY_SOURCE_URI}, in the format given as argument. The rejected pets are reported to
+     * the optional {@link #KEY_ERROR_REPORT_URI}. Returns {@link #KEY_IMPORTED_COUNT} and
+     * {@link #KEY_REJECTED_COUNT}.
+     */
+    public static final String METHOD_IMPORT_PETS = "import_pets";
+
+    /**
+     * {@link android.content.ContentResolver#call} method exporting all the pets to the file at
+     * {@link #KEY_DESTINATION_URI}, in the format given as argument. Returns
+     * {@link #KEY_EXPORTED_COUNT}.
+     */
+    public static final String METHOD_EXPORT_PETS = "export_pets";
+
+    /** identify the import and export formats. */
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_JSON = "json";
+
+    /** identify the keys of the import and export bundles. */
+    public static final String KEY_SOURCE_URI = "source_uri";
+    public static final String KEY_DESTINATION_URI = "destination_uri";
+    public static final String KEY_ERROR_REPORT_URI = "error_report_uri";
+    public static final String KEY_IMPORTED_COUNT = "imported_count";
+    public static final String KEY_REJECTED_COUNT = "rejected_count";
+    public static final String KEY_EXPORTED_COUNT = "exported_count";
+
+    /**
+     * {@link android.content.ContentResolver#call} method writing a consistent backup of the
+     * database while the app keeps running. Returns {@link #KEY_BACKUP_PATH} and
+     * {@link #KEY_CHECKSUM}. The backup holds the names of the photos but not the photos.
+     */
+    public static final String METHOD_BACKUP = "backup";
+
+    /**
+     * {@link android.content.ContentResolver#call} method replacing the database with the backup
+     * whose path is given as argument, after checking its checksum. The pets whose photo no
+     * longer exists lose their photo.
+     */
+    public static final String METHOD_RESTORE = "restore";
+
+    /** identify the keys of the bundle returned by {@link #METHOD_BACKUP}. */
+    public static final String KEY_BACKUP_PATH = "backup_path";
+    public static final String KEY_CHECKSUM = "checksum";
+
+    /**
+     * {@link android.content.ContentResolver#call} method inserting the number of generated pets
+     * given as argument, see {@link PetDataGenerator}. The extras can set {@link #KEY_SEED},
+     * {@link PetDataGenerator#DEFAULT_SEED} otherwise. Returns {@link #KEY_GENERATED_COUNT}.
+     */
+    public static final String METHOD_GENERATE_PETS = "generate_pets";
+
+    /** identify the keys of the bundles of {@link #METHOD_GENERATE_PETS}. */
+    public static final String KEY_SEED = "seed";
+    public static final String KEY_GENERATED_COUNT = "generated_count";
+
+    /**
+     * {@link android.content.ContentResolver#call} method compacting the change log now, see
+     * {@link ChangeEntry}. The log is also compacted in the background as pets are written.
+     */
+    public static final String METHOD_COMPACT_CHANGES = "compact_changes";
+
+    /**
+     * {@link android.content.ContentResolver#call} method returning the operation metrics of
+     * the provider. The bundle holds one bundle per uri pattern and operation that ran, under
+     * keys like "pet_id.query", with the KEY_ metrics below. It also holds
+     * {@link #KEY_REJECTED_COUNT}, {@link #KEY_CORRECTED_COUNT} and
+     * {@link #KEY_VALIDATION_FAILURES} for the validation of the written values, and the
+     * times of the warm-up of the provider once it finished.
+     */
+    public static final String METHOD_GET_METRICS = "get_metrics";
+
+    /** identify the keys of the bundles returned by {@link #METHOD_GET_METRICS}. */
+    public static final String KEY_OPERATION_COUNT = "count";
+    public static final String KEY_TOTAL_TIME_US = "total_time_us";
+    public static final String KEY_MAX_TIME_US = "max_time_us";
+    /** long array, element i counts the operations that took [2^i, 2^(i+1)) microseconds. */
+    public static final String KEY_LATENCY_HISTOGRAM = "latency_histogram";
+    /** rows returned by the queries, or rows written by the writes. */
+    public static final String KEY_ROWS_RETURNED = "rows_returned";
+    /** values written after their invalid fields were replaced by defaults. */
+    public static final String KEY_CORRECTED_COUNT = "corrected_count";
+    /** long array of the invalid name, breed, gender and weight counts. */
+    public static final String KEY_VALIDATION_FAILURES = "validation_failures";
+    /**
+     * time the provider took at startup to open the database of the default shelter, then to
+     * read the first page of the catalog ahead, see {@link PetEntry#CATALOG_PROJECTION}.
+     */
+    public static final String KEY_WARM_UP_OPEN_US = "warm_up_open_us";
+    public static final String KEY_WARM_UP_FIRST_PAGE_US = "warm_up_first_page_us";
+
+    /** identify the keys of the bundle returned by {@link #METHOD_GET_ROW_CACHE_STATS}. */
+    public static final String KEY_HIT_COUNT = "hit_count";
+    public static final String KEY_MISS_COUNT = "miss_count";
+    public static final String KEY_EVICTION_COUNT = "eviction_count";
+    public static final String KEY_SIZE = "size";
+    public static final String KEY_MAX_SIZE = "max_size";
 
     private PetContract(){ }
 
+    /**
+     * Returns the given uri of the pets, statistics or photos, moved to the shelter with the
+     * given _ID. Uris of the {@link #DEFAULT_SHELTER_ID} don't name their shelter.
+     */
+    public static Uri forShelter(Uri uri, long shelterId){
+        if (shelterId < 0) {
+            throw new IllegalArgumentException("Invalid shelter " + shelterId);
+        }
+        List<String> segments = uri.getPathSegments();
+        int start = isShelterUri(segments) ? 2 : 0;
+
+        Uri.Builder builder = new Uri.Builder().scheme(uri.getScheme()).encodedAuthority(uri.getEncodedAuthority());
+        if (shelterId != DEFAULT_SHELTER_ID) {
+            builder.appendPath(PATH_SHELTERS).appendPath(String.valueOf(shelterId));
+        }
+        for (int i = start; i < segments.size(); i++) {
+            builder.appendPath(segments.get(i));
+        }
+        return builder.encodedQuery(uri.getEncodedQuery()).build();
+    }
+
+    /**
+     * Returns the _ID of the shelter of the given uri, {@link #DEFAULT_SHELTER_ID} if it doesn't
+     * name one.
+     */
+    public static long getShelterId(Uri uri){
+        List<String> segments = uri.getPathSegments();
+        if (!isShelterUri(segments)) {
+            return DEFAULT_SHELTER_ID;
+        }
+        try {
+            return Long.parseLong(segments.get(1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shelter " + uri, e);
+        }
+    }
+
+    /**
+     * Returns true if the path starts with shelters/{id}/, the reads across all the shelters
+     * don't.
+     */
+    private static boolean isShelterUri(List<String> segments){
+        return segments.size() > 2 && PATH_SHELTERS.equals(segments.get(0))
+                && !PATH_ALL_SHELTERS.equals(segments.get(1));
+    }
+
     public final static class PetEntry implements BaseColumns {
         /** identify the table name. */
         public static final String TABLE_NAME = PATH_PETS;
@@ -25,6 +229,9 @@ public final class PetContract {
         /** identify the content uri of the pets table */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PETS);
 
+        /** identify the content uri of the full-text search over the pets names and breeds */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
         /** identify the required columns of the table. */
         public static final String _ID = BaseColumns._ID;
         public static final String COLUMN_PET_NAME = "name";
@@ -32,17 +239,117 @@ public final class PetContract {
         public static final String COLUMN_PET_GENDER = "gender";
         public static final String COLUMN_PET_WEIGHT = "weight";
 
+        /**
+         * identify the column naming the photo file of a pet, null if it has none. The name
+         * changes every time a new photo is written, so it can key caches of the photo. Only
+         * written by the provider, read the photo through {@link #buildPhotoUri(long)}.
+         */
+        public static final String COLUMN_PET_PHOTO = "photo";
+
+        /** breed given to pets whose breed is empty. */
+        public static final String BREED_UNKNOWN = "Unknown";
+
         /** identify gender constants. */
         public static final int GENDER_UNKNOWN = 0;
         public static final int GENDER_MALE = 1;
         public static final int GENDER_FEMALE = 2;
 
+        /** query parameter holding the maximum number of rows of a page. */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /** query parameter holding the _ID of the last row of the previous page. */
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * query parameter holding the sort key of the last row of the previous page, its name
+         * or its weight, see {@link #getSortColumn(String)}. Sorted pages given this key start
+         * at the right place even when that row was deleted or changed since.
+         */
+        public static final String QUERY_PARAMETER_AFTER_KEY = "after_key";
+
+        /**
+         * query parameters holding the _ID and the sort key of the last row of a page that is
+         * read again, see {@link #buildPageRangeUri}. The page then ends at that row in the
+         * order of the page, so it holds all the pets between the previous page and the next
+         * one, however many they are now.
+         */
+        public static final String QUERY_PARAMETER_UNTIL_ID = "until_id";
+        public static final String QUERY_PARAMETER_UNTIL_KEY = "until_key";
+
+        /**
+         * query parameter holding the order of the pets, one of the SORT_ values. Pages of a
+         * sorted query start right after the pet of {@link #QUERY_PARAMETER_AFTER_ID} in that
+         * order, at the sort key of {@link #QUERY_PARAMETER_AFTER_KEY} or else at the current
+         * one of that pet, which has none once it is deleted. Can't be combined with a sort
+         * order.
+         */
+        public static final String QUERY_PARAMETER_SORT = "sort";
+
+        /** identify the orders of the pets: by _ID, by name ignoring case, by weight. */
+        public static final String SORT_ID = "id";
+        public static final String SORT_NAME = "name";
+        public static final String SORT_WEIGHT = "weight";
+
+        /**
+         * query parameter keeping only the pets of the given gender, one of the GENDER_
+         * constants. {@link #GENDER_UNKNOWN} also keeps the pets whose gender was never set.
+         */
+        public static final String QUERY_PARAMETER_GENDER = "gender";
+
+        /** passed as gender to {@link #buildPageUri(long, int, String, int)} to keep all the pets. */
+        public static final int GENDER_ANY = -1;
+
+        /**
+         * the columns and number of pets of the pages of the catalog. The provider reads the
+         * first page of the catalog ahead when the process starts, the queries of that page
+         * with this projection are then served from memory.
+         */
+        public static final String[] CATALOG_PROJECTION = {_ID, COLUMN_PET_NAME, COLUMN_PET_BREED,
+                COLUMN_PET_PHOTO};
+        public static final int CATALOG_PAGE_SIZE = 50;
+
+        /**
+         * the columns of a pet shown by the editor. The queries of a single pet, or of the pets
+         * of {@link #QUERY_PARAMETER_IDS}, with these columns are served from memory once the
+         * pets were read.
+         */
+        public static final String[] DETAIL_PROJECTION = {_ID, COLUMN_PET_NAME, COLUMN_PET_BREED,
+                COLUMN_PET_GENDER, COLUMN_PET_WEIGHT, COLUMN_PET_PHOTO};
+
+        /**
+         * query parameter holding a comma separated list of at most {@link #MAX_IDS} _IDs, see
+         * {@link #buildPetsUri(long...)}. Can't be combined with a selection, a sort order or
+         * the parameters of a page.
+         */
+        public static final String QUERY_PARAMETER_IDS = "ids";
+
+        /** maximum number of _IDs of {@link #QUERY_PARAMETER_IDS}. */
+        public static final int MAX_IDS = 100;
+
+        /**
+         * query parameter of the row uris sent in change notifications, holding the operation
+         * that changed the row. Bursts of changes are coalesced, so a notification of
+         * {@link #CONTENT_URI} itself means any number of pets may have changed. Before Android
+         * 11 the changed rows are sent as a single notification of {@link #CONTENT_URI} listing
+         * their _IDs in {@link #QUERY_PARAMETER_IDS}, without the operations, see
+         * {@link #getChangedIds(Uri)}.
+         */
+        public static final String QUERY_PARAMETER_OPERATION = "operation";
+
+        /** identify the operations of the change notifications. */
+        public static final String OPERATION_INSERT = "insert";
+        public static final String OPERATION_UPDATE = "update";
+        public static final String OPERATION_DELETE = "delete";
+
         /** identify the MIME type constants */
         public static final String CONTENT_LIST_TYPE =
                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PETS;
 
+        /** identify the MIME type of the photos, stored as they were written. */
+        public static final String CONTENT_PHOTO_TYPE = "image/*";
+
         /** Data validation codes */
         public static final int VALID_DATA = 1000;
         public static final int NOT_VALID_DATA = 1010;
@@ -52,6 +359,159 @@ public final class PetContract {
         public static final int NOT_VALID_WEIGHT = 1050;
 
 
+        /**
+         * Builds the uri of a page of pets ordered by _ID, holding at most pageSize rows whose
+         * _ID is greater than afterId. Pass 0 as afterId to get the first page, then the _ID of
+         * the last row of each page to get the page after it.
+         */
+        public static Uri buildPageUri(long afterId, int pageSize){
+            return buildPageUri(afterId, pageSize, SORT_ID, GENDER_ANY);
+        }
+
+        /**
+         * Builds the uri of a page of pets in the given SORT_ order, holding at most pageSize
+         * rows that come after the pet afterId in that order. Pass {@link #GENDER_ANY} as
+         * gender to keep the pets of all genders.
+         */
+        public static Uri buildPageUri(long afterId, int pageSize, String sort, int gender){
+            return buildPageUri(afterId, null, pageSize, sort, gender);
+        }
+
+        /**
+         * Builds the uri of a page of pets in the given SORT_ order, holding at most pageSize
+         * rows that come after the pet afterId, whose sort key was afterKey, in that order.
+         * Pass the values of the last row of the previous page, read from the column of
+         * {@link #getSortColumn(String)}, so the page doesn't depend on that row still being
+         * there. afterKey is ignored by the order by _ID.
+         */
+        public static Uri buildPageUri(long afterId, String afterKey, int pageSize, String sort, int gender){
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(pageSize));
+            if (!SORT_ID.equals(sort)) {
+                builder.appendQueryParameter(QUERY_PARAMETER_SORT, sort);
+                if (afterKey != null) {
+                    builder.appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey);
+                }
+            }
+            if (gender != GENDER_ANY) {
+                builder.appendQueryParameter(QUERY_PARAMETER_GENDER, String.valueOf(gender));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Builds the uri of the pets of a page read again in the given SORT_ order: the pets
+         * that come after the pet afterId, whose sort key was afterKey, up to and including the
+         * pet untilId, whose sort key was untilKey. Pass the values of the last rows of the
+         * previous page and of the page, as they were when they were read, so the page keeps
+         * its place between the pages around it whichever pets changed. The page isn't limited.
+         */
+        public static Uri buildPageRangeUri(long afterId, String afterKey, long untilId, String untilKey,
+                                            String sort, int gender){
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_UNTIL_ID, String.valueOf(untilId))
+                    .appendQueryParameter(QUERY_PARAMETER_SORT, sort);
+            if (!SORT_ID.equals(sort)) {
+                if (afterKey != null) {
+                    builder.appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey);
+                }
+                if (untilKey != null) {
+                    builder.appendQueryParameter(QUERY_PARAMETER_UNTIL_KEY, untilKey);
+                }
+            }
+            if (gender != GENDER_ANY) {
+                builder.appendQueryParameter(QUERY_PARAMETER_GENDER, String.valueOf(gender));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Builds the uri of the pets with the given _IDs, in the order of the _IDs. The pets
+         * that don't exist are left out. The provider reads the pets it doesn't have in memory
+         * with a single query and keeps them, so reading the pets about to be opened ahead
+         * makes their single pet queries fast, see {@link #DETAIL_PROJECTION}.
+         */
+        public static Uri buildPetsUri(long... ids){
+            StringBuilder list = new StringBuilder();
+            for (long id : ids) {
+                if (list.length() > 0) {
+                    list.append(',');
+                }
+                list.append(id);
+            }
+            return CONTENT_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_IDS, list.toString()).build();
+        }
+
+        /**
+         * Builds the uri searching the pets whose name or breed has words starting with the
+         * words of the given query, best matches first. Use {@link #QUERY_PARAMETER_LIMIT} to
+         * bound the number of results.
+         */
+        public static Uri buildSearchUri(String query){
+            return CONTENT_SEARCH_URI.buildUpon().appendPath(query).build();
+        }
+
+        /**
+         * Builds the uri of the photo of the pet with the given _ID. Open it for reading through
+         * {@link ContentResolver#openFileDescriptor}, or for writing to replace the photo. A new
+         * photo is only shown once the file written to is closed.
+         */
+        public static Uri buildPhotoUri(long id){
+            return CONTENT_URI.buildUpon().appendPath(String.valueOf(id)).appendPath(PATH_PHOTO).build();
+        }
+
+        /**
+         * Returns the operation carried by a change notification uri, or null if the
+         * notification doesn't name it.
+         */
+        public static String getChangeOperation(Uri uri){
+            return uri.getQueryParameter(QUERY_PARAMETER_OPERATION);
+        }
+
+        /**
+         * Returns the _IDs of the pets a change notification uri is about, or null if the
+         * notification may be about any pet.
+         */
+        public static long[] getChangedIds(Uri uri){
+            try {
+                String list = uri.getQueryParameter(QUERY_PARAMETER_IDS);
+                if (list != null) {
+                    String[] values = list.split(",");
+                    long[] ids = new long[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        ids[i] = Long.parseLong(values[i]);
+                    }
+                    return ids;
+                }
+
+                List<String> segments = uri.getPathSegments();
+                int size = segments.size();
+                if (size >= 2 && PATH_PETS.equals(segments.get(size - 2))) {
+                    return new long[]{Long.parseLong(segments.get(size - 1))};
+                }
+            } catch (NumberFormatException e) {
+                // not the uri of pets.
+            }
+            return null;
+        }
+
+        /**
+         * Returns the column holding the sort key of the given SORT_ order, _ID for the order
+         * by _ID.
+         */
+        public static String getSortColumn(String sort){
+            switch (sort){
+                case SORT_NAME:
+                    return COLUMN_PET_NAME;
+                case SORT_WEIGHT:
+                    return COLUMN_PET_WEIGHT;
+                default:
+                    return _ID;
+            }
+        }
+
         public static boolean isValidGender(int gender){
             switch (gender){
                 case GENDER_UNKNOWN:
@@ -63,4 +523,141 @@ public final class PetContract {
             }
         }
     }
+
+    /**
+     * The shelters, and the reads answered across all of them. Each shelter is stored in its own
+     * database, created when the shelter is added by {@link PetContract#METHOD_ADD_SHELTER}, so
+     * the reads across the shelters query every database and merge the results.
+     */
+    public final static class ShelterEntry {
+        /**
+         * identify the content uri of the shelters, one row per shelter with the _ID of the
+         * shelter and the totals of its pets.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SHELTERS);
+
+        /** identify the content uri of the reads across all the shelters. */
+        public static final Uri CONTENT_ALL_URI = Uri.withAppendedPath(CONTENT_URI, PATH_ALL_SHELTERS);
+
+        /** identify the content uri of the totals of all the shelters, a single row. */
+        public static final Uri CONTENT_STATS_URI = Uri.withAppendedPath(CONTENT_ALL_URI, PATH_STATS);
+
+        /**
+         * identify the column of the _ID of the shelter, in the rows of the shelters and of the
+         * search across the shelters.
+         */
+        public static final String COLUMN_SHELTER_ID = "shelter_id";
+
+        /** identify the MIME type constants */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SHELTERS;
+
+        private ShelterEntry(){ }
+
+        /**
+         * Builds the uri searching the pets of all the shelters, like
+         * {@link PetEntry#buildSearchUri(String)}. Each row also holds the
+         * {@link #COLUMN_SHELTER_ID} of its pet.
+         */
+        public static Uri buildSearchUri(String query){
+            return CONTENT_ALL_URI.buildUpon().appendPath(PATH_PETS).appendPath(PATH_SEARCH)
+                    .appendPath(query).build();
+        }
+    }
+
+    /**
+     * The change log of the pets: one row per pet inserted, updated or deleted, in the order the
+     * changes were committed, so the pets can be synced elsewhere without exporting all of them,
+     * see {@link PetSyncClient}. Read the changes after the last synced sequence with
+     * {@link #buildChangesUri(long, int)}.
+     *
+     * The log is compacted: only the last change of each pet is kept, and deletes older than
+     * {@link #DELETE_RETENTION_MS} are dropped. A reader whose sequence is before dropped deletes
+     * gets {@link #EXTRA_RESET_REQUIRED}, and must start over from sequence 0. The log of a
+     * restored backup has a new {@link #EXTRA_LOG_ID}, its sequences restart as well.
+     */
+    public final static class ChangeEntry {
+        /** identify the content uri of the change log */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_CHANGES);
+
+        /** identify the columns of the changes. */
+        public static final String COLUMN_SEQUENCE = "sequence";
+        public static final String COLUMN_PET_ID = "pet_id";
+        /** one of the OPERATION_ constants of {@link PetEntry}. */
+        public static final String COLUMN_OPERATION = "operation";
+        /** time of the change, in milliseconds since the epoch. */
+        public static final String COLUMN_TIME = "time";
+
+        // the rows also hold the current name, breed, gender and weight of the pet, under the
+        // columns of PetEntry. They are null once the pet was deleted, a later change then
+        // deletes it.
+
+        /** query parameter holding the sequence of the last change already read, 0 for all. */
+        public static final String QUERY_PARAMETER_AFTER = "after";
+
+        /** query parameter holding the maximum number of changes, at most {@link #MAX_LIMIT}. */
+        public static final String QUERY_PARAMETER_LIMIT = PetEntry.QUERY_PARAMETER_LIMIT;
+
+        /** maximum number of changes read at once. */
+        public static final int MAX_LIMIT = 1000;
+
+        /** identify the extras of the cursors of the changes. */
+        public static final String EXTRA_LOG_ID = "log_id";
+        public static final String EXTRA_RESET_REQUIRED = "reset_required";
+
+        /** age after which the deletes are dropped from the log, in milliseconds. */
+        public static final long DELETE_RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+
+        /** identify the MIME type constants */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGES;
+
+        private ChangeEntry(){ }
+
+        /**
+         * Builds the uri of at most limit changes whose sequence is greater than after, oldest
+         * first. Pass the sequence of the last change of each page to get the page after it.
+         */
+        public static Uri buildChangesUri(long after, int limit){
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER, String.valueOf(after))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+    }
+
+    /**
+     * Statistics of the pets, kept up to date by triggers on every insert, update and delete, so
+     * reading them doesn't depend on the number of pets.
+     */
+    public final static class StatsEntry {
+        /** identify the content uri of the totals, a single row with the count and weights. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STATS);
+
+        /** identify the content uri of the counts by gender, one row per gender. */
+        public static final Uri CONTENT_GENDER_URI = Uri.withAppendedPath(CONTENT_URI, PATH_GENDER);
+
+        /** identify the content uri of the counts by breed, one row per breed. */
+        public static final Uri CONTENT_BREED_URI = Uri.withAppendedPath(CONTENT_URI, PATH_BREED);
+
+        /** identify the tables of the statistics. */
+        public static final String TOTALS_TABLE_NAME = "pet_totals";
+        public static final String GENDER_TABLE_NAME = "pet_gender_counts";
+        public static final String BREED_TABLE_NAME = "pet_breed_counts";
+
+        /** identify the columns of the statistics. */
+        public static final String COLUMN_COUNT = "count";
+        public static final String COLUMN_TOTAL_WEIGHT = "total_weight";
+        public static final String COLUMN_AVERAGE_WEIGHT = "average_weight";
+        public static final String COLUMN_GENDER = PetEntry.COLUMN_PET_GENDER;
+        public static final String COLUMN_BREED = PetEntry.COLUMN_PET_BREED;
+
+        /** identify the MIME type constants */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        private StatsEntry(){ }
+    }
 }
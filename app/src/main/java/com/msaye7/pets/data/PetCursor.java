@@ -0,0 +1,103 @@
+package com.msaye7.pets.data;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+/**
+ * Cursor over rows of the pets with typed accessors for their columns. The column indices are
+ * looked up once when the cursor is wrapped, instead of on every row.
+ *
+ * The name and breed can also be copied into reusable {@link CharArrayBuffer}s. Cursors read
+ * from the database copy the characters straight from their window, without creating a String
+ * per row.
+ */
+public final class PetCursor extends CursorWrapper {
+
+    private final int mIdColumn;
+    private final int mNameColumn;
+    private final int mBreedColumn;
+    private final int mGenderColumn;
+    private final int mWeightColumn;
+    private final int mPhotoColumn;
+
+    public PetCursor(Cursor cursor) {
+        super(cursor);
+        mIdColumn = cursor.getColumnIndex(PetEntry._ID);
+        mNameColumn = cursor.getColumnIndex(PetEntry.COLUMN_PET_NAME);
+        mBreedColumn = cursor.getColumnIndex(PetEntry.COLUMN_PET_BREED);
+        mGenderColumn = cursor.getColumnIndex(PetEntry.COLUMN_PET_GENDER);
+        mWeightColumn = cursor.getColumnIndex(PetEntry.COLUMN_PET_WEIGHT);
+        mPhotoColumn = cursor.getColumnIndex(PetEntry.COLUMN_PET_PHOTO);
+    }
+
+    /**
+     * Returns the cursor itself if it is already a {@link PetCursor}, a new wrapper otherwise.
+     */
+    public static PetCursor wrap(Cursor cursor) {
+        return cursor instanceof PetCursor ? (PetCursor) cursor : new PetCursor(cursor);
+    }
+
+    /**
+     * Returns true if the cursor holds the gender and weight of the pets, besides their _ID,
+     * name, breed and photo.
+     */
+    public boolean hasDetails() {
+        return mGenderColumn != -1 && mWeightColumn != -1;
+    }
+
+    public long getId() {
+        return getLong(checkColumn(mIdColumn, PetEntry._ID));
+    }
+
+    public String getName() {
+        return getString(checkColumn(mNameColumn, PetEntry.COLUMN_PET_NAME));
+    }
+
+    public String getBreed() {
+        return getString(checkColumn(mBreedColumn, PetEntry.COLUMN_PET_BREED));
+    }
+
+    /**
+     * Returns the gender, {@link PetEntry#GENDER_UNKNOWN} if it was never set.
+     */
+    public int getGender() {
+        int column = checkColumn(mGenderColumn, PetEntry.COLUMN_PET_GENDER);
+        return isNull(column) ? PetEntry.GENDER_UNKNOWN : getInt(column);
+    }
+
+    public int getWeight() {
+        return getInt(checkColumn(mWeightColumn, PetEntry.COLUMN_PET_WEIGHT));
+    }
+
+    /**
+     * Returns the name of the photo file, null if the pet has no photo.
+     */
+    public String getPhoto() {
+        return getString(checkColumn(mPhotoColumn, PetEntry.COLUMN_PET_PHOTO));
+    }
+
+    /**
+     * Copies the name into the buffer, growing its array only if the name doesn't fit.
+     */
+    public void copyNameToBuffer(CharArrayBuffer buffer) {
+        copyStringToBuffer(checkColumn(mNameColumn, PetEntry.COLUMN_PET_NAME), buffer);
+    }
+
+    /**
+     * Copies the breed into the buffer, growing its array only if the breed doesn't fit. A pet
+     * without breed leaves the buffer empty.
+     */
+    public void copyBreedToBuffer(CharArrayBuffer buffer) {
+        copyStringToBuffer(checkColumn(mBreedColumn, PetEntry.COLUMN_PET_BREED), buffer);
+    }
+
+    private static int checkColumn(int column, String name) {
+        if (column == -1) {
+            throw new IllegalStateException("The cursor doesn't hold the column " + name);
+        }
+        return column;
+    }
+}
@@ -0,0 +1,179 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates synthetic pets for load and stress tests. The same seed always generates the same
+ * pets, on a device or on the JVM, so tests and benchmarks can share their data.
+ *
+ * The names follow a Zipf distribution, so a few names are very common like in real shelters.
+ * The breeds follow their own popularity, and the weight of each pet is drawn from a normal
+ * distribution around the typical weight of its breed.
+ */
+public final class PetDataGenerator {
+
+    /** seed of the pets inserted from the menu. */
+    public static final long DEFAULT_SEED = 20210401L;
+
+    /** number of pets inserted per transaction. */
+    public static final int CHUNK_SIZE = 2000;
+
+    private static final String[] NAMES = {"Bella", "Max", "Luna", "Charlie", "Lucy", "Cooper",
+            "Daisy", "Milo", "Bailey", "Oliver", "Lola", "Rocky", "Sadie", "Buddy", "Molly",
+            "Leo", "Coco", "Teddy", "Ruby", "Bear", "Chloe", "Duke", "Penny", "Tucker", "Rosie",
+            "Oscar", "Zoe", "Jack", "Stella", "Toby", "Nala", "Simba", "Lily", "Loki", "Maggie",
+            "Winston", "Gracie", "Murphy", "Pepper", "Ziggy", "Willow", "Bentley", "Roxy",
+            "Jasper", "Ginger", "Felix", "Hazel", "Rex", "Mochi", "Toto"};
+
+    /** exponent of the Zipf distribution of the names. */
+    private static final double NAME_SKEW = 1.0;
+
+    private static final String[] BREEDS = {"Domestic Shorthair", "Labrador Retriever", "Mixed",
+            "Golden Retriever", "German Shepherd", "French Bulldog", "Beagle", "Poodle", "Persian",
+            "Maine Coon", "Siamese", "Dachshund", "Chihuahua", "Ragdoll", "Terrier",
+            PetEntry.BREED_UNKNOWN};
+
+    /** relative popularity of each breed. */
+    private static final int[] BREED_FREQUENCIES = {20, 12, 10, 8, 7, 6, 5, 5, 4, 4, 4, 4, 4, 3, 3, 3};
+
+    /** typical weight of each breed and its standard deviation, in kg. */
+    private static final double[] BREED_WEIGHTS = {4.5, 30, 15, 30, 32, 11, 10, 20, 4.5, 7, 4, 8, 2, 6, 7, 10};
+    private static final double[] BREED_WEIGHT_DEVIATIONS = {1, 4, 9, 4, 5, 2, 2, 8, 1, 1.5, 0.8, 2, 0.7, 1.2, 2, 6};
+
+    /** percentage of the pets whose gender is unknown, the others are evenly male or female. */
+    private static final int UNKNOWN_GENDER_PERCENT = 6;
+
+    private final Random mRandom;
+
+    /** cumulative probabilities of the names and breeds, searched with a uniform draw. */
+    private final double[] mNameDistribution;
+    private final double[] mBreedDistribution;
+
+    public PetDataGenerator(long seed) {
+        mRandom = new Random(seed);
+
+        double[] nameWeights = new double[NAMES.length];
+        for (int i = 0; i < nameWeights.length; i++) {
+            nameWeights[i] = 1 / Math.pow(i + 1, NAME_SKEW);
+        }
+        mNameDistribution = cumulate(nameWeights);
+
+        double[] breedWeights = new double[BREED_FREQUENCIES.length];
+        for (int i = 0; i < breedWeights.length; i++) {
+            breedWeights[i] = BREED_FREQUENCIES[i];
+        }
+        mBreedDistribution = cumulate(breedWeights);
+    }
+
+    /**
+     * Returns the values of the next pet.
+     */
+    public ContentValues nextPet() {
+        int breed = draw(mBreedDistribution);
+
+        int gender;
+        int genderDraw = mRandom.nextInt(100);
+        if (genderDraw < UNKNOWN_GENDER_PERCENT) {
+            gender = PetEntry.GENDER_UNKNOWN;
+        } else if (genderDraw % 2 == 0) {
+            gender = PetEntry.GENDER_MALE;
+        } else {
+            gender = PetEntry.GENDER_FEMALE;
+        }
+
+        double weight = BREED_WEIGHTS[breed] + mRandom.nextGaussian() * BREED_WEIGHT_DEVIATIONS[breed];
+
+        ContentValues values = new ContentValues(4);
+        values.put(PetEntry.COLUMN_PET_NAME, NAMES[draw(mNameDistribution)]);
+        values.put(PetEntry.COLUMN_PET_BREED, BREEDS[breed]);
+        values.put(PetEntry.COLUMN_PET_GENDER, gender);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, (int) Math.max(1, Math.round(weight)));
+        return values;
+    }
+
+    /**
+     * Inserts the given number of generated pets, {@link #CHUNK_SIZE} pets per transaction.
+     *
+     * @param listener notified after every chunk. Can be null.
+     * @return the number of inserted pets.
+     */
+    public int insertPets(ContentResolver resolver, int count, @Nullable ProgressListener listener) {
+        return insertPets(resolver, PetEntry.CONTENT_URI, count, listener);
+    }
+
+    /**
+     * Inserts the given number of generated pets into the shelter of the given pets uri, see
+     * {@link PetContract#forShelter}.
+     */
+    public int insertPets(final ContentResolver resolver, final Uri petsUri, int count,
+                          @Nullable ProgressListener listener) {
+        return insertPets(new PetImporter.Inserter() {
+            @Override
+            public int insert(ContentValues[] pets) {
+                return resolver.bulkInsert(petsUri, pets);
+            }
+        }, count, listener);
+    }
+
+    /**
+     * Inserts the given number of generated pets with the inserter, one chunk at a time.
+     */
+    int insertPets(PetImporter.Inserter inserter, int count, @Nullable ProgressListener listener) {
+        int inserted = 0;
+        int processed = 0;
+        ContentValues[] chunk = new ContentValues[Math.min(count, CHUNK_SIZE)];
+
+        while (processed < count) {
+            int chunkSize = Math.min(chunk.length, count - processed);
+            if (chunkSize < chunk.length) {
+                chunk = new ContentValues[chunkSize];
+            }
+            for (int i = 0; i < chunkSize; i++) {
+                chunk[i] = nextPet();
+            }
+
+            inserted += inserter.insert(chunk);
+            processed += chunkSize;
+            if (listener != null) {
+                listener.onProgress(processed, processed - inserted);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Returns the index of the interval of the cumulative distribution a uniform draw falls in.
+     */
+    private int draw(double[] distribution) {
+        int index = Arrays.binarySearch(distribution, mRandom.nextDouble());
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Returns the cumulative probabilities of the given weights. The last one is exactly 1.
+     */
+    private static double[] cumulate(double[] weights) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+
+        double[] distribution = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            distribution[i] = sum / total;
+        }
+        distribution[weights.length - 1] = 1;
+        return distribution;
+    }
+}
@@ -1,37 +1,875 @@
 package com.msaye7.pets.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.BaseColumns;
+import android.util.Log;
 
+import com.msaye7.pets.data.PetContract.ChangeEntry;
 import com.msaye7.pets.data.PetContract.PetEntry;
+import com.msaye7.pets.data.PetContract.StatsEntry;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PetDbHelper extends SQLiteOpenHelper {
 
-    private static final int DATABASE_VERSION = 2;
-    private static final String DATABASE_NAME = "pets.db";
+    /**
+     * Version of the schema. Every increment has its own step in {@link #upgradeTo}, so upgrades
+     * keep the stored pets.
+     *
+     * 2: pets table.
+     * 3: full-text search table over the pets names and breeds.
+     * 4: indexes on breed, gender and weight.
+     * 5: statistics tables kept up to date by triggers.
+     * 6: breeds stored once in a dictionary table and referenced by the pets through breed_id.
+     * 7: indexes serving the pages sorted by name or weight and filtered by gender.
+     * 8: photo column naming the photo file of each pet.
+     * 9: change log of the pets written by triggers.
+     */
+    static final int DATABASE_VERSION = 9;
+    static final String DATABASE_NAME = "pets.db";
+
+    /** name of the full-text search table indexing the pets names and breeds. */
+    static final String SEARCH_TABLE_NAME = "pets_fts";
+
+    /**
+     * name of the dictionary of the breeds. Each breed is stored once and the pets reference it
+     * through their breed_id column, which is NULL for pets without breed.
+     */
+    static final String BREEDS_TABLE_NAME = "breeds";
+    static final String COLUMN_BREED_ID = "breed_id";
+
+    /**
+     * name of the view joining the pets with the name of their breed. It has the columns of
+     * {@link PetEntry}, so all the queries of the pets read it instead of the pets table.
+     */
+    static final String PETS_VIEW_NAME = "pets_view";
+
+    /** name of the view of the breed counts with the name of each breed. */
+    static final String BREED_COUNTS_VIEW_NAME = "pet_breed_counts_view";
+
+    /** name of the change log of the pets, see {@link ChangeEntry}. */
+    static final String CHANGES_TABLE_NAME = "pet_changes";
+
+    /**
+     * name of the single row table describing the change log: the _ID of the log, new for every
+     * database and restore, and the sequence of the last delete dropped by the compaction.
+     */
+    static final String CHANGE_LOG_TABLE_NAME = "pet_change_log";
+    static final String COLUMN_LOG_ID = "log_id";
+    static final String COLUMN_COMPACTED_SEQUENCE = "compacted_sequence";
+
+    /**
+     * name of the table of the data rewrites left by upgrades. Each row is a backfill that still
+     * has to process the pets whose _ID is after last_id and up to end_id.
+     */
+    private static final String BACKFILLS_TABLE_NAME = "backfills";
+    private static final String COLUMN_BACKFILL_NAME = "name";
+    private static final String COLUMN_BACKFILL_LAST_ID = "last_id";
+    private static final String COLUMN_BACKFILL_END_ID = "end_id";
+
+    /** backfill adding the pets stored before version 3 to the full-text search table. */
+    private static final String BACKFILL_SEARCH_INDEX = "search_index";
+
+    /** backfill adding the pets stored before version 9 to the change log, as inserts. */
+    private static final String BACKFILL_CHANGE_LOG = "change_log";
+
+    /** number of pets rewritten per transaction by a backfill. */
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    /** how long a connection waits for a lock held by another connection, in milliseconds. */
+    private static final int BUSY_TIMEOUT_MS = 3000;
+
+    /** number of WAL pages after which SQLite checkpoints on its own when a write commits. */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    /** size the WAL file is truncated back to after a checkpoint, in bytes. */
+    private static final long JOURNAL_SIZE_LIMIT_BYTES = 4 * 1024 * 1024;
+
+    /** number of written rows after which the change log is compacted and a checkpoint scheduled. */
+    private static final int CHECKPOINT_INTERVAL_ROWS = 2000;
+
+    /** size of the WAL file above which the checkpoint waits for the readers and truncates it. */
+    private static final long WAL_TRUNCATE_THRESHOLD_BYTES = 16 * 1024 * 1024;
+
+    /** rows written since the last checkpoint was scheduled. */
+    private final AtomicInteger mRowsSinceCheckpoint = new AtomicInteger();
+
+    private final AtomicBoolean mCheckpointScheduled = new AtomicBoolean();
+
+    /** runs the checkpoints of all the databases off the threads that write. */
+    private static final ExecutorService sCheckpointExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "PetCheckpoint");
+        }
+    });
+
+    /** the last checkpoint scheduled, guarded by this. */
+    private Future<?> mCheckpoint;
+
+    /** set once the helper is closed, no checkpoint is scheduled after it. */
+    private volatile boolean mClosed;
 
     // LOG_TAG of the class.
     private static final String LOG_TAG = PetDbHelper.class.getSimpleName();
 
+    /*
+     * The schema statements. They are kept as constants so the host-side benchmarks create the
+     * exact same tables, indexes and triggers as the app.
+     */
+    static final String BREEDS_TABLE_CREATE = "CREATE TABLE " + BREEDS_TABLE_NAME + "("
+            + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+            + PetEntry.COLUMN_PET_BREED + " TEXT NOT NULL UNIQUE);";
+
+    static final String PETS_TABLE_CREATE = "CREATE TABLE " + PetEntry.TABLE_NAME + "("
+            + PetEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + PetEntry.COLUMN_PET_NAME + " TEXT NOT NULL, "
+            + COLUMN_BREED_ID + " INTEGER, " + PetEntry.COLUMN_PET_GENDER + " INTEGER, "
+            + PetEntry.COLUMN_PET_WEIGHT + " INTEGER DEFAULT 0, " + PetEntry.COLUMN_PET_PHOTO + " TEXT);";
+
+    static final String PETS_VIEW_CREATE = "CREATE VIEW " + PETS_VIEW_NAME + " AS SELECT "
+            + PetEntry.TABLE_NAME + "." + PetEntry._ID + " AS " + PetEntry._ID + ", "
+            + PetEntry.TABLE_NAME + "." + PetEntry.COLUMN_PET_NAME + " AS " + PetEntry.COLUMN_PET_NAME + ", "
+            + BREEDS_TABLE_NAME + "." + PetEntry.COLUMN_PET_BREED + " AS " + PetEntry.COLUMN_PET_BREED + ", "
+            + PetEntry.TABLE_NAME + "." + PetEntry.COLUMN_PET_GENDER + " AS " + PetEntry.COLUMN_PET_GENDER + ", "
+            + PetEntry.TABLE_NAME + "." + PetEntry.COLUMN_PET_WEIGHT + " AS " + PetEntry.COLUMN_PET_WEIGHT + ", "
+            + PetEntry.TABLE_NAME + "." + PetEntry.COLUMN_PET_PHOTO + " AS " + PetEntry.COLUMN_PET_PHOTO
+            + " FROM " + PetEntry.TABLE_NAME + " LEFT JOIN " + BREEDS_TABLE_NAME + " ON "
+            + BREEDS_TABLE_NAME + "." + BaseColumns._ID + " = " + PetEntry.TABLE_NAME + "." + COLUMN_BREED_ID + ";";
+
+    /** statements of {@link #createPetsTable}. */
+    static final String[] PETS_TABLES_CREATE = {BREEDS_TABLE_CREATE, PETS_TABLE_CREATE, PETS_VIEW_CREATE};
+
+    /** the name of the breed of the NEW or OLD row of a trigger. */
+    private static final String NEW_BREED = "(SELECT " + PetEntry.COLUMN_PET_BREED + " FROM "
+            + BREEDS_TABLE_NAME + " WHERE " + BaseColumns._ID + " = NEW." + COLUMN_BREED_ID + ")";
+
+    /** statements of {@link #createSearchTable}, the table, then its triggers. */
+    static final String[] SEARCH_TABLE_CREATE = {
+            "CREATE VIRTUAL TABLE " + SEARCH_TABLE_NAME + " USING fts4("
+                    + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED + ", prefix=\"2,3\");"
+    };
+
+    static final String[] SEARCH_TRIGGERS_CREATE = {
+            "CREATE TRIGGER pets_fts_insert AFTER INSERT ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + "INSERT INTO " + SEARCH_TABLE_NAME + "(docid, " + PetEntry.COLUMN_PET_NAME + ", "
+                    + PetEntry.COLUMN_PET_BREED + ") VALUES (NEW." + PetEntry._ID + ", NEW."
+                    + PetEntry.COLUMN_PET_NAME + ", " + NEW_BREED + "); END;",
+
+            "CREATE TRIGGER pets_fts_update AFTER UPDATE OF " + PetEntry.COLUMN_PET_NAME + ", "
+                    + COLUMN_BREED_ID + " ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + "UPDATE " + SEARCH_TABLE_NAME + " SET " + PetEntry.COLUMN_PET_NAME + " = NEW."
+                    + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED + " = " + NEW_BREED
+                    + " WHERE docid = NEW." + PetEntry._ID + "; END;",
+
+            "CREATE TRIGGER pets_fts_delete AFTER DELETE ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + SEARCH_TABLE_NAME + " WHERE docid = OLD." + PetEntry._ID + "; END;"
+    };
+
+    /** statements of {@link #createIndexes}. */
+    static final String[] INDEXES_CREATE = {
+            "CREATE INDEX IF NOT EXISTS pets_breed_id_index ON " + PetEntry.TABLE_NAME
+                    + "(" + COLUMN_BREED_ID + ");",
+            "CREATE INDEX IF NOT EXISTS pets_name_index ON " + PetEntry.TABLE_NAME
+                    + "(" + PetEntry.COLUMN_PET_NAME + " COLLATE NOCASE);",
+            "CREATE INDEX IF NOT EXISTS pets_gender_name_index ON " + PetEntry.TABLE_NAME
+                    + "(" + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_NAME + " COLLATE NOCASE);",
+            "CREATE INDEX IF NOT EXISTS pets_gender_weight_index ON " + PetEntry.TABLE_NAME
+                    + "(" + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT + ");",
+            "CREATE INDEX IF NOT EXISTS pets_weight_index ON " + PetEntry.TABLE_NAME
+                    + "(" + PetEntry.COLUMN_PET_WEIGHT + ");"
+    };
+
+    /** the current time in milliseconds since the epoch, in SQL. */
+    private static final String NOW_MS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    /**
+     * statements of {@link #createChangeLog}, the tables, then the triggers logging every write
+     * of a pet in the statement, and so in the transaction, of the write.
+     */
+    static final String[] CHANGES_TABLES_CREATE = {
+            "CREATE TABLE " + CHANGES_TABLE_NAME + "("
+                    + ChangeEntry.COLUMN_SEQUENCE + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + ChangeEntry.COLUMN_PET_ID + " INTEGER NOT NULL, "
+                    + ChangeEntry.COLUMN_OPERATION + " TEXT NOT NULL, "
+                    + ChangeEntry.COLUMN_TIME + " INTEGER NOT NULL);",
+            "CREATE INDEX pet_changes_pet_id_index ON " + CHANGES_TABLE_NAME + "(" + ChangeEntry.COLUMN_PET_ID + ");",
+            "CREATE TABLE " + CHANGE_LOG_TABLE_NAME + "("
+                    + "_id INTEGER PRIMARY KEY CHECK (_id = 0), "
+                    + COLUMN_LOG_ID + " TEXT NOT NULL, "
+                    + COLUMN_COMPACTED_SEQUENCE + " INTEGER NOT NULL);",
+
+            "CREATE TRIGGER pets_changes_insert AFTER INSERT ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + logChange("NEW", PetEntry.OPERATION_INSERT) + " END;",
+            "CREATE TRIGGER pets_changes_update AFTER UPDATE ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + logChange("NEW", PetEntry.OPERATION_UPDATE) + " END;",
+            "CREATE TRIGGER pets_changes_delete AFTER DELETE ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + logChange("OLD", PetEntry.OPERATION_DELETE) + " END;"
+    };
+
+    /** statements of {@link #createStatsTables}, before the statistics are computed. */
+    static final String[] STATS_TABLES_CREATE = {
+            "CREATE TABLE " + StatsEntry.TOTALS_TABLE_NAME + "("
+                    + "_id INTEGER PRIMARY KEY CHECK (_id = 0), "
+                    + StatsEntry.COLUMN_COUNT + " INTEGER NOT NULL, "
+                    + StatsEntry.COLUMN_TOTAL_WEIGHT + " INTEGER NOT NULL);",
+            "CREATE TABLE " + StatsEntry.GENDER_TABLE_NAME + "("
+                    + StatsEntry.COLUMN_GENDER + " INTEGER PRIMARY KEY, "
+                    + StatsEntry.COLUMN_COUNT + " INTEGER NOT NULL);",
+            "CREATE TABLE " + StatsEntry.BREED_TABLE_NAME + "("
+                    + COLUMN_BREED_ID + " INTEGER PRIMARY KEY, "
+                    + StatsEntry.COLUMN_COUNT + " INTEGER NOT NULL);",
+            "CREATE VIEW " + BREED_COUNTS_VIEW_NAME + " AS SELECT IFNULL(" + BREEDS_TABLE_NAME + "."
+                    + PetEntry.COLUMN_PET_BREED + ", '') AS " + StatsEntry.COLUMN_BREED + ", counts."
+                    + StatsEntry.COLUMN_COUNT + " AS " + StatsEntry.COLUMN_COUNT + " FROM "
+                    + StatsEntry.BREED_TABLE_NAME + " AS counts LEFT JOIN " + BREEDS_TABLE_NAME + " ON "
+                    + BREEDS_TABLE_NAME + "." + BaseColumns._ID + " = counts." + COLUMN_BREED_ID + ";",
+
+            "CREATE TRIGGER pets_stats_insert AFTER INSERT ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + addToStats("NEW", "+") + " END;",
+            "CREATE TRIGGER pets_stats_delete AFTER DELETE ON " + PetEntry.TABLE_NAME + " BEGIN "
+                    + addToStats("OLD", "-") + " END;",
+            "CREATE TRIGGER pets_stats_update AFTER UPDATE OF " + COLUMN_BREED_ID + ", "
+                    + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT + " ON "
+                    + PetEntry.TABLE_NAME + " BEGIN "
+                    + addToStats("OLD", "-") + addToStats("NEW", "+") + " END;"
+    };
+
     public PetDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * @param name the name of the database file, each shelter has its own, see {@link PetShard}.
+     */
+    PetDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+
+        // write-ahead logging lets the pool of reader connections keep reading a consistent
+        // snapshot while a write is in progress, and commits append to the log instead of
+        // syncing a rollback journal.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Configures the primary connection, which runs all the writes and checkpoints. The pragmas
+     * only apply to the connection that runs them, and only the primary connection runs
+     * transactions, so they run in one. The reader connections keep the busy timeout Android
+     * sets on every connection and don't checkpoint.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.beginTransaction();
+        try {
+            DatabaseUtils.longForQuery(db, "PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS, null);
+            DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES, null);
+            DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit = " + JOURNAL_SIZE_LIMIT_BYTES, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Closes the database and stops the checkpoints. A compaction or checkpoint already running
+     * is waited for, so it doesn't reopen the database once it is closed.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        Future<?> checkpoint;
+        synchronized (this) {
+            checkpoint = mCheckpoint;
+        }
+        if (checkpoint != null && !checkpoint.cancel(false)) {
+            try {
+                checkpoint.get(BUSY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException | TimeoutException e) {
+                Log.w(LOG_TAG, "Closing the database without waiting for its checkpoint", e);
+            }
+        }
+        synchronized (this) {
+            super.close();
+        }
+    }
+
+    /**
+     * Records rows committed by the provider. Every {@link #CHECKPOINT_INTERVAL_ROWS} rows the
+     * change log is compacted and a checkpoint is scheduled in the background, so the log and
+     * the WAL file stay bounded under sustained writes without the writers paying for them.
+     */
+    void onRowsWritten(int rows) {
+        if (rows <= 0 || mRowsSinceCheckpoint.addAndGet(rows) < CHECKPOINT_INTERVAL_ROWS) {
+            return;
+        }
+        mRowsSinceCheckpoint.set(0);
+
+        if (!mClosed && mCheckpointScheduled.compareAndSet(false, true)) {
+            synchronized (this) {
+                mCheckpoint = sCheckpointExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCheckpointScheduled.set(false);
+                        if (mClosed) {
+                            return;
+                        }
+                        try {
+                            compactChanges(getWritableDatabase(), ChangeEntry.DELETE_RETENTION_MS);
+                        } catch (SQLException e) {
+                            Log.e(LOG_TAG, "Failed to compact the change log", e);
+                        }
+                        try {
+                            checkpoint();
+                        } catch (SQLException e) {
+                            Log.e(LOG_TAG, "Failed to checkpoint the database", e);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Copies the committed pages of the WAL back into the database file. A passive checkpoint
+     * never waits for readers or writers. If the WAL has grown past
+     * {@link #WAL_TRUNCATE_THRESHOLD_BYTES} because readers kept it from being reset, the
+     * checkpoint waits for them (up to the busy timeout) and truncates it.
+     */
+    public void checkpoint() {
+        SQLiteDatabase db = getWritableDatabase();
+        File walFile = new File(db.getPath() + "-wal");
+        String mode = walFile.length() > WAL_TRUNCATE_THRESHOLD_BYTES ? "TRUNCATE" : "PASSIVE";
+
+        Cursor result = db.rawQuery("PRAGMA wal_checkpoint(" + mode + ")", null);
+        try {
+            // the columns are: busy, pages in the WAL, pages checkpointed.
+            if (result.moveToFirst() && result.getInt(0) != 0) {
+                Log.w(LOG_TAG, "Checkpoint " + mode + " blocked, " + result.getInt(2) + " of "
+                        + result.getInt(1) + " pages checkpointed");
+            }
+        } finally {
+            result.close();
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        String PETS_TABLE_CREATE = "CREATE TABLE " + PetEntry.TABLE_NAME + "("
-                + PetEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + PetEntry.COLUMN_PET_NAME + " TEXT NOT NULL, "
-                + PetEntry.COLUMN_PET_BREED + " TEXT, " + PetEntry.COLUMN_PET_GENDER + " INTEGER, "
-                + PetEntry.COLUMN_PET_WEIGHT + " INTEGER DEFAULT 0);";
-        db.execSQL(PETS_TABLE_CREATE);
+        createPetsTable(db);
+        createSearchTable(db);
+        createIndexes(db);
+        createBackfillsTable(db);
+        createStatsTables(db);
+        createChangeLog(db);
+    }
+
+    /**
+     * Creates the breeds dictionary, the pets table and the view joining them.
+     */
+    private void createPetsTable(SQLiteDatabase db) {
+        execAll(db, PETS_TABLES_CREATE);
     }
 
+    /**
+     * Writes a consistent snapshot of the database into the empty database file at the given
+     * path, while the app keeps reading and writing.
+     *
+     * The breeds and the pets are copied by INSERT ... SELECT from the attached live database,
+     * inside one deferred transaction of the snapshot connection. It only takes a read lock on
+     * the live database, so it reads a single WAL snapshot of it while the writers of the app
+     * go on. The transactions of {@link SQLiteDatabase} can't be used for it: they begin
+     * EXCLUSIVE or IMMEDIATE, which would take the write lock of every attached database, so
+     * the transaction is opened by a savepoint instead.
+     *
+     * Everything else is derived from the pets and rebuilt in the snapshot afterwards: the
+     * search index, the statistics, the indexes and a new change log holding an insert per pet.
+     * The snapshot is freshly packed, without the free pages of the live database.
+     */
+    void writeSnapshot(File destination) {
+        writeSnapshot(destination, null);
+    }
+
+    /**
+     * Writes a snapshot like {@link #writeSnapshot(File)}, running the given task once the
+     * copy read the live database, before the copy ends. Used by the tests to write while the
+     * copy holds its read lock.
+     */
+    void writeSnapshot(File destination, Runnable whileCopying) {
+        String livePath = getWritableDatabase().getPath();
+        String columns = PetEntry._ID + ", " + PetEntry.COLUMN_PET_NAME + ", " + COLUMN_BREED_ID
+                + ", " + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT + ", "
+                + PetEntry.COLUMN_PET_PHOTO;
+
+        SQLiteDatabase snapshot = SQLiteDatabase.openOrCreateDatabase(destination, null);
+        try {
+            createPetsTable(snapshot);
+
+            snapshot.execSQL("ATTACH DATABASE ? AS live", new Object[]{livePath});
+
+            // a savepoint outside of a transaction begins a deferred one. If the copy fails,
+            // closing the snapshot rolls it back.
+            snapshot.execSQL("SAVEPOINT copy;");
+            snapshot.execSQL("INSERT INTO " + BREEDS_TABLE_NAME + " SELECT * FROM live." + BREEDS_TABLE_NAME + ";");
+            snapshot.execSQL("INSERT INTO " + PetEntry.TABLE_NAME + "(" + columns + ") SELECT "
+                    + columns + " FROM live." + PetEntry.TABLE_NAME + ";");
+
+            // keeps the _IDs of deleted pets from being reused after a restore. The live
+            // sequence is read after the copy, so it is at least the largest copied _ID.
+            String liveSequence = "(SELECT seq FROM live.sqlite_sequence WHERE name = '" + PetEntry.TABLE_NAME + "')";
+            snapshot.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + PetEntry.TABLE_NAME + "';");
+            snapshot.execSQL("INSERT INTO sqlite_sequence(name, seq) SELECT '" + PetEntry.TABLE_NAME + "', "
+                    + liveSequence + " WHERE " + liveSequence + " IS NOT NULL;");
+            if (whileCopying != null) {
+                whileCopying.run();
+            }
+            snapshot.execSQL("RELEASE copy;");
+            snapshot.execSQL("DETACH DATABASE live");
+
+            snapshot.beginTransaction();
+            try {
+                createSearchTable(snapshot);
+                snapshot.execSQL("INSERT INTO " + SEARCH_TABLE_NAME + "(docid, " + PetEntry.COLUMN_PET_NAME
+                        + ", " + PetEntry.COLUMN_PET_BREED + ") SELECT " + PetEntry._ID + ", "
+                        + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED + " FROM "
+                        + PETS_VIEW_NAME + ";");
+                createIndexes(snapshot);
+                createBackfillsTable(snapshot);
+                createStatsTables(snapshot);
+                createChangeLog(snapshot);
+                snapshot.execSQL(getBackfillSql(BACKFILL_CHANGE_LOG), new Object[]{0, Long.MAX_VALUE});
+                snapshot.setVersion(DATABASE_VERSION);
+                snapshot.setTransactionSuccessful();
+            } finally {
+                snapshot.endTransaction();
+            }
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Creates the statistics tables and the triggers updating them incrementally on every
+     * insert, update and delete of a pet. A pet without gender is counted as
+     * {@link PetEntry#GENDER_UNKNOWN} and a pet without breed under breed_id 0, which the breed
+     * counts view shows as an empty breed.
+     */
+    private void createStatsTables(SQLiteDatabase db) {
+        execAll(db, STATS_TABLES_CREATE);
+        rebuildStats(db);
+    }
+
+    /**
+     * Returns the trigger statements adding (sign +) or removing (sign -) the NEW or OLD row
+     * of a trigger to the statistics. Counts dropping to 0 are deleted.
+     */
+    private static String addToStats(String row, String sign) {
+        String gender = "IFNULL(" + row + "." + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.GENDER_UNKNOWN + ")";
+        String breed = "IFNULL(" + row + "." + COLUMN_BREED_ID + ", 0)";
+        String weight = "IFNULL(" + row + "." + PetEntry.COLUMN_PET_WEIGHT + ", 0)";
+
+        return "UPDATE " + StatsEntry.TOTALS_TABLE_NAME + " SET "
+                + StatsEntry.COLUMN_COUNT + " = " + StatsEntry.COLUMN_COUNT + " " + sign + " 1, "
+                + StatsEntry.COLUMN_TOTAL_WEIGHT + " = " + StatsEntry.COLUMN_TOTAL_WEIGHT + " " + sign + " " + weight + "; "
+                + "INSERT OR IGNORE INTO " + StatsEntry.GENDER_TABLE_NAME + " VALUES (" + gender + ", 0); "
+                + "UPDATE " + StatsEntry.GENDER_TABLE_NAME + " SET " + StatsEntry.COLUMN_COUNT + " = "
+                + StatsEntry.COLUMN_COUNT + " " + sign + " 1 WHERE " + StatsEntry.COLUMN_GENDER + " = " + gender + "; "
+                + "DELETE FROM " + StatsEntry.GENDER_TABLE_NAME + " WHERE " + StatsEntry.COLUMN_GENDER + " = "
+                + gender + " AND " + StatsEntry.COLUMN_COUNT + " <= 0; "
+                + "INSERT OR IGNORE INTO " + StatsEntry.BREED_TABLE_NAME + " VALUES (" + breed + ", 0); "
+                + "UPDATE " + StatsEntry.BREED_TABLE_NAME + " SET " + StatsEntry.COLUMN_COUNT + " = "
+                + StatsEntry.COLUMN_COUNT + " " + sign + " 1 WHERE " + COLUMN_BREED_ID + " = " + breed + "; "
+                + "DELETE FROM " + StatsEntry.BREED_TABLE_NAME + " WHERE " + COLUMN_BREED_ID + " = "
+                + breed + " AND " + StatsEntry.COLUMN_COUNT + " <= 0;";
+    }
+
+    /**
+     * Returns the trigger statement logging a change of the NEW or OLD row of a trigger.
+     */
+    private static String logChange(String row, String operation) {
+        return "INSERT INTO " + CHANGES_TABLE_NAME + "(" + ChangeEntry.COLUMN_PET_ID + ", "
+                + ChangeEntry.COLUMN_OPERATION + ", " + ChangeEntry.COLUMN_TIME + ") VALUES ("
+                + row + "." + PetEntry._ID + ", '" + operation + "', " + NOW_MS + ");";
+    }
+
+    /**
+     * Creates the change log, with a new log _ID, and the triggers writing it.
+     */
+    private void createChangeLog(SQLiteDatabase db) {
+        execAll(db, CHANGES_TABLES_CREATE);
+        db.execSQL("INSERT INTO " + CHANGE_LOG_TABLE_NAME + " VALUES (0, ?, 0);",
+                new Object[]{UUID.randomUUID().toString()});
+    }
+
+    /**
+     * Gives the change log a new _ID, after the database was replaced by a restore. Its
+     * sequences may have gone back, so the readers of the old log have to start over.
+     */
+    void resetChangeLogId(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + CHANGE_LOG_TABLE_NAME + " SET " + COLUMN_LOG_ID + " = ?;",
+                new Object[]{UUID.randomUUID().toString()});
+    }
+
+    /**
+     * Compacts the change log in a single transaction: only the last change of each pet is
+     * kept, since the readers get the current values of the pet with it, and the deletes older
+     * than the given age are dropped. The sequence of the last dropped delete is recorded, the
+     * readers that are before it missed the delete and have to start over.
+     *
+     * @return the number of dropped changes.
+     */
+    int compactChanges(SQLiteDatabase db, long deleteRetentionMs) {
+        long deletedBefore = System.currentTimeMillis() - deleteRetentionMs;
+        String expiredDeletes = ChangeEntry.COLUMN_OPERATION + " = '" + PetEntry.OPERATION_DELETE + "' AND "
+                + ChangeEntry.COLUMN_TIME + " < ?";
+        String[] expiredDeletesArgs = {String.valueOf(deletedBefore)};
+
+        db.beginTransactionNonExclusive();
+        try {
+            int dropped = db.delete(CHANGES_TABLE_NAME, "EXISTS (SELECT 1 FROM " + CHANGES_TABLE_NAME
+                    + " AS later WHERE later." + ChangeEntry.COLUMN_PET_ID + " = " + CHANGES_TABLE_NAME + "."
+                    + ChangeEntry.COLUMN_PET_ID + " AND later." + ChangeEntry.COLUMN_SEQUENCE + " > "
+                    + CHANGES_TABLE_NAME + "." + ChangeEntry.COLUMN_SEQUENCE + ")", null);
+
+            db.execSQL("UPDATE " + CHANGE_LOG_TABLE_NAME + " SET " + COLUMN_COMPACTED_SEQUENCE + " = MAX("
+                    + COLUMN_COMPACTED_SEQUENCE + ", IFNULL((SELECT MAX(" + ChangeEntry.COLUMN_SEQUENCE + ") FROM "
+                    + CHANGES_TABLE_NAME + " WHERE " + expiredDeletes + "), 0));", new Object[]{deletedBefore});
+            dropped += db.delete(CHANGES_TABLE_NAME, expiredDeletes, expiredDeletesArgs);
+
+            db.setTransactionSuccessful();
+            return dropped;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Recomputes the statistics tables from the pets table, in a single transaction.
+     */
+    void rebuildStats(SQLiteDatabase db) {
+        db.beginTransactionNonExclusive();
+        try {
+            db.execSQL("DELETE FROM " + StatsEntry.TOTALS_TABLE_NAME + ";");
+            db.execSQL("DELETE FROM " + StatsEntry.GENDER_TABLE_NAME + ";");
+            db.execSQL("DELETE FROM " + StatsEntry.BREED_TABLE_NAME + ";");
+
+            db.execSQL("INSERT INTO " + StatsEntry.TOTALS_TABLE_NAME + " SELECT 0, COUNT(*), IFNULL(SUM("
+                    + PetEntry.COLUMN_PET_WEIGHT + "), 0) FROM " + PetEntry.TABLE_NAME + ";");
+            db.execSQL("INSERT INTO " + StatsEntry.GENDER_TABLE_NAME + " SELECT IFNULL("
+                    + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.GENDER_UNKNOWN + ") AS g, COUNT(*) FROM "
+                    + PetEntry.TABLE_NAME + " GROUP BY g;");
+            db.execSQL("INSERT INTO " + StatsEntry.BREED_TABLE_NAME + " SELECT IFNULL("
+                    + COLUMN_BREED_ID + ", 0) AS b, COUNT(*) FROM "
+                    + PetEntry.TABLE_NAME + " GROUP BY b;");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Creates the indexes used by the filtered and sorted queries of the pets table.
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        execAll(db, INDEXES_CREATE);
+    }
+
+    private void createBackfillsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + BACKFILLS_TABLE_NAME + "("
+                + COLUMN_BACKFILL_NAME + " TEXT PRIMARY KEY, "
+                + COLUMN_BACKFILL_LAST_ID + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_BACKFILL_END_ID + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * Creates the full-text search table over the pets names and breeds, and the triggers
+     * keeping it in sync with the pets table. The docid of each search row is the _ID of its pet.
+     * Prefix indexes of 2 and 3 characters keep search-as-you-type prefix queries fast.
+     */
+    private void createSearchTable(SQLiteDatabase db) {
+        execAll(db, SEARCH_TABLE_CREATE);
+        execAll(db, SEARCH_TRIGGERS_CREATE);
+    }
+
+    private static void execAll(SQLiteDatabase db, String[] statements) {
+        for (String statement : statements) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * Upgrades the schema one version at a time, keeping the stored pets, inside the upgrade
+     * transaction. The search index and the change log only add rows the app can do without
+     * for a while, so they are scheduled as backfills and filled in batches by
+     * {@link #runBackfills()}. The copy of the pets table by {@link #convertBreeds} and the
+     * statistics of versions 5 and 6 pass over every pet here instead: the triggers and
+     * indexes of the later steps are built on them, and the pets can't be read without them.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        String PETS_TABLE_DELETE = "DROP TABLE IF EXISTS " + PetEntry.TABLE_NAME + ";";
-        db.execSQL(PETS_TABLE_DELETE);
-        onCreate(db);
+        if (oldVersion < 2) {
+            // there is no migration from the schemas before version 2.
+            Log.w(LOG_TAG, "Recreating the database from version " + oldVersion);
+            db.execSQL("DROP VIEW IF EXISTS " + PETS_VIEW_NAME + ";");
+            db.execSQL("DROP VIEW IF EXISTS " + BREED_COUNTS_VIEW_NAME + ";");
+            db.execSQL("DROP TABLE IF EXISTS " + PetEntry.TABLE_NAME + ";");
+            db.execSQL("DROP TABLE IF EXISTS " + BREEDS_TABLE_NAME + ";");
+            db.execSQL("DROP TABLE IF EXISTS " + SEARCH_TABLE_NAME + ";");
+            db.execSQL("DROP TABLE IF EXISTS " + BACKFILLS_TABLE_NAME + ";");
+            db.execSQL("DROP TABLE IF EXISTS " + StatsEntry.TOTALS_TABLE_NAME + ";");
+            db.execSQL("DROP TABLE IF EXISTS " + StatsEntry.GENDER_TABLE_NAME + ";");
+            db.execSQL("DROP TABLE IF EXISTS " + StatsEntry.BREED_TABLE_NAME + ";");
+            onCreate(db);
+            return;
+        }
+
+        // the steps of versions 3 to 5 create their triggers and indexes on breed_id, so the
+        // pets table is converted before any of them runs. Step 6 then replaces what was built
+        // on the breed text before.
+        if (oldVersion < 6) {
+            convertBreeds(db);
+        }
+
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            upgradeTo(db, version);
+        }
+    }
+
+    /**
+     * Moves the breeds of the pets table of versions 2 to 5 into the breeds dictionary, and
+     * rebuilds the pets table with a breed_id column. The _IDs of the pets and the sequence of
+     * the table are kept. The triggers and indexes of the old table are dropped with it, the
+     * upgrade steps recreate them.
+     */
+    private void convertBreeds(SQLiteDatabase db) {
+        String oldTable = PetEntry.TABLE_NAME + "_old";
+        long sequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = ?",
+                new String[]{PetEntry.TABLE_NAME});
+
+        dropTriggers(db);
+        db.execSQL("ALTER TABLE " + PetEntry.TABLE_NAME + " RENAME TO " + oldTable + ";");
+        createPetsTable(db);
+
+        db.execSQL("INSERT OR IGNORE INTO " + BREEDS_TABLE_NAME + "(" + PetEntry.COLUMN_PET_BREED + ") SELECT DISTINCT "
+                + PetEntry.COLUMN_PET_BREED + " FROM " + oldTable + " WHERE " + PetEntry.COLUMN_PET_BREED + " IS NOT NULL;");
+        db.execSQL("INSERT INTO " + PetEntry.TABLE_NAME + "(" + PetEntry._ID + ", " + PetEntry.COLUMN_PET_NAME
+                + ", " + COLUMN_BREED_ID + ", " + PetEntry.COLUMN_PET_GENDER + ", " + PetEntry.COLUMN_PET_WEIGHT
+                + ") SELECT old." + PetEntry._ID + ", old." + PetEntry.COLUMN_PET_NAME + ", " + BREEDS_TABLE_NAME
+                + "." + BaseColumns._ID + ", old." + PetEntry.COLUMN_PET_GENDER + ", old." + PetEntry.COLUMN_PET_WEIGHT
+                + " FROM " + oldTable + " AS old LEFT JOIN " + BREEDS_TABLE_NAME + " ON " + BREEDS_TABLE_NAME + "."
+                + PetEntry.COLUMN_PET_BREED + " = old." + PetEntry.COLUMN_PET_BREED + ";");
+        db.execSQL("DROP TABLE " + oldTable + ";");
+
+        // the copy set the sequence to the largest _ID, the _IDs of the deleted pets after it
+        // must not be reused either.
+        db.execSQL("UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?;",
+                new Object[]{sequence, PetEntry.TABLE_NAME});
+        if (sequence > 0) {
+            db.execSQL("INSERT INTO sqlite_sequence(name, seq) SELECT ?, ? WHERE NOT EXISTS "
+                    + "(SELECT 1 FROM sqlite_sequence WHERE name = ?);",
+                    new Object[]{PetEntry.TABLE_NAME, sequence, PetEntry.TABLE_NAME});
+        }
+    }
+
+    /**
+     * Drops the triggers of the pets table, if they exist.
+     */
+    private static void dropTriggers(SQLiteDatabase db) {
+        String[] triggers = {"pets_fts_insert", "pets_fts_update", "pets_fts_delete",
+                "pets_stats_insert", "pets_stats_delete", "pets_stats_update",
+                "pets_changes_insert", "pets_changes_update", "pets_changes_delete"};
+        for (String trigger : triggers) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + trigger + ";");
+        }
+    }
+
+    /**
+     * Upgrades the schema from version - 1 to the given version.
+     */
+    private void upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 3:
+                createSearchTable(db);
+                createBackfillsTable(db);
+                scheduleBackfill(db, BACKFILL_SEARCH_INDEX);
+                break;
+            case 4:
+                createIndexes(db);
+                break;
+            case 5:
+                // one aggregate pass over the pets, served by the indexes of version 4.
+                createStatsTables(db);
+                break;
+            case 6:
+                // the pets table was converted by convertBreeds(). Replaces the triggers, index
+                // and breed counts keyed by the breed text, or recreates the ones the earlier
+                // steps just built.
+                dropTriggers(db);
+                execAll(db, SEARCH_TRIGGERS_CREATE);
+                db.execSQL("DROP INDEX IF EXISTS pets_breed_index;");
+                createIndexes(db);
+                db.execSQL("DROP VIEW IF EXISTS " + BREED_COUNTS_VIEW_NAME + ";");
+                db.execSQL("DROP TABLE IF EXISTS " + StatsEntry.TOTALS_TABLE_NAME + ";");
+                db.execSQL("DROP TABLE IF EXISTS " + StatsEntry.GENDER_TABLE_NAME + ";");
+                db.execSQL("DROP TABLE IF EXISTS " + StatsEntry.BREED_TABLE_NAME + ";");
+                createStatsTables(db);
+                break;
+            case 7:
+                // the gender index is a prefix of the new gender indexes.
+                db.execSQL("DROP INDEX IF EXISTS pets_gender_index;");
+                createIndexes(db);
+                break;
+            case 8:
+                // the pets table rebuilt by convertBreeds() already has the column.
+                if (!hasColumn(db, PetEntry.TABLE_NAME, PetEntry.COLUMN_PET_PHOTO)) {
+                    db.execSQL("ALTER TABLE " + PetEntry.TABLE_NAME + " ADD COLUMN "
+                            + PetEntry.COLUMN_PET_PHOTO + " TEXT;");
+                }
+                db.execSQL("DROP VIEW IF EXISTS " + PETS_VIEW_NAME + ";");
+                db.execSQL(PETS_VIEW_CREATE);
+                break;
+            case 9:
+                createChangeLog(db);
+                scheduleBackfill(db, BACKFILL_CHANGE_LOG);
+                break;
+            default:
+                throw new IllegalStateException("No upgrade to database version " + version);
+        }
+    }
+
+    private static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameColumn = columns.getColumnIndexOrThrow("name");
+            while (columns.moveToNext()) {
+                if (column.equals(columns.getString(nameColumn))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            columns.close();
+        }
+    }
+
+    /**
+     * Schedules the backfill over the pets stored at the time of the upgrade. Pets inserted
+     * afterwards are kept up to date by the triggers, so the backfill stops at the current
+     * last _ID.
+     */
+    private void scheduleBackfill(SQLiteDatabase db, String name) {
+        long endId = DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL(MAX(" + PetEntry._ID + "), 0) FROM " + PetEntry.TABLE_NAME, null);
+        db.execSQL("INSERT OR REPLACE INTO " + BACKFILLS_TABLE_NAME + "(" + COLUMN_BACKFILL_NAME + ", "
+                        + COLUMN_BACKFILL_LAST_ID + ", " + COLUMN_BACKFILL_END_ID + ") VALUES (?, 0, ?);",
+                new Object[]{name, endId});
+    }
+
+    /**
+     * Returns the statement of the backfill processing the pets whose _ID is after the first
+     * argument and up to the second one.
+     */
+    private static String getBackfillSql(String name) {
+        switch (name) {
+            case BACKFILL_SEARCH_INDEX:
+                return "INSERT INTO " + SEARCH_TABLE_NAME + "(docid, " + PetEntry.COLUMN_PET_NAME + ", "
+                        + PetEntry.COLUMN_PET_BREED + ") SELECT " + PetEntry._ID + ", "
+                        + PetEntry.COLUMN_PET_NAME + ", " + PetEntry.COLUMN_PET_BREED + " FROM "
+                        + PETS_VIEW_NAME + " WHERE " + PetEntry._ID + " > ? AND " + PetEntry._ID + " <= ?";
+            case BACKFILL_CHANGE_LOG:
+                return "INSERT INTO " + CHANGES_TABLE_NAME + "(" + ChangeEntry.COLUMN_PET_ID + ", "
+                        + ChangeEntry.COLUMN_OPERATION + ", " + ChangeEntry.COLUMN_TIME + ") SELECT "
+                        + PetEntry._ID + ", '" + PetEntry.OPERATION_INSERT + "', " + NOW_MS + " FROM "
+                        + PetEntry.TABLE_NAME + " WHERE " + PetEntry._ID + " > ? AND " + PetEntry._ID + " <= ?";
+            default:
+                return null;
+        }
     }
 
+    /**
+     * Runs the backfills left by upgrades, {@link #BACKFILL_BATCH_SIZE} pets per transaction, so
+     * queries and writes can interleave with them. A backfill resumes where it stopped if the
+     * process dies. Call it off the main thread.
+     */
+    public void runBackfills() {
+        while (runBackfillBatch()) {
+            // every batch is committed on its own.
+        }
+    }
+
+    /**
+     * Runs the next batch of the backfills left by upgrades, see {@link #runBackfills()}.
+     *
+     * @return false if no backfill is left.
+     */
+    boolean runBackfillBatch() {
+        SQLiteDatabase db = getWritableDatabase();
+
+        String name;
+        long lastId;
+        long endId;
+        Cursor backfills = db.query(BACKFILLS_TABLE_NAME, null, null, null, null, null, "rowid", "1");
+        try {
+            if (!backfills.moveToFirst()) {
+                return false;
+            }
+            name = backfills.getString(backfills.getColumnIndexOrThrow(COLUMN_BACKFILL_NAME));
+            lastId = backfills.getLong(backfills.getColumnIndexOrThrow(COLUMN_BACKFILL_LAST_ID));
+            endId = backfills.getLong(backfills.getColumnIndexOrThrow(COLUMN_BACKFILL_END_ID));
+        } finally {
+            backfills.close();
+        }
+
+        String sql = getBackfillSql(name);
+        if (sql == null) {
+            Log.e(LOG_TAG, "Dropping unknown backfill " + name);
+            db.delete(BACKFILLS_TABLE_NAME, COLUMN_BACKFILL_NAME + "=?", new String[]{name});
+            return true;
+        }
+
+        long batchEndId = endId;
+        db.beginTransactionNonExclusive();
+        try {
+            if (lastId < endId) {
+                // the _ID of the last pet of this batch, or endId if fewer pets are left.
+                batchEndId = DatabaseUtils.longForQuery(db,
+                        "SELECT IFNULL(MAX(" + PetEntry._ID + "), ?) FROM (SELECT " + PetEntry._ID
+                                + " FROM " + PetEntry.TABLE_NAME + " WHERE " + PetEntry._ID + " > ? AND "
+                                + PetEntry._ID + " <= ? ORDER BY " + PetEntry._ID + " LIMIT "
+                                + BACKFILL_BATCH_SIZE + ")",
+                        new String[]{String.valueOf(endId), String.valueOf(lastId), String.valueOf(endId)});
+                db.execSQL(sql, new Object[]{lastId, batchEndId});
+            }
+
+            if (batchEndId < endId) {
+                db.execSQL("UPDATE " + BACKFILLS_TABLE_NAME + " SET " + COLUMN_BACKFILL_LAST_ID
+                        + " = ? WHERE " + COLUMN_BACKFILL_NAME + " = ?", new Object[]{batchEndId, name});
+            } else {
+                db.delete(BACKFILLS_TABLE_NAME, COLUMN_BACKFILL_NAME + "=?", new String[]{name});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (batchEndId >= endId) {
+            Log.i(LOG_TAG, "Finished backfill " + name);
+        }
+        return true;
+    }
 }
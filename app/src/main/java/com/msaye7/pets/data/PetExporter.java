@@ -0,0 +1,216 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.JsonWriter;
+
+import androidx.annotation.Nullable;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exports the pets to CSV or JSON streams in the format read by {@link PetImporter}. The pets
+ * are read by pages in the order of their _IDs and written straight from the cursor of each
+ * page, so the file is never built in memory and the database is only read one page at a
+ * time. The CSV text fields are copied through reusable buffers instead of a String per field.
+ */
+public final class PetExporter {
+
+    /**
+     * Reads a page of the exported pets, with the {@link #COLUMNS}.
+     */
+    interface Reader {
+
+        /**
+         * @return at most limit pets whose _ID is greater than afterId, in the order of their
+         * _IDs.
+         */
+        Cursor read(long afterId, int limit);
+    }
+
+    /** number of pets read per page. */
+    static final int PAGE_SIZE = 500;
+
+    /** number of rows between two progress notifications. */
+    private static final int PROGRESS_INTERVAL = 500;
+
+    static final String[] COLUMNS = new String[]{
+            PetEntry._ID,
+            PetEntry.COLUMN_PET_NAME,
+            PetEntry.COLUMN_PET_BREED,
+            PetEntry.COLUMN_PET_GENDER,
+            PetEntry.COLUMN_PET_WEIGHT
+    };
+
+    private final Reader mReader;
+
+    public PetExporter(ContentResolver resolver) {
+        this(resolver, PetEntry.CONTENT_URI);
+    }
+
+    /**
+     * @param petsUri the pets uri of the exported shelter, see {@link PetContract#forShelter}.
+     */
+    public PetExporter(final ContentResolver resolver, final Uri petsUri) {
+        this(new Reader() {
+            @Override
+            public Cursor read(long afterId, int limit) {
+                Uri page = petsUri.buildUpon()
+                        .appendQueryParameter(PetEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                        .appendQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                        .build();
+                return resolver.query(page, COLUMNS, null, null, null);
+            }
+        });
+    }
+
+    PetExporter(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Exports all the pets to the stream, which isn't closed.
+     *
+     * @param format   {@link PetContract#FORMAT_CSV} or {@link PetContract#FORMAT_JSON}.
+     * @param listener notified every {@link #PROGRESS_INTERVAL} rows. Can be null.
+     * @return the number of exported pets.
+     */
+    public int exportPets(OutputStream out, String format, @Nullable ProgressListener listener)
+            throws IOException {
+        if (!PetContract.FORMAT_CSV.equals(format) && !PetContract.FORMAT_JSON.equals(format)) {
+            throw new IllegalArgumentException("Unknown export format " + format);
+        }
+
+        boolean csv = PetContract.FORMAT_CSV.equals(format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        JsonWriter json = null;
+        if (csv) {
+            // the _ID isn't exported, the imported pets get new ones.
+            for (int i = 1; i < COLUMNS.length; i++) {
+                writer.write(i == 1 ? "" : ",");
+                writer.write(COLUMNS[i]);
+            }
+            writer.write('\n');
+        } else {
+            json = new JsonWriter(writer);
+            json.beginArray();
+        }
+
+        // reused by every row, they only grow for a longer name or breed.
+        CharArrayBuffer name = new CharArrayBuffer(64);
+        CharArrayBuffer breed = new CharArrayBuffer(64);
+
+        int count = 0;
+        long lastId = 0;
+        while (true) {
+            Cursor page = mReader.read(lastId, PAGE_SIZE);
+            if (page == null) {
+                throw new IOException("Cannot query the pets");
+            }
+            PetCursor cursor = PetCursor.wrap(page);
+            int rows;
+            try {
+                rows = cursor.getCount();
+                if (csv) {
+                    count = exportCsv(cursor, writer, name, breed, count, listener);
+                } else {
+                    count = exportJson(cursor, json, count, listener);
+                }
+                if (rows > 0) {
+                    cursor.moveToLast();
+                    lastId = cursor.getId();
+                }
+            } finally {
+                cursor.close();
+            }
+            if (rows < PAGE_SIZE) {
+                break;
+            }
+        }
+
+        if (json != null) {
+            json.endArray();
+            json.flush();
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static int exportCsv(PetCursor cursor, Writer writer, CharArrayBuffer name, CharArrayBuffer breed,
+                                 int count, ProgressListener listener) throws IOException {
+        while (cursor.moveToNext()) {
+            cursor.copyNameToBuffer(name);
+            writeCsvField(writer, name);
+            writer.write(',');
+            cursor.copyBreedToBuffer(breed);
+            writeCsvField(writer, breed);
+            writer.write(',');
+            writer.write(String.valueOf(cursor.getGender()));
+            writer.write(',');
+            writer.write(String.valueOf(cursor.getWeight()));
+            writer.write('\n');
+            count = onRowWritten(count, listener);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a CSV field, quoting it if it holds a comma, a quote or a line break. An empty
+     * buffer writes an empty field.
+     */
+    private static void writeCsvField(Writer writer, CharArrayBuffer field) throws IOException {
+        char[] chars = field.data;
+        int length = field.sizeCopied;
+
+        boolean quote = false;
+        for (int i = 0; i < length && !quote; i++) {
+            char c = chars[i];
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(chars, 0, length);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static int exportJson(PetCursor cursor, JsonWriter json, int count, ProgressListener listener)
+            throws IOException {
+        while (cursor.moveToNext()) {
+            json.beginObject();
+            json.name(PetEntry.COLUMN_PET_NAME).value(cursor.getName());
+            json.name(PetEntry.COLUMN_PET_BREED).value(cursor.getBreed());
+            json.name(PetEntry.COLUMN_PET_GENDER).value(cursor.getGender());
+            json.name(PetEntry.COLUMN_PET_WEIGHT).value(cursor.getWeight());
+            json.endObject();
+            count = onRowWritten(count, listener);
+        }
+        return count;
+    }
+
+    private static int onRowWritten(int count, ProgressListener listener) {
+        count++;
+        if (listener != null && count % PROGRESS_INTERVAL == 0) {
+            listener.onProgress(count, 0);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,277 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.Nullable;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Imports pets from CSV or JSON streams. The stream is parsed one pet at a time and the valid
+ * pets are inserted in chunks of {@link #CHUNK_SIZE}, each in its own transaction, so memory
+ * stays bounded whatever the size of the file. Rejected pets are written to an error report.
+ *
+ * CSV streams start with a header naming the columns: name, breed, gender and weight, in any
+ * order. JSON streams hold an array of objects with the same keys. Other columns are ignored.
+ * The values of both formats are validated the same way, a JSON number being read as its text.
+ */
+public final class PetImporter {
+
+    /**
+     * Inserts the pets of a chunk, which were already validated, in a single transaction.
+     */
+    interface Inserter {
+
+        /**
+         * @return the number of inserted pets.
+         */
+        int insert(ContentValues[] pets);
+    }
+
+    /** number of pets inserted per transaction. */
+    public static final int CHUNK_SIZE = 500;
+
+    private static final String[] COLUMNS = new String[]{
+            PetEntry.COLUMN_PET_NAME,
+            PetEntry.COLUMN_PET_BREED,
+            PetEntry.COLUMN_PET_GENDER,
+            PetEntry.COLUMN_PET_WEIGHT
+    };
+
+    private final Inserter mInserter;
+
+    /** the pets of the current chunk. */
+    private final ContentValues[] mChunk = new ContentValues[CHUNK_SIZE];
+    private int mChunkSize;
+
+    private int mProcessed;
+    private int mRejected;
+    private int mImported;
+
+    public PetImporter(ContentResolver resolver) {
+        this(resolver, PetEntry.CONTENT_URI);
+    }
+
+    /**
+     * @param petsUri the pets uri of the shelter the pets are imported into, see
+     *                {@link PetContract#forShelter}.
+     */
+    public PetImporter(final ContentResolver resolver, final Uri petsUri) {
+        // the provider validates the values of other apps again.
+        this(new Inserter() {
+            @Override
+            public int insert(ContentValues[] pets) {
+                return resolver.bulkInsert(petsUri, pets);
+            }
+        });
+    }
+
+    /**
+     * @param inserter inserts the validated pets, without validating them again.
+     */
+    PetImporter(Inserter inserter) {
+        mInserter = inserter;
+    }
+
+    /**
+     * Imports the pets of the stream, which isn't closed.
+     *
+     * @param format      {@link PetContract#FORMAT_CSV} or {@link PetContract#FORMAT_JSON}.
+     * @param errorReport receives a CSV line per rejected pet: the line or index of the pet in
+     *                    the stream and the reason. Can be null.
+     * @param listener    notified after every chunk. Can be null.
+     * @return the number of imported pets.
+     */
+    public int importPets(InputStream in, String format, @Nullable Writer errorReport,
+                          @Nullable ProgressListener listener) throws IOException {
+        mChunkSize = 0;
+        mProcessed = 0;
+        mRejected = 0;
+        mImported = 0;
+
+        if (errorReport != null) {
+            errorReport.write("position,reason\n");
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        switch (format) {
+            case PetContract.FORMAT_CSV:
+                importCsv(reader, errorReport, listener);
+                break;
+            case PetContract.FORMAT_JSON:
+                importJson(reader, errorReport, listener);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown import format " + format);
+        }
+
+        flushChunk(listener);
+        if (errorReport != null) {
+            errorReport.flush();
+        }
+        return mImported;
+    }
+
+    /**
+     * Returns the number of pets rejected by the last import.
+     */
+    public int getRejectedCount() {
+        return mRejected;
+    }
+
+    private void importCsv(BufferedReader reader, Writer errorReport, ProgressListener listener)
+            throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        String[] header = csv.readRecord();
+        if (header == null) {
+            return;
+        }
+
+        // finds the position of each known column in the records.
+        int[] positions = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            positions[i] = -1;
+            for (int j = 0; j < header.length; j++) {
+                if (COLUMNS[i].equalsIgnoreCase(header[j].trim())) {
+                    positions[i] = j;
+                }
+            }
+        }
+
+        String[] record;
+        while ((record = csv.readRecord()) != null) {
+            ContentValues values = new ContentValues(COLUMNS.length);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (positions[i] != -1 && positions[i] < record.length) {
+                    values.put(COLUMNS[i], record[positions[i]]);
+                }
+            }
+            addPet(values, csv.getRecordLineNumber(), errorReport, listener);
+        }
+    }
+
+    private void importJson(BufferedReader reader, Writer errorReport, ProgressListener listener)
+            throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        int index = 0;
+        while (json.hasNext()) {
+            ContentValues values = new ContentValues(COLUMNS.length);
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                if (!isColumn(key)) {
+                    json.skipValue();
+                } else if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                    values.putNull(key);
+                } else if (json.peek() == JsonToken.NUMBER) {
+                    // validated as text, like the fields of the CSV streams, so fractions and
+                    // numbers too large for a long are invalid values instead of errors.
+                    values.put(key, json.nextString());
+                } else {
+                    // strings, and booleans which the validation will reject as numbers.
+                    values.put(key, json.peek() == JsonToken.BOOLEAN
+                            ? String.valueOf(json.nextBoolean()) : json.nextString());
+                }
+            }
+            json.endObject();
+            addPet(values, index++, errorReport, listener);
+        }
+        json.endArray();
+    }
+
+    private static boolean isColumn(String key) {
+        for (String column : COLUMNS) {
+            if (column.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Validates the pet and adds it to the current chunk, or reports it if it's rejected.
+     */
+    private void addPet(ContentValues values, int position, Writer errorReport, ProgressListener listener)
+            throws IOException {
+        mProcessed++;
+
+        // a missing name is rejected like an empty one.
+        if (!values.containsKey(PetEntry.COLUMN_PET_NAME)) {
+            values.putNull(PetEntry.COLUMN_PET_NAME);
+        }
+
+        int failures = PetValidator.validate(values);
+        if (PetValidator.isRejected(failures)) {
+            mRejected++;
+            if (errorReport != null) {
+                errorReport.write(String.valueOf(position));
+                errorReport.write(',');
+                writeCsvField(errorReport, PetValidator.describe(failures));
+                errorReport.write('\n');
+            }
+        } else {
+            mChunk[mChunkSize++] = values;
+        }
+
+        if (mChunkSize == CHUNK_SIZE) {
+            flushChunk(listener);
+        }
+    }
+
+    /**
+     * Inserts the pets of the current chunk in a single transaction.
+     */
+    private void flushChunk(ProgressListener listener) {
+        if (mChunkSize > 0) {
+            ContentValues[] chunk = mChunkSize == CHUNK_SIZE ? mChunk : copyOf(mChunk, mChunkSize);
+            mImported += mInserter.insert(chunk);
+            for (int i = 0; i < mChunkSize; i++) {
+                mChunk[i] = null;
+            }
+            mChunkSize = 0;
+        }
+
+        if (listener != null) {
+            listener.onProgress(mProcessed, mRejected);
+        }
+    }
+
+    /**
+     * Writes a CSV field, quoting it if it holds a comma, a quote or a line break, like the
+     * fields written by {@link PetExporter}.
+     */
+    private static void writeCsvField(Writer writer, String field) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static ContentValues[] copyOf(ContentValues[] values, int length) {
+        ContentValues[] copy = new ContentValues[length];
+        System.arraycopy(values, 0, copy, 0, length);
+        return copy;
+    }
+}
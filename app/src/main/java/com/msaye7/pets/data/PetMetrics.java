@@ -0,0 +1,337 @@
+package com.msaye7.pets.data;
+
+import android.database.CrossProcessCursorWrapper;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operation counters and latency histograms of {@link PetProvider}, per uri pattern and
+ * operation, the counts of the validation failures and the times of the startup warm-up.
+ *
+ * Recording only adds to counters that are striped or updated with compare-and-set, so it takes
+ * no lock and is cheap enough to stay on in release builds. A snapshot read while operations
+ * are recorded can be off by the operations in flight.
+ */
+final class PetMetrics {
+
+    /** identify the uri patterns. */
+    static final int PATTERN_PETS = 0;
+    static final int PATTERN_PET_ID = 1;
+    static final int PATTERN_SEARCH = 2;
+    static final int PATTERN_STATS = 3;
+
+    private static final String[] PATTERN_NAMES = {"pets", "pet_id", "search", "stats"};
+
+    /** identify the operations. */
+    static final int OPERATION_QUERY = 0;
+    static final int OPERATION_INSERT = 1;
+    static final int OPERATION_BULK_INSERT = 2;
+    static final int OPERATION_UPDATE = 3;
+    static final int OPERATION_DELETE = 4;
+
+    private static final String[] OPERATION_NAMES = {"query", "insert", "bulk_insert", "update", "delete"};
+
+    /**
+     * Number of latency buckets. Bucket i counts the operations that took [2^i, 2^(i+1))
+     * microseconds, bucket 0 the faster ones and the last bucket the slower ones.
+     */
+    static final int HISTOGRAM_BUCKETS = 20;
+
+    /** the validation failures, in the order of their FAILURE_ bit in {@link PetValidator}. */
+    private static final int[] FAILURES = {PetValidator.FAILURE_NAME, PetValidator.FAILURE_BREED,
+            PetValidator.FAILURE_GENDER, PetValidator.FAILURE_WEIGHT};
+
+    private final Timer[][] mTimers = new Timer[PATTERN_NAMES.length][OPERATION_NAMES.length];
+
+    private final LongAdder mRejected = new LongAdder();
+    private final LongAdder mCorrected = new LongAdder();
+    private final LongAdder[] mFailures = new LongAdder[FAILURES.length];
+
+    /** times of the warm-up, -1 until it finished. */
+    private volatile long mWarmUpOpenNanos = -1;
+    private volatile long mWarmUpFirstPageNanos = -1;
+
+    PetMetrics() {
+        for (Timer[] timers : mTimers) {
+            for (int i = 0; i < timers.length; i++) {
+                timers[i] = new Timer();
+            }
+        }
+        for (int i = 0; i < mFailures.length; i++) {
+            mFailures[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records an operation started at the given {@link System#nanoTime()}.
+     *
+     * @param rows rows returned by a query, or rows written by a write.
+     */
+    void record(int pattern, int operation, long startNanos, long rows) {
+        mTimers[pattern][operation].record(System.nanoTime() - startNanos, rows);
+    }
+
+    /**
+     * Returns the cursor of a query started at the given {@link System#nanoTime()}, recording
+     * the query once the cursor is first filled. A cursor only runs its query when it is first
+     * read, so the recorded time is the one to prepare the query plus the one of that first
+     * read, without the time the caller took before reading it. A cursor closed before it is
+     * read records the time to prepare its query and no row.
+     */
+    Cursor recordQuery(int pattern, long startNanos, Cursor cursor) {
+        return new QueryCursor(cursor, mTimers[pattern][OPERATION_QUERY], System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the result of {@link PetValidator#validate}.
+     */
+    void recordValidation(int failures) {
+        if (failures == 0) {
+            return;
+        }
+        if (PetValidator.isRejected(failures)) {
+            mRejected.increment();
+        } else {
+            mCorrected.increment();
+        }
+        for (int i = 0; i < FAILURES.length; i++) {
+            if ((failures & FAILURES[i]) != 0) {
+                mFailures[i].increment();
+            }
+        }
+    }
+
+    /**
+     * Records the times the warm-up of the provider took to open the database and to read the
+     * first page of the catalog.
+     */
+    void recordWarmUp(long openNanos, long firstPageNanos) {
+        mWarmUpFirstPageNanos = firstPageNanos;
+        mWarmUpOpenNanos = openNanos;
+    }
+
+    /**
+     * Returns a snapshot of the metrics, see {@link PetContract#METHOD_GET_METRICS}.
+     */
+    Bundle toBundle() {
+        Bundle metrics = new Bundle();
+        for (int pattern = 0; pattern < mTimers.length; pattern++) {
+            for (int operation = 0; operation < mTimers[pattern].length; operation++) {
+                Timer timer = mTimers[pattern][operation];
+                long count = timer.mCount.sum();
+                if (count == 0) {
+                    continue;
+                }
+
+                Bundle operationMetrics = new Bundle();
+                operationMetrics.putLong(PetContract.KEY_OPERATION_COUNT, count);
+                operationMetrics.putLong(PetContract.KEY_TOTAL_TIME_US, timer.mTotalNanos.sum() / 1000);
+                operationMetrics.putLong(PetContract.KEY_MAX_TIME_US, timer.mMaxNanos.get() / 1000);
+                operationMetrics.putLongArray(PetContract.KEY_LATENCY_HISTOGRAM, timer.getHistogram());
+                operationMetrics.putLong(PetContract.KEY_ROWS_RETURNED, timer.mRows.sum());
+                metrics.putBundle(getName(pattern, operation), operationMetrics);
+            }
+        }
+
+        metrics.putLong(PetContract.KEY_REJECTED_COUNT, mRejected.sum());
+        metrics.putLong(PetContract.KEY_CORRECTED_COUNT, mCorrected.sum());
+        long[] failures = new long[mFailures.length];
+        for (int i = 0; i < failures.length; i++) {
+            failures[i] = mFailures[i].sum();
+        }
+        metrics.putLongArray(PetContract.KEY_VALIDATION_FAILURES, failures);
+
+        long warmUpOpenNanos = mWarmUpOpenNanos;
+        if (warmUpOpenNanos >= 0) {
+            metrics.putLong(PetContract.KEY_WARM_UP_OPEN_US, warmUpOpenNanos / 1000);
+            metrics.putLong(PetContract.KEY_WARM_UP_FIRST_PAGE_US, mWarmUpFirstPageNanos / 1000);
+        }
+        return metrics;
+    }
+
+    /**
+     * Prints the metrics for dumpsys, with the percentiles estimated from the histograms.
+     */
+    void dump(PrintWriter writer) {
+        writer.println("Operations (times in us, percentiles are bucket upper bounds):");
+        writer.println(String.format(Locale.US, "  %-20s %8s %8s %8s %8s %8s %8s %10s",
+                "operation", "count", "avg", "p50", "p90", "p99", "max", "rows"));
+
+        for (int pattern = 0; pattern < mTimers.length; pattern++) {
+            for (int operation = 0; operation < mTimers[pattern].length; operation++) {
+                Timer timer = mTimers[pattern][operation];
+                long count = timer.mCount.sum();
+                if (count == 0) {
+                    continue;
+                }
+                long[] histogram = timer.getHistogram();
+                writer.println(String.format(Locale.US, "  %-20s %8d %8d %8d %8d %8d %8d %10d",
+                        getName(pattern, operation), count, timer.mTotalNanos.sum() / 1000 / count,
+                        getPercentile(histogram, 0.5), getPercentile(histogram, 0.9),
+                        getPercentile(histogram, 0.99), timer.mMaxNanos.get() / 1000,
+                        timer.mRows.sum()));
+            }
+        }
+
+        writer.println("Validation:");
+        writer.println("  rejected=" + mRejected.sum() + " corrected=" + mCorrected.sum()
+                + " name=" + mFailures[0].sum() + " breed=" + mFailures[1].sum()
+                + " gender=" + mFailures[2].sum() + " weight=" + mFailures[3].sum());
+
+        long warmUpOpenNanos = mWarmUpOpenNanos;
+        writer.println("Warm-up:");
+        writer.println(warmUpOpenNanos < 0 ? "  not finished" : "  open=" + warmUpOpenNanos / 1000
+                + "us first_page=" + mWarmUpFirstPageNanos / 1000 + "us");
+    }
+
+    private static String getName(int pattern, int operation) {
+        return PATTERN_NAMES[pattern] + "." + OPERATION_NAMES[operation];
+    }
+
+    /**
+     * Returns the upper bound in microseconds of the bucket holding the given fraction of the
+     * operations.
+     */
+    private static long getPercentile(long[] histogram, double fraction) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << histogram.length;
+    }
+
+    /**
+     * Latencies and rows of one operation on one uri pattern.
+     */
+    private static final class Timer {
+
+        final LongAdder mCount = new LongAdder();
+        final LongAdder mTotalNanos = new LongAdder();
+        final AtomicLong mMaxNanos = new AtomicLong();
+        final AtomicLongArray mHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+        final LongAdder mRows = new LongAdder();
+
+        void record(long nanos, long rows) {
+            mCount.increment();
+            mTotalNanos.add(nanos);
+            mRows.add(rows);
+
+            // log2 of the microseconds, the faster operations all go to bucket 0.
+            long micros = nanos / 1000;
+            int bucket = 63 - Long.numberOfLeadingZeros(micros);
+            mHistogram.incrementAndGet(Math.max(0, Math.min(bucket, HISTOGRAM_BUCKETS - 1)));
+
+            // the maximum only needs a compare-and-set when it grows.
+            long max = mMaxNanos.get();
+            while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+                max = mMaxNanos.get();
+            }
+        }
+
+        long[] getHistogram() {
+            long[] histogram = new long[mHistogram.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = mHistogram.get(i);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Cursor recording its query in its timer when it is first filled or closed, see
+     * {@link #recordQuery}.
+     */
+    private static final class QueryCursor extends CrossProcessCursorWrapper {
+
+        private final Timer mTimer;
+
+        /** the time the query took until it was returned. */
+        private final long mPrepareNanos;
+
+        private boolean mRecorded;
+
+        QueryCursor(Cursor cursor, Timer timer, long prepareNanos) {
+            super(cursor);
+            mTimer = timer;
+            mPrepareNanos = prepareNanos;
+        }
+
+        /**
+         * Fills the cursor and records the query, the first time it is called.
+         */
+        private void fill() {
+            if (!mRecorded) {
+                mRecorded = true;
+                long start = System.nanoTime();
+                int rows = super.getCount();
+                mTimer.record(mPrepareNanos + System.nanoTime() - start, rows);
+            }
+        }
+
+        @Override
+        public int getCount() {
+            fill();
+            return super.getCount();
+        }
+
+        @Override
+        public boolean move(int offset) {
+            fill();
+            return super.move(offset);
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            fill();
+            return super.moveToPosition(position);
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            fill();
+            return super.moveToFirst();
+        }
+
+        @Override
+        public boolean moveToLast() {
+            fill();
+            return super.moveToLast();
+        }
+
+        @Override
+        public boolean moveToNext() {
+            fill();
+            return super.moveToNext();
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            fill();
+            return super.moveToPrevious();
+        }
+
+        @Override
+        public void close() {
+            if (!mRecorded) {
+                mRecorded = true;
+                mTimer.record(mPrepareNanos, 0);
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores the photos of the pets as files of a directory of the app, named in the photo column
+ * of their pet. The database only holds the names, so reading the pets never loads the photos.
+ *
+ * A new photo is written to a temporary file, which is only renamed and referenced by its pet
+ * once the writer closes it, so readers never see a partially written photo. Every photo gets a
+ * new name, so the name of the photo of a pet changes whenever the photo does.
+ */
+final class PetPhotos {
+
+    /**
+     * Called once a new photo was completely written.
+     */
+    interface Listener {
+
+        /**
+         * Makes the pet with the given _ID reference the photo with the given name.
+         *
+         * @return false if the pet doesn't exist anymore, the photo is then deleted.
+         */
+        boolean onPhotoWritten(long id, String name);
+    }
+
+    // LOG_TAG of the class.
+    private static final String LOG_TAG = PetPhotos.class.getSimpleName();
+
+    /** suffix of the photos that are still being written. */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /** age after which a temporary photo was left by a writer that died, in milliseconds. */
+    private static final long ABANDONED_AGE_MS = 24 * 60 * 60 * 1000;
+
+    private final File mDirectory;
+
+    /** runs the listeners of the written photos, created on the first write. */
+    private Handler mHandler;
+
+    /**
+     * @param directory the directory of the photos, created on the first write.
+     */
+    PetPhotos(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Opens the photo with the given name for reading.
+     */
+    ParcelFileDescriptor openForReading(String name) throws FileNotFoundException {
+        return ParcelFileDescriptor.open(new File(mDirectory, name), ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * Opens a new photo of the pet with the given _ID for writing. Once the returned descriptor
+     * is closed without error, the photo gets its final name and the listener is called on a
+     * background thread.
+     */
+    ParcelFileDescriptor openForWriting(final long id, final Listener listener) throws FileNotFoundException {
+        File temporary = null;
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Cannot create " + mDirectory);
+            }
+            temporary = File.createTempFile(id + "-", TEMPORARY_SUFFIX, mDirectory);
+            return open(id, temporary, listener);
+        } catch (IOException e) {
+            if (temporary != null) {
+                temporary.delete();
+            }
+            FileNotFoundException exception = new FileNotFoundException("Cannot write a photo of pet " + id);
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private ParcelFileDescriptor open(final long id, final File temporary, final Listener listener)
+            throws IOException {
+        return ParcelFileDescriptor.open(temporary,
+                ParcelFileDescriptor.MODE_WRITE_ONLY | ParcelFileDescriptor.MODE_TRUNCATE, getHandler(),
+                new ParcelFileDescriptor.OnCloseListener() {
+                    @Override
+                    public void onClose(IOException e) {
+                        if (e != null) {
+                            Log.e(LOG_TAG, "Failed to write a photo of pet " + id, e);
+                            temporary.delete();
+                            return;
+                        }
+                        publish(id, temporary, listener);
+                    }
+                });
+    }
+
+    /**
+     * Gives the written photo its final name, and deletes it if its pet doesn't take it.
+     */
+    private synchronized void publish(long id, File temporary, Listener listener) {
+        String path = temporary.getPath();
+        File photo = new File(path.substring(0, path.length() - TEMPORARY_SUFFIX.length()));
+        if (!temporary.renameTo(photo)) {
+            Log.e(LOG_TAG, "Cannot rename " + temporary);
+            temporary.delete();
+            return;
+        }
+        if (!listener.onPhotoWritten(id, photo.getName())) {
+            photo.delete();
+        }
+    }
+
+    /**
+     * Deletes the photo with the given name, if there is one.
+     */
+    synchronized void delete(String name) {
+        if (name != null) {
+            new File(mDirectory, name).delete();
+        }
+    }
+
+    /**
+     * Deletes the photos that no pet of the database references, and the temporary photos
+     * abandoned by writers that never closed them.
+     */
+    synchronized void deleteUnused(SQLiteDatabase db) {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        Set<String> used = new HashSet<>();
+        Cursor photos = db.query(PetEntry.TABLE_NAME, new String[]{PetEntry.COLUMN_PET_PHOTO},
+                PetEntry.COLUMN_PET_PHOTO + " IS NOT NULL", null, null, null, null);
+        try {
+            while (photos.moveToNext()) {
+                used.add(photos.getString(0));
+            }
+        } finally {
+            photos.close();
+        }
+
+        long abandonedBefore = System.currentTimeMillis() - ABANDONED_AGE_MS;
+        for (File file : files) {
+            boolean unused = file.getName().endsWith(TEMPORARY_SUFFIX)
+                    ? file.lastModified() < abandonedBefore
+                    : !used.contains(file.getName());
+            if (unused && !file.delete()) {
+                Log.w(LOG_TAG, "Cannot delete unused photo " + file);
+            }
+        }
+    }
+
+    /**
+     * Clears the photo of the pets whose photo doesn't exist, such as the pets of a restored
+     * backup whose photo was replaced or deleted after the backup.
+     *
+     * @return the number of pets whose photo was cleared.
+     */
+    synchronized int clearMissing(SQLiteDatabase db) {
+        List<String> missing = new ArrayList<>();
+        Cursor photos = db.query(true, PetEntry.TABLE_NAME, new String[]{PetEntry.COLUMN_PET_PHOTO},
+                PetEntry.COLUMN_PET_PHOTO + " IS NOT NULL", null, null, null, null, null);
+        try {
+            while (photos.moveToNext()) {
+                if (!new File(mDirectory, photos.getString(0)).isFile()) {
+                    missing.add(photos.getString(0));
+                }
+            }
+        } finally {
+            photos.close();
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        ContentValues values = new ContentValues();
+        values.putNull(PetEntry.COLUMN_PET_PHOTO);
+        int cleared = 0;
+        db.beginTransactionNonExclusive();
+        try {
+            for (String name : missing) {
+                cleared += db.update(PetEntry.TABLE_NAME, values, PetEntry.COLUMN_PET_PHOTO + "=?",
+                        new String[]{name});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.w(LOG_TAG, "Cleared the missing photo of " + cleared + " pets");
+        return cleared;
+    }
+
+    private synchronized Handler getHandler() {
+        if (mHandler == null) {
+            HandlerThread thread = new HandlerThread("PetPhotos");
+            thread.start();
+            mHandler = new Handler(thread.getLooper());
+        }
+        return mHandler;
+    }
+}
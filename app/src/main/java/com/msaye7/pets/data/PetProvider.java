@@ -1,19 +1,57 @@
 package com.msaye7.pets.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.msaye7.pets.data.PetContract.ChangeEntry;
 import com.msaye7.pets.data.PetContract.PetEntry;
+import com.msaye7.pets.data.PetContract.ShelterEntry;
+import com.msaye7.pets.data.PetContract.StatsEntry;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * {@link ContentProvider} for Pets app.
@@ -22,9 +60,21 @@ import com.msaye7.pets.data.PetContract.PetEntry;
 public class PetProvider extends ContentProvider {
 
     /**
-     * Database helper object.
+     * The database of each shelter with its caches, statements, photos and change notifier,
+     * by shelter _ID. Created by the first use of the shelter.
+     */
+    private final LongSparseArray<PetShard> mShards = new LongSparseArray<>();
+
+    /**
+     * Counters and latency histograms of the operations, per uri pattern, of all the shelters.
      */
-    private PetDbHelper mDbHelper;
+    private final PetMetrics mMetrics = new PetMetrics();
+
+    /**
+     * Queries the shelters in parallel for the reads across all of them, and warms up the
+     * default shelter at startup.
+     */
+    private final ExecutorService mFanOutExecutor = Executors.newFixedThreadPool(FAN_OUT_THREADS);
 
     /**
      * LOG_TAG of the class.
@@ -36,6 +86,80 @@ public class PetProvider extends ContentProvider {
      */
     private static final int PETS = 100;
     private static final int PET_ID = 101;
+    private static final int SEARCH = 102;
+    private static final int PET_PHOTO = 103;
+    private static final int STATS = 200;
+    private static final int STATS_GENDER = 201;
+    private static final int STATS_BREED = 202;
+    private static final int SHELTERS = 300;
+    private static final int ALL_SEARCH = 301;
+    private static final int ALL_STATS = 302;
+    private static final int CHANGES = 400;
+
+    /**
+     * Maps the columns of the totals uri to the columns of the totals table, computing the
+     * average weight from the count and the total weight.
+     */
+    private static final Map<String, String> sTotalsProjectionMap = new HashMap<>();
+
+    /**
+     * Maps the columns of the changes uri to the columns of the change log and of the pets, in
+     * the order of the default projection.
+     */
+    private static final Map<String, String> sChangesProjectionMap = new LinkedHashMap<>();
+
+    /**
+     * The change log joined with the current values of the changed pets.
+     */
+    private static final String CHANGES_TABLES = PetDbHelper.CHANGES_TABLE_NAME + " LEFT JOIN "
+            + PetDbHelper.PETS_VIEW_NAME + " ON " + PetDbHelper.PETS_VIEW_NAME + "." + PetEntry._ID
+            + " = " + PetDbHelper.CHANGES_TABLE_NAME + "." + ChangeEntry.COLUMN_PET_ID;
+
+    /**
+     * Number of changes returned when the changes uri doesn't set a limit.
+     */
+    private static final int DEFAULT_CHANGES_LIMIT = 500;
+
+    /**
+     * Maximum number of search results returned when the search uri doesn't set a limit.
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+
+    /**
+     * Approximate maximum size of the cached pets, in bytes.
+     */
+    private static final int ROW_CACHE_SIZE_BYTES = 256 * 1024;
+
+    /**
+     * Approximate maximum size of the cached query results, in bytes.
+     */
+    private static final int QUERY_CACHE_SIZE_BYTES = 512 * 1024;
+
+    /**
+     * Directory of the backups, in the files directory of the app.
+     */
+    private static final String BACKUP_DIRECTORY = "backups";
+
+    /**
+     * Number of shelters queried at the same time by the reads across all of them.
+     */
+    private static final int FAN_OUT_THREADS = 4;
+
+    /**
+     * Reads the whole row of a pet for the row cache. The SQL never changes, so the connection
+     * reuses its compiled statement.
+     */
+    private static final String QUERY_PET_ROW = "SELECT " + TextUtils.join(", ", PetRowCache.COLUMNS)
+            + " FROM " + PetDbHelper.PETS_VIEW_NAME + " WHERE " + PetEntry._ID + " = ?";
+
+    /** reads the whole rows of several pets for the row cache, followed by the list of their _IDs. */
+    private static final String QUERY_PET_ROWS = "SELECT " + TextUtils.join(", ", PetRowCache.COLUMNS)
+            + " FROM " + PetDbHelper.PETS_VIEW_NAME + " WHERE " + PetEntry._ID + " IN ";
+
+    /** the parameters of a page, which the pets of {@link PetEntry#QUERY_PARAMETER_IDS} can't have. */
+    private static final String[] PAGE_PARAMETERS = {PetEntry.QUERY_PARAMETER_AFTER_ID,
+            PetEntry.QUERY_PARAMETER_AFTER_KEY, PetEntry.QUERY_PARAMETER_UNTIL_ID, PetEntry.QUERY_PARAMETER_UNTIL_KEY,
+            PetEntry.QUERY_PARAMETER_LIMIT, PetEntry.QUERY_PARAMETER_SORT, PetEntry.QUERY_PARAMETER_GENDER};
 
     /**
      * Initializes the Uri matcher object that will make sure that the uri sent is
@@ -43,16 +167,61 @@ public class PetProvider extends ContentProvider {
      */
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+
     static {
 
         /* Adds the uri patterns to the Uri matcher to validate it's the correct Uri and
-          gives it the suitable code to return when used. */
+          gives it the suitable code to return when used. The uris of the pets and statistics
+          of a shelter start with shelters/{id}/, those of the default shelter don't. */
+
+        for (String shelter : new String[]{"", PetContract.PATH_SHELTERS + "/#/"}) {
+            // adds the Uri that will deal with the full table of pets
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, shelter + PetContract.PATH_PETS, PETS);
+
+            // adds the Uri that will deal with a single row of the table of pets
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, shelter + PetContract.PATH_PETS + "/#", PET_ID);
+
+            // adds the Uri that will search the pets names and breeds for the query after search/
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                    shelter + PetContract.PATH_PETS + "/" + PetContract.PATH_SEARCH + "/*", SEARCH);
+
+            // adds the Uri that will open the photo file of a single pet
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                    shelter + PetContract.PATH_PETS + "/#/" + PetContract.PATH_PHOTO, PET_PHOTO);
+
+            // adds the Uris of the statistics: the totals, the counts by gender and by breed.
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, shelter + PetContract.PATH_STATS, STATS);
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                    shelter + PetContract.PATH_STATS + "/" + PetContract.PATH_GENDER, STATS_GENDER);
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY,
+                    shelter + PetContract.PATH_STATS + "/" + PetContract.PATH_BREED, STATS_BREED);
 
-        // adds the Uri that will deal with the full table of pets
-        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS, PETS);
+            // adds the Uri that will read the change log after a sequence
+            sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, shelter + PetContract.PATH_CHANGES, CHANGES);
+        }
+
+        // adds the Uris of the shelters and of the search and totals across all of them.
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_SHELTERS, SHELTERS);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_SHELTERS + "/"
+                + PetContract.PATH_ALL_SHELTERS + "/" + PetContract.PATH_PETS + "/" + PetContract.PATH_SEARCH + "/*",
+                ALL_SEARCH);
+        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_SHELTERS + "/"
+                + PetContract.PATH_ALL_SHELTERS + "/" + PetContract.PATH_STATS, ALL_STATS);
 
-        // adds the Uri that will deal with a single row of the table of pets
-        sUriMatcher.addURI(PetContract.CONTENT_AUTHORITY, PetContract.PATH_PETS + "/#", PET_ID);
+        sTotalsProjectionMap.put(StatsEntry.COLUMN_COUNT, StatsEntry.COLUMN_COUNT);
+        sTotalsProjectionMap.put(StatsEntry.COLUMN_TOTAL_WEIGHT, StatsEntry.COLUMN_TOTAL_WEIGHT);
+        sTotalsProjectionMap.put(StatsEntry.COLUMN_AVERAGE_WEIGHT, "CASE WHEN " + StatsEntry.COLUMN_COUNT
+                + " > 0 THEN CAST(" + StatsEntry.COLUMN_TOTAL_WEIGHT + " AS REAL) / " + StatsEntry.COLUMN_COUNT
+                + " ELSE 0 END AS " + StatsEntry.COLUMN_AVERAGE_WEIGHT);
+
+        for (String column : new String[]{ChangeEntry.COLUMN_SEQUENCE, ChangeEntry.COLUMN_PET_ID,
+                ChangeEntry.COLUMN_OPERATION, ChangeEntry.COLUMN_TIME}) {
+            sChangesProjectionMap.put(column, PetDbHelper.CHANGES_TABLE_NAME + "." + column + " AS " + column);
+        }
+        for (String column : new String[]{PetEntry.COLUMN_PET_NAME, PetEntry.COLUMN_PET_BREED,
+                PetEntry.COLUMN_PET_GENDER, PetEntry.COLUMN_PET_WEIGHT}) {
+            sChangesProjectionMap.put(column, PetDbHelper.PETS_VIEW_NAME + "." + column + " AS " + column);
+        }
     }
 
     /**
@@ -60,50 +229,817 @@ public class PetProvider extends ContentProvider {
      */
     @Override
     public boolean onCreate() {
-        mDbHelper = new PetDbHelper(getContext());
+        // opens the database of the default shelter in the background, the other shelters are
+        // opened by their first use.
+        final PetShard shard = getShard(PetContract.DEFAULT_SHELTER_ID);
+        mFanOutExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUp(shard);
+            }
+        });
         return true;
     }
 
+    /**
+     * Closes the databases of all the shelters, once the operations running on them ended. The
+     * system never shuts a provider down, the tests do after each test.
+     */
+    @Override
+    public void shutdown() {
+        // the warm-up that didn't start yet would open the database again.
+        mFanOutExecutor.shutdownNow();
+        List<PetShard> shards = new ArrayList<>();
+        synchronized (mShards) {
+            for (int i = 0; i < mShards.size(); i++) {
+                shards.add(mShards.valueAt(i));
+            }
+        }
+        for (PetShard shard : shards) {
+            shard.close();
+        }
+        super.shutdown();
+    }
+
+    /**
+     * Opens the database of the shard and reads the first page of the catalog, which leaves it
+     * in the query cache. The provider is created when the process starts, so the first query
+     * of the catalog usually finds the database open and its first page in memory. The times it
+     * took are recorded in the metrics, apart from the queries of the app.
+     */
+    private void warmUp(PetShard shard) {
+        long start = System.nanoTime();
+        shard.mLock.readLock().lock();
+        try {
+            // the provider was shut down before the warm-up got the lock.
+            if (shard.isClosed()) {
+                return;
+            }
+            SQLiteDatabase database = shard.mDbHelper.getReadableDatabase();
+            long opened = System.nanoTime();
+
+            Cursor page = queryPets(shard, database, PetEntry.buildPageUri(0, PetEntry.CATALOG_PAGE_SIZE),
+                    PetEntry.CATALOG_PROJECTION, null, null, null);
+            page.close();
+            mMetrics.recordWarmUp(opened - start, System.nanoTime() - opened);
+        } catch (RuntimeException e) {
+            // the queries of the catalog will open the database and report the error.
+            Log.e(LOG_TAG, "Cannot warm up " + shard.mDatabaseName, e);
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the shard of the shelter with the given _ID, creating it on first use. The
+     * shelters are the default one and the ones with a database, see
+     * {@link PetContract#METHOD_ADD_SHELTER}.
+     *
+     * @throws IllegalArgumentException if the shelter doesn't exist.
+     */
+    private PetShard getShard(long shelterId) {
+        synchronized (mShards) {
+            PetShard shard = mShards.get(shelterId);
+            if (shard == null) {
+                if (!hasDatabase(shelterId)) {
+                    throw new IllegalArgumentException("Unknown shelter " + shelterId);
+                }
+                shard = new PetShard(getContext(), shelterId, ROW_CACHE_SIZE_BYTES, QUERY_CACHE_SIZE_BYTES);
+                mShards.put(shelterId, shard);
+                shard.startBackfills();
+            }
+            return shard;
+        }
+    }
+
+    /**
+     * Returns the shard of the shelter of the given uri.
+     */
+    private PetShard getShard(Uri uri) {
+        return getShard(PetContract.getShelterId(uri));
+    }
+
+    /**
+     * Returns the shard of the shelter in the extras of a {@link #call}, the default shelter if
+     * they don't have one.
+     */
+    private PetShard getShard(Bundle extras) {
+        return getShard(getShelterId(extras));
+    }
+
+    private static long getShelterId(Bundle extras) {
+        return extras == null ? PetContract.DEFAULT_SHELTER_ID
+                : extras.getLong(PetContract.KEY_SHELTER_ID, PetContract.DEFAULT_SHELTER_ID);
+    }
+
+    /**
+     * Returns true if the shelter with the given _ID is the default one, whose database is
+     * created on first use, or if its database exists.
+     */
+    private boolean hasDatabase(long shelterId) {
+        return shelterId == PetContract.DEFAULT_SHELTER_ID
+                || (shelterId > PetContract.DEFAULT_SHELTER_ID
+                && getContext().getDatabasePath(PetShard.getDatabaseName(shelterId)).exists());
+    }
+
+    /**
+     * Adds the shelter in the extras by creating its database, see
+     * {@link PetContract#METHOD_ADD_SHELTER}.
+     */
+    private void addShelter(Bundle extras) {
+        long shelterId = getShelterId(extras);
+        if (shelterId < PetContract.DEFAULT_SHELTER_ID) {
+            throw new IllegalArgumentException("Invalid shelter " + shelterId);
+        }
+
+        synchronized (mShards) {
+            if (hasDatabase(shelterId)) {
+                return;
+            }
+            PetDbHelper dbHelper = new PetDbHelper(getContext(), PetShard.getDatabaseName(shelterId));
+            try {
+                dbHelper.getWritableDatabase();
+            } finally {
+                dbHelper.close();
+            }
+        }
+
+        // wakes the cursors of the shelters, which watch the base uri and the uris below it.
+        getContext().getContentResolver().notifyChange(ShelterEntry.CONTENT_URI, null);
+    }
+
+    /**
+     * Returns the shards of all the shelters: the default one and every shelter that has a
+     * database, sorted by shelter _ID.
+     */
+    private List<PetShard> getAllShards() {
+        List<Long> shelterIds = new ArrayList<>();
+        shelterIds.add(PetContract.DEFAULT_SHELTER_ID);
+        for (String name : getContext().databaseList()) {
+            long shelterId = PetShard.getShelterId(name);
+            if (shelterId > PetContract.DEFAULT_SHELTER_ID) {
+                shelterIds.add(shelterId);
+            }
+        }
+        Collections.sort(shelterIds);
+
+        List<PetShard> shards = new ArrayList<>(shelterIds.size());
+        for (long shelterId : shelterIds) {
+            shards.add(getShard(shelterId));
+        }
+        return shards;
+    }
+
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments, and sort order.
      */
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        long start = System.nanoTime();
+
+        // gets the response code of the uri we received.
+        int match = sUriMatcher.match(uri);
+
+        // the reads across the shelters lock each shard they read, the others lock their shard
+        // while their query is prepared.
+        PetShard shard = match == SHELTERS || match == ALL_STATS || match == ALL_SEARCH ? null : getShard(uri);
+        if (shard != null) {
+            shard.mLock.readLock().lock();
+        }
+        try {
+            Cursor cursor = queryMatch(match, shard, uri, projection, selection, selectionArgs, sortOrder);
+            return mMetrics.recordQuery(getMetricsPattern(match), start, cursor);
+        } finally {
+            if (shard != null) {
+                shard.mLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Perform the query for the uri matching the given code, on the given shard unless the
+     * query reads every shelter.
+     */
+    private Cursor queryMatch(int match, PetShard shard, Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder) {
+        // the reads across the shelters query every shard, and change whenever any pet does.
+        switch (match) {
+            case SHELTERS:
+            case ALL_STATS:
+                Cursor totals = queryShelterTotals(match == SHELTERS, projection);
+                totals.setNotificationUri(getContext().getContentResolver(), PetContract.BASE_CONTENT_URI);
+                return totals;
+
+            case ALL_SEARCH:
+                Cursor results = queryAllSearch(uri, projection);
+                results.setNotificationUri(getContext().getContentResolver(), PetContract.BASE_CONTENT_URI);
+                return results;
+        }
+
         // gets a readable copy of the database
-        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        SQLiteDatabase database = shard.mDbHelper.getReadableDatabase();
 
         // the cursor object that will be returned with the results.
         Cursor cursor;
 
-        // gets the response code of the uri we received.
-        int match = sUriMatcher.match(uri);
-
         // switch case to find out which uri we are dealing with.
         switch (match) {
             // case which will occur if the uri want to deal with the whole pets table.
             case PETS:
-                cursor = database.query(PetEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                if (uri.getQueryParameter(PetEntry.QUERY_PARAMETER_IDS) != null) {
+                    cursor = queryPetsById(shard, database, uri, projection, selection, sortOrder);
+                } else {
+                    cursor = queryPets(shard, database, uri, projection, selection, selectionArgs, sortOrder);
+                }
                 break;
 
             // case which will occur if the uri want to deal with a single row of the pets table.
             case PET_ID:
-                selection = PetEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                cursor = database.query(PetEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor = queryPet(shard, database, ContentUris.parseId(uri), projection);
                 break;
 
+            // case which will occur if the uri want to search the pets by name and breed.
+            case SEARCH:
+                cursor = querySearch(database, uri, projection);
+
+                // search results change whenever any pet of the shelter changes.
+                cursor.setNotificationUri(getContext().getContentResolver(), shard.mPetsUri);
+                return cursor;
+
+            // cases which will occur if the uri want the statistics, read from the tables the
+            // triggers keep up to date instead of aggregating the pets.
+            case STATS:
+                SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(StatsEntry.TOTALS_TABLE_NAME);
+                builder.setProjectionMap(sTotalsProjectionMap);
+                if (projection == null) {
+                    projection = new String[]{StatsEntry.COLUMN_COUNT, StatsEntry.COLUMN_TOTAL_WEIGHT,
+                            StatsEntry.COLUMN_AVERAGE_WEIGHT};
+                }
+                cursor = builder.query(database, projection, null, null, null, null, null);
+                cursor.setNotificationUri(getContext().getContentResolver(), shard.mPetsUri);
+                return cursor;
+
+            case STATS_GENDER:
+            case STATS_BREED:
+                String table = match == STATS_GENDER ? StatsEntry.GENDER_TABLE_NAME : PetDbHelper.BREED_COUNTS_VIEW_NAME;
+                if (sortOrder == null) {
+                    sortOrder = StatsEntry.COLUMN_COUNT + " DESC";
+                }
+                cursor = database.query(table, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), shard.mPetsUri);
+                return cursor;
+
+            // case which will occur if the uri want the changes after a sequence, which grow
+            // whenever any pet of the shelter changes.
+            case CHANGES:
+                cursor = queryChanges(database, uri, projection);
+                cursor.setNotificationUri(getContext().getContentResolver(), shard.mPetsUri);
+                return cursor;
+
             // default which case will occur if the response code doesn't match any of the available Uris.
             default:
                 throw new IllegalArgumentException("Cannot query unknown Uri " + uri);
         }
 
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        // the changes of the default shelter are notified on the uris without shelter.
+        cursor.setNotificationUri(getContext().getContentResolver(), PetContract.forShelter(uri, shard.mShelterId));
 
         // returns the cursor represents the results of the query.
         return cursor;
     }
 
+    /**
+     * Query a single pet, from the row cache when it holds the pet. Otherwise the whole row is
+     * read from the database and cached.
+     */
+    private Cursor queryPet(PetShard shard, SQLiteDatabase database, long id, String[] projection) {
+        String[] selectionArgs = new String[]{String.valueOf(id)};
+
+        // projections with other columns or expressions skip the cache.
+        if (!PetRowCache.canServe(projection)) {
+            return database.query(PetDbHelper.PETS_VIEW_NAME, projection, PetEntry._ID + "=?", selectionArgs,
+                    null, null, null);
+        }
+
+        Cursor cached = shard.mRowCache.get(id, projection);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = shard.mRowCache.getGeneration();
+        Cursor row = readPet(database, id);
+        try {
+            if (!row.moveToFirst()) {
+                return new MatrixCursor(projection != null ? projection : PetRowCache.COLUMNS, 0);
+            }
+            return shard.mRowCache.put(row, generation, projection);
+        } finally {
+            row.close();
+        }
+    }
+
+    /**
+     * Query the pets with the order, filter and page given by the parameters of the uri, see
+     * {@link PetQuery}. The results of the pages of at most {@link PetQueryCache#MAX_CACHED_ROWS}
+     * pets are served from the query cache when it holds them, otherwise they are read from the
+     * database and cached.
+     */
+    private Cursor queryPets(PetShard shard, SQLiteDatabase database, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs, String sortOrder) {
+        PetQuery query = PetQuery.parse(uri);
+        // the other queries are read by the caller, caching them would read all their rows now.
+        if (!query.isBounded(PetQueryCache.MAX_CACHED_ROWS)) {
+            return readPets(database, query, projection, selection, selectionArgs, sortOrder);
+        }
+
+        String key = query.getCacheKey(projection, selection, selectionArgs, sortOrder);
+        Cursor cached = shard.mQueryCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = shard.mQueryCache.getGeneration();
+        Cursor cursor = readPets(database, query, projection, selection, selectionArgs, sortOrder);
+        return shard.mQueryCache.put(key, cursor, generation);
+    }
+
+    /**
+     * Reads the whole row of a pet, with the {@link PetRowCache#COLUMNS}, without the row cache.
+     */
+    static Cursor readPet(SQLiteDatabase database, long id) {
+        return database.rawQuery(QUERY_PET_ROW, new String[]{String.valueOf(id)});
+    }
+
+    /**
+     * Reads the pets of the query from the database, without the query cache.
+     */
+    static Cursor readPets(SQLiteDatabase database, PetQuery query, String[] projection, String selection,
+                           String[] selectionArgs, String sortOrder) {
+        return database.query(PetDbHelper.PETS_VIEW_NAME, projection, query.getSelection(selection),
+                query.getSelectionArgs(selectionArgs), null, null, query.getOrderBy(sortOrder), query.getLimit());
+    }
+
+    /**
+     * Query the pets with the _IDs of the uri, in that order, see
+     * {@link PetEntry#buildPetsUri(long...)}. The cached pets are served from the row cache, the
+     * other ones are read with a single query and cached.
+     */
+    private Cursor queryPetsById(PetShard shard, SQLiteDatabase database, Uri uri, String[] projection,
+                                 String selection, String sortOrder) {
+        if (selection != null || sortOrder != null) {
+            throw new IllegalArgumentException("The pets by _ID can't have a selection or sort order " + uri);
+        }
+        for (String parameter : PAGE_PARAMETERS) {
+            if (uri.getQueryParameter(parameter) != null) {
+                throw new IllegalArgumentException("The pets by _ID can't be paged " + uri);
+            }
+        }
+        if (!PetRowCache.canServe(projection)) {
+            throw new IllegalArgumentException("Invalid projection for the pets by _ID " + uri);
+        }
+        long[] ids = getIds(uri);
+
+        // the rows of the pets by _ID, the cached ones first, then the ones read.
+        long generation = shard.mRowCache.getGeneration();
+        LongSparseArray<Object[]> rows = new LongSparseArray<>(ids.length);
+        List<String> missingIds = new ArrayList<>();
+        for (long id : ids) {
+            Object[] row = shard.mRowCache.getRow(id);
+            if (row != null) {
+                rows.put(id, row);
+            } else if (!missingIds.contains(String.valueOf(id))) {
+                missingIds.add(String.valueOf(id));
+            }
+        }
+
+        if (!missingIds.isEmpty()) {
+            String placeholders = "(" + TextUtils.join(", ", Collections.nCopies(missingIds.size(), "?")) + ")";
+            Cursor missing = database.rawQuery(QUERY_PET_ROWS + placeholders, missingIds.toArray(new String[0]));
+            try {
+                while (missing.moveToNext()) {
+                    Object[] row = shard.mRowCache.put(missing, generation);
+                    rows.put((Long) row[0], row);
+                }
+            } finally {
+                missing.close();
+            }
+        }
+
+        String[] columns = projection != null ? projection : PetRowCache.COLUMNS;
+        MatrixCursor cursor = missingIds.isEmpty() ? new PetRowCache.CachedCursor(columns, ids.length)
+                : new MatrixCursor(columns, ids.length);
+        for (long id : ids) {
+            Object[] row = rows.get(id);
+            if (row != null) {
+                cursor.addRow(PetRowCache.project(row, columns));
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns the _IDs of {@link PetEntry#QUERY_PARAMETER_IDS}.
+     *
+     * @throws IllegalArgumentException if they aren't a list of 1 to {@link PetEntry#MAX_IDS} _IDs.
+     */
+    private static long[] getIds(Uri uri) {
+        String[] values = TextUtils.split(uri.getQueryParameter(PetEntry.QUERY_PARAMETER_IDS), ",");
+        if (values.length == 0 || values.length > PetEntry.MAX_IDS) {
+            throw new IllegalArgumentException("Invalid number of _IDs " + uri);
+        }
+        long[] ids = new long[values.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                ids[i] = Long.parseLong(values[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid _IDs " + uri, e);
+        }
+        return ids;
+    }
+
+    /**
+     * Query the changes after the sequence of the uri, oldest first, with the current values of
+     * their pets. The extras of the cursor hold the _ID of the log and whether the reader has to
+     * start over, see {@link ChangeEntry}.
+     */
+    private Cursor queryChanges(SQLiteDatabase database, Uri uri, String[] projection) {
+        long after;
+        int limit;
+        try {
+            String afterParameter = uri.getQueryParameter(ChangeEntry.QUERY_PARAMETER_AFTER);
+            String limitParameter = uri.getQueryParameter(ChangeEntry.QUERY_PARAMETER_LIMIT);
+            after = afterParameter == null ? 0 : Long.parseLong(afterParameter);
+            limit = limitParameter == null ? DEFAULT_CHANGES_LIMIT : Integer.parseInt(limitParameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid changes parameters " + uri, e);
+        }
+        if (after < 0 || limit <= 0) {
+            throw new IllegalArgumentException("Invalid changes parameters " + uri);
+        }
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(CHANGES_TABLES);
+        builder.setProjectionMap(sChangesProjectionMap);
+        if (projection == null) {
+            projection = sChangesProjectionMap.keySet().toArray(new String[0]);
+        }
+        String sequence = PetDbHelper.CHANGES_TABLE_NAME + "." + ChangeEntry.COLUMN_SEQUENCE;
+        Cursor cursor = builder.query(database, projection, sequence + " > ?",
+                new String[]{String.valueOf(after)}, null, null, sequence,
+                String.valueOf(Math.min(limit, ChangeEntry.MAX_LIMIT)));
+
+        // the changes are read before the compacted sequence, so a compaction running in between
+        // can only ask for a reset that wasn't needed, never hide a dropped delete.
+        cursor.getCount();
+        Cursor log = database.query(PetDbHelper.CHANGE_LOG_TABLE_NAME, new String[]{PetDbHelper.COLUMN_LOG_ID,
+                PetDbHelper.COLUMN_COMPACTED_SEQUENCE}, null, null, null, null, null);
+        Bundle extras = new Bundle();
+        try {
+            if (log.moveToFirst()) {
+                extras.putString(ChangeEntry.EXTRA_LOG_ID, log.getString(0));
+                extras.putBoolean(ChangeEntry.EXTRA_RESET_REQUIRED, after > 0 && after < log.getLong(1));
+            }
+        } finally {
+            log.close();
+        }
+        cursor.setExtras(extras);
+        return cursor;
+    }
+
+    /**
+     * Search the pets whose name or breed has words starting with the words of the query in the
+     * uri. The matching rows are found through the full-text index, then ranked so that pets whose
+     * name starts with the first word come first, followed by pets whose breed does.
+     */
+    private Cursor querySearch(SQLiteDatabase database, Uri uri, String[] projection) {
+        String[] words = getSearchWords(uri.getLastPathSegment());
+        if (words.length == 0) {
+            return new MatrixCursor(projection != null ? projection : new String[]{PetEntry._ID});
+        }
+
+        int limit = getSearchLimit(uri);
+
+        // every word matches as a prefix, and all of them have to match.
+        StringBuilder match = new StringBuilder();
+        for (String word : words) {
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        String firstWordPrefix = words[0] + "%";
+
+        String columns = projection == null ? PetDbHelper.PETS_VIEW_NAME + ".*" : TextUtils.join(", ", projection);
+        String sql = "SELECT " + columns + " FROM " + PetDbHelper.PETS_VIEW_NAME
+                + " JOIN (SELECT docid FROM " + PetDbHelper.SEARCH_TABLE_NAME + " WHERE "
+                + PetDbHelper.SEARCH_TABLE_NAME + " MATCH ?) AS matches ON "
+                + PetDbHelper.PETS_VIEW_NAME + "." + PetEntry._ID + " = matches.docid"
+                + " ORDER BY CASE WHEN " + PetEntry.COLUMN_PET_NAME + " LIKE ? THEN 0"
+                + " WHEN " + PetEntry.COLUMN_PET_BREED + " LIKE ? THEN 1 ELSE 2 END, "
+                + "length(" + PetEntry.COLUMN_PET_NAME + "), " + PetDbHelper.PETS_VIEW_NAME + "." + PetEntry._ID
+                + " LIMIT " + limit;
+
+        return database.rawQuery(sql, new String[]{match.toString(), firstWordPrefix, firstWordPrefix});
+    }
+
+    /**
+     * Returns the limit parameter of the search uri, or the default limit if it has none.
+     */
+    private static int getSearchLimit(Uri uri) {
+        String limitParameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT);
+        if (limitParameter == null) {
+            return DEFAULT_SEARCH_LIMIT;
+        }
+        try {
+            return Integer.parseInt(limitParameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid search limit " + uri, e);
+        }
+    }
+
+    /**
+     * Splits the search query into lower case words made of letters and digits only, so the
+     * user can't type full-text query operators or LIKE wildcards.
+     */
+    private static String[] getSearchWords(String query) {
+        if (query == null) {
+            return new String[0];
+        }
+
+        StringBuilder cleaned = new StringBuilder(query.length());
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            cleaned.append(Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ');
+        }
+
+        String trimmed = cleaned.toString().trim();
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        return trimmed.split(" +");
+    }
+
+    /**
+     * Search the pets of all the shelters, like {@link #querySearch}. Every shelter is searched
+     * in parallel with the limit of the uri, then the results are merged in the order of the
+     * search and cut to the limit. Each row also holds the shelter of its pet.
+     */
+    private Cursor queryAllSearch(final Uri uri, String[] projection) {
+        final String[] words = getSearchWords(uri.getLastPathSegment());
+        final String[] columns = projection != null ? projection : PetRowCache.COLUMNS;
+        String[] resultColumns = new String[columns.length + 1];
+        System.arraycopy(columns, 0, resultColumns, 0, columns.length);
+        resultColumns[columns.length] = ShelterEntry.COLUMN_SHELTER_ID;
+        if (words.length == 0) {
+            return new MatrixCursor(resultColumns, 0);
+        }
+
+        // the name and breed of the rows rank them, as in the search of a single shelter.
+        final String[] shardColumns = new String[columns.length + 2];
+        System.arraycopy(columns, 0, shardColumns, 0, columns.length);
+        shardColumns[columns.length] = PetEntry.COLUMN_PET_NAME;
+        shardColumns[columns.length + 1] = PetEntry.COLUMN_PET_BREED;
+
+        List<List<SearchRow>> shardRows = fanOut(new ShardTask<List<SearchRow>>() {
+            @Override
+            public List<SearchRow> run(PetShard shard) {
+                Cursor cursor = querySearch(shard.mDbHelper.getReadableDatabase(), uri, shardColumns);
+                try {
+                    List<SearchRow> rows = new ArrayList<>(cursor.getCount());
+                    while (cursor.moveToNext()) {
+                        Object[] values = new Object[columns.length + 1];
+                        for (int i = 0; i < columns.length; i++) {
+                            values[i] = getValue(cursor, i);
+                        }
+                        values[columns.length] = shard.mShelterId;
+
+                        String name = cursor.getString(columns.length);
+                        String breed = cursor.getString(columns.length + 1);
+                        rows.add(new SearchRow(getSearchRank(words[0], name, breed),
+                                name == null ? 0 : name.length(), shard.mShelterId, cursor.getPosition(), values));
+                    }
+                    return rows;
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+
+        List<SearchRow> rows = new ArrayList<>();
+        for (List<SearchRow> shelterRows : shardRows) {
+            rows.addAll(shelterRows);
+        }
+        Collections.sort(rows, SearchRow.ORDER);
+
+        // a negative limit returns every result, as in SQL.
+        int limit = getSearchLimit(uri);
+        if (limit < 0 || limit > rows.size()) {
+            limit = rows.size();
+        }
+        MatrixCursor cursor = new MatrixCursor(resultColumns, limit);
+        for (int i = 0; i < limit; i++) {
+            cursor.addRow(rows.get(i).mValues);
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns the rank of a search result, as in the ORDER BY of {@link #querySearch}: 0 if the
+     * name starts with the first word, 1 if the breed does, 2 otherwise.
+     */
+    private static int getSearchRank(String firstWord, String name, String breed) {
+        if (name != null && name.toLowerCase(Locale.ROOT).startsWith(firstWord)) {
+            return 0;
+        }
+        if (breed != null && breed.toLowerCase(Locale.ROOT).startsWith(firstWord)) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * A result of the search across the shelters, with the keys of its order.
+     */
+    private static final class SearchRow {
+
+        /**
+         * Orders the results by rank and length of the name as the search of a shelter does,
+         * then by shelter and by their position in the results of their shelter.
+         */
+        static final Comparator<SearchRow> ORDER = new Comparator<SearchRow>() {
+            @Override
+            public int compare(SearchRow a, SearchRow b) {
+                if (a.mRank != b.mRank) {
+                    return a.mRank < b.mRank ? -1 : 1;
+                }
+                if (a.mNameLength != b.mNameLength) {
+                    return a.mNameLength < b.mNameLength ? -1 : 1;
+                }
+                if (a.mShelterId != b.mShelterId) {
+                    return a.mShelterId < b.mShelterId ? -1 : 1;
+                }
+                return a.mPosition < b.mPosition ? -1 : (a.mPosition == b.mPosition ? 0 : 1);
+            }
+        };
+
+        final int mRank;
+        final int mNameLength;
+        final long mShelterId;
+        final int mPosition;
+        final Object[] mValues;
+
+        SearchRow(int rank, int nameLength, long shelterId, int position, Object[] values) {
+            mRank = rank;
+            mNameLength = nameLength;
+            mShelterId = shelterId;
+            mPosition = position;
+            mValues = values;
+        }
+    }
+
+    /**
+     * Query the totals of the pets of every shelter, one row per shelter if perShelter is true,
+     * otherwise a single row with the totals of all the shelters. The totals are read from the
+     * statistics table of each shelter in parallel.
+     */
+    private Cursor queryShelterTotals(boolean perShelter, String[] projection) {
+        if (projection == null) {
+            projection = perShelter
+                    ? new String[]{ShelterEntry.COLUMN_SHELTER_ID, StatsEntry.COLUMN_COUNT,
+                    StatsEntry.COLUMN_TOTAL_WEIGHT, StatsEntry.COLUMN_AVERAGE_WEIGHT}
+                    : new String[]{StatsEntry.COLUMN_COUNT, StatsEntry.COLUMN_TOTAL_WEIGHT,
+                    StatsEntry.COLUMN_AVERAGE_WEIGHT};
+        }
+
+        final List<PetShard> shards = getAllShards();
+        List<long[]> totals = fanOut(shards, new ShardTask<long[]>() {
+            @Override
+            public long[] run(PetShard shard) {
+                Cursor cursor = shard.mDbHelper.getReadableDatabase().query(StatsEntry.TOTALS_TABLE_NAME,
+                        new String[]{StatsEntry.COLUMN_COUNT, StatsEntry.COLUMN_TOTAL_WEIGHT},
+                        null, null, null, null, null);
+                try {
+                    return cursor.moveToFirst() ? new long[]{cursor.getLong(0), cursor.getLong(1)} : new long[2];
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+
+        MatrixCursor cursor = new MatrixCursor(projection, perShelter ? shards.size() : 1);
+        if (perShelter) {
+            for (int i = 0; i < shards.size(); i++) {
+                addTotalsRow(cursor, projection, shards.get(i).mShelterId, totals.get(i)[0], totals.get(i)[1]);
+            }
+        } else {
+            long count = 0;
+            long totalWeight = 0;
+            for (long[] shelterTotals : totals) {
+                count += shelterTotals[0];
+                totalWeight += shelterTotals[1];
+            }
+            addTotalsRow(cursor, projection, null, count, totalWeight);
+        }
+        return cursor;
+    }
+
+    /**
+     * Adds a row of totals with the columns of the projection. The shelter is null for the
+     * totals of all the shelters.
+     */
+    private static void addTotalsRow(MatrixCursor cursor, String[] projection, Long shelterId,
+                                     long count, long totalWeight) {
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String column = projection[i];
+            if (StatsEntry.COLUMN_COUNT.equals(column)) {
+                row[i] = count;
+            } else if (StatsEntry.COLUMN_TOTAL_WEIGHT.equals(column)) {
+                row[i] = totalWeight;
+            } else if (StatsEntry.COLUMN_AVERAGE_WEIGHT.equals(column)) {
+                row[i] = count > 0 ? (double) totalWeight / count : 0d;
+            } else if (ShelterEntry.COLUMN_SHELTER_ID.equals(column) && shelterId != null) {
+                row[i] = shelterId;
+            } else {
+                throw new IllegalArgumentException("Unknown column " + column);
+            }
+        }
+        cursor.addRow(row);
+    }
+
+    /**
+     * A read of one shelter, run on every shelter by {@link #fanOut}.
+     */
+    private interface ShardTask<T> {
+        T run(PetShard shard);
+    }
+
+    private <T> List<T> fanOut(ShardTask<T> task) {
+        return fanOut(getAllShards(), task);
+    }
+
+    /**
+     * Runs the task on the given shards in parallel and returns their results in the order of
+     * the shards. The shards have their own databases, so their reads don't wait for each other.
+     */
+    private <T> List<T> fanOut(List<PetShard> shards, final ShardTask<T> task) {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (final PetShard shard : shards) {
+            futures.add(mFanOutExecutor.submit(new Callable<T>() {
+                @Override
+                public T call() {
+                    shard.mLock.readLock().lock();
+                    try {
+                        return task.run(shard);
+                    } finally {
+                        shard.mLock.readLock().unlock();
+                    }
+                }
+            }));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to read the shelters", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the shelters", e);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the value of the column of the current row with the type it is stored with.
+     */
+    private static Object getValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            default:
+                return cursor.getString(column);
+        }
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
@@ -115,11 +1051,30 @@ public class PetProvider extends ContentProvider {
 
         switch (match){
             case PETS:
+            case SEARCH:
+            case ALL_SEARCH:
                 return PetEntry.CONTENT_LIST_TYPE;
 
+            case STATS:
+            case ALL_STATS:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+
+            case SHELTERS:
+                return ShelterEntry.CONTENT_LIST_TYPE;
+
+            case CHANGES:
+                return ChangeEntry.CONTENT_LIST_TYPE;
+
+            case STATS_GENDER:
+            case STATS_BREED:
+                return StatsEntry.CONTENT_LIST_TYPE;
+
             case PET_ID:
                 return PetEntry.CONTENT_ITEM_TYPE;
 
+            case PET_PHOTO:
+                return PetEntry.CONTENT_PHOTO_TYPE;
+
             default:
                 throw new IllegalArgumentException("Unknown Uri " + uri);
         }
@@ -131,17 +1086,21 @@ public class PetProvider extends ContentProvider {
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
-        assert values != null;
-        if (getValidData(values) == null) {
+        if (values == null) {
+            throw new IllegalArgumentException("Missing values for " + uri);
+        }
+        if (!isValid(values)) {
             return null;
         }
 
-        values = getValidData(values);
-
         int match = sUriMatcher.match(uri);
         switch (match) {
             case PETS:
-                return insertPet(uri, values);
+                long start = System.nanoTime();
+                Uri inserted = insertPet(uri, values);
+                int rows = inserted == null ? 0 : 1;
+                mMetrics.record(PetMetrics.PATTERN_PETS, PetMetrics.OPERATION_INSERT, start, rows);
+                return inserted;
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -152,20 +1111,28 @@ public class PetProvider extends ContentProvider {
      * for that specific row in the database.
      */
     private Uri insertPet(Uri uri, ContentValues values) {
+        PetShard shard = getShard(uri);
+        long id;
+        shard.mLock.readLock().lock();
+        try {
+            // gets a writable copy of the database.
+            SQLiteDatabase database = shard.mDbHelper.getWritableDatabase();
 
-        // gets a writable copy of the database.
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            // inserts the values, with the breed stored as its dictionary _ID, and returns its id.
+            id = shard.mStatements.insert(database, shard.mBreeds.encode(database, values));
 
-        // inserts the values into the database and returns its id.
-        long id = database.insert(PetEntry.TABLE_NAME, null, values);
+            if (id == -1) {
+                Log.e(LOG_TAG, "Failed to insert a new row for uri " + uri);
+                return null;
+            }
 
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert a new row for uri " + uri);
-            return null;
+            shard.mQueryCache.invalidateAll();
+            shard.mDbHelper.onRowsWritten(1);
+            shard.mChangeNotifier.rowChanged(id, PetEntry.OPERATION_INSERT);
+        } finally {
+            shard.mLock.readLock().unlock();
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
-
         // Once we know the ID of the new row in the table,
         // return the new URI with the ID appended to the end of it
         return ContentUris.withAppendedId(uri, id);
@@ -176,23 +1143,71 @@ public class PetProvider extends ContentProvider {
      */
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        PetShard shard = getShard(uri);
+        shard.mLock.readLock().lock();
+        try {
+            return deleteMatch(shard, uri, selection, selectionArgs);
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete the data of the shard at the given uri, selection and selection arguments.
+     */
+    private int deleteMatch(PetShard shard, Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
 
         // gets a writable copy of the database.
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteDatabase database = shard.mDbHelper.getWritableDatabase();
 
         int match = sUriMatcher.match(uri);
 
         switch (match) {
             case PETS:
+                // the selection may filter on the breed, which only the view has.
+                if (!TextUtils.isEmpty(selection)) {
+                    selection = PetEntry._ID + " IN (SELECT " + PetEntry._ID + " FROM "
+                            + PetDbHelper.PETS_VIEW_NAME + " WHERE " + selection + ")";
+                }
                 int delete = database.delete(PetEntry.TABLE_NAME, selection, selectionArgs);
-                getContext().getContentResolver().notifyChange(uri, null);
+                shard.mRowCache.invalidateAll();
+                shard.mQueryCache.invalidateAll();
+                if (delete > 0) {
+                    deleteUnusedPhotos(shard, database);
+                    shard.mDbHelper.onRowsWritten(delete);
+                    shard.mChangeNotifier.tableChanged();
+                }
+                mMetrics.record(PetMetrics.PATTERN_PETS, PetMetrics.OPERATION_DELETE, start, delete);
                 return delete;
 
             case PET_ID:
-                selection = PetEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                int delete1 = database.delete(PetEntry.TABLE_NAME, selection, selectionArgs);
-                getContext().getContentResolver().notifyChange(uri, null);
+                long id = ContentUris.parseId(uri);
+
+                // reads the photo in the transaction of the delete, so a photo written at the
+                // same time is either read here or finds the pet deleted.
+                String photo;
+                int delete1;
+                database.beginTransactionNonExclusive();
+                try {
+                    photo = getPhoto(database, id);
+                    delete1 = shard.mStatements.delete(database, id);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                shard.mRowCache.invalidate(id);
+                shard.mQueryCache.invalidateAll();
+                if (delete1 > 0) {
+                    // inside a batch the delete may still be rolled back, the batch deletes the
+                    // photo once it is committed.
+                    if (!database.inTransaction()) {
+                        shard.mPhotos.delete(photo);
+                    }
+                    shard.mDbHelper.onRowsWritten(delete1);
+                    shard.mChangeNotifier.rowChanged(id, PetEntry.OPERATION_DELETE);
+                }
+                mMetrics.record(PetMetrics.PATTERN_PET_ID, PetMetrics.OPERATION_DELETE, start, delete1);
                 return delete1;
 
             default:
@@ -207,23 +1222,25 @@ public class PetProvider extends ContentProvider {
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
-        contentValues = getValidData(contentValues);
-        if(contentValues == null){
+        if(!isValid(contentValues)){
             return PetEntry.NOT_VALID_DATA;
         }
+        long start = System.nanoTime();
+        int updated;
         switch (match) {
             case PETS:
-                return updatePet(uri, contentValues, selection, selectionArgs);
+                updated = updatePet(uri, contentValues, selection, selectionArgs);
+                break;
             case PET_ID:
-                // For the PET_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?" and selection
-                // arguments will be a String array containing the actual ID.
-                selection = PetEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updatePet(uri, contentValues, selection, selectionArgs);
+                // For the PET_ID code, updatePet() updates the row whose ID is at the end of the
+                // URI, so the selection isn't used.
+                updated = updatePet(uri, contentValues, null, null);
+                break;
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
+        mMetrics.record(getMetricsPattern(match), PetMetrics.OPERATION_UPDATE, start, updated);
+        return updated;
     }
 
     /**
@@ -241,74 +1258,646 @@ public class PetProvider extends ContentProvider {
         }
 
         int match = sUriMatcher.match(uri);
+        PetShard shard = getShard(uri);
+        shard.mLock.readLock().lock();
+        try {
+            // Otherwise, get writeable database to update the data
+            SQLiteDatabase database = shard.mDbHelper.getWritableDatabase();
 
-        // Otherwise, get writeable database to update the data
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            switch (match){
+                case PET_ID:
+                    // Returns the number of database rows affected by the update statement
+                    int update = shard.mStatements.update(database, ContentUris.parseId(uri),
+                            shard.mBreeds.encode(database, values));
+                    shard.mRowCache.invalidate(ContentUris.parseId(uri));
+                    shard.mQueryCache.invalidateAll();
+                    if (update > 0) {
+                        shard.mDbHelper.onRowsWritten(update);
+                        shard.mChangeNotifier.rowChanged(ContentUris.parseId(uri), PetEntry.OPERATION_UPDATE);
+                    }
+                    return update;
+                default:
+                    throw new IllegalArgumentException("Cannot update pet with uri " + uri);
+            }
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
 
-        switch (match){
-            case PET_ID:
-                // Returns the number of database rows affected by the update statement
-                int update = database.update(PetEntry.TABLE_NAME, values, selection, selectionArgs);
-                getContext().getContentResolver().notifyChange(uri, null);
-                return update;
-            default:
-                throw new IllegalArgumentException("Cannot update pet with uri " + uri);
-        }
-    }
-
-    private ContentValues getValidData(ContentValues values){
-        switch (ValidationCode(values)){
-            case PetEntry.NOT_VALID_GENDER:
-                values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_UNKNOWN);
-                return values;
-            case PetEntry.NOT_VALID_WEIGHT:
-                values.put(PetEntry.COLUMN_PET_WEIGHT, 0);
-                return values;
-            case PetEntry.NOT_VALID_BREED:
-                values.put(PetEntry.COLUMN_PET_BREED, "Unknown");
-                return values;
-            case PetEntry.VALID_DATA:
-                return values;
+    /**
+     * Insert all the given rows inside a single database transaction, so the whole batch pays for
+     * one commit instead of one per row. Rows that fail validation are skipped. The change
+     * notifications are sent together once the batch is committed.
+     *
+     * @return the number of rows that were inserted.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        int match = sUriMatcher.match(uri);
+        if (match != PETS) {
+            throw new IllegalArgumentException("Bulk insertion is not supported for " + uri);
+        }
+
+        return insertPets(getShard(uri), values, false);
+    }
+
+    /**
+     * Inserts the given rows into the shelter inside a single database transaction, see
+     * {@link #bulkInsert}.
+     *
+     * @param validated whether the rows were already validated, the other rows are validated
+     *                  and skipped if they fail.
+     * @return the number of rows that were inserted.
+     */
+    private int insertPets(PetShard shard, ContentValues[] values, boolean validated) {
+        long start = System.nanoTime();
+        shard.mLock.readLock().lock();
+        try {
+            // gets a writable copy of the database.
+            SQLiteDatabase database = shard.mDbHelper.getWritableDatabase();
+
+            int inserted = 0;
+            boolean committed = false;
+            shard.mChangeNotifier.beginBatch();
+            database.beginTransactionNonExclusive();
+            try {
+                for (ContentValues value : values) {
+                    if (!validated && !isValid(value)) {
+                        continue;
+                    }
+
+                    long id = shard.mStatements.insert(database, shard.mBreeds.encode(database, value));
+                    if (id == -1) {
+                        Log.e(LOG_TAG, "Failed to insert a new row for uri " + shard.mPetsUri);
+                    } else {
+                        shard.mChangeNotifier.rowChanged(id, PetEntry.OPERATION_INSERT);
+                        inserted++;
+                    }
+                }
+                database.setTransactionSuccessful();
+                committed = true;
+            } finally {
+                database.endTransaction();
+                shard.mBreeds.endTransaction(committed);
+                shard.mQueryCache.invalidateAll();
+                shard.mChangeNotifier.endBatch(committed);
+            }
+
+            shard.mDbHelper.onRowsWritten(inserted);
+            mMetrics.record(PetMetrics.PATTERN_PETS, PetMetrics.OPERATION_BULK_INSERT, start, inserted);
+            return inserted;
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply all the given operations inside a single database transaction. Either every operation
+     * is committed or none of them is. The operations go through {@link #insert}, {@link #update}
+     * and {@link #delete}, so they get the same validation as single row calls, but their change
+     * notifications are sent together once the batch is committed. The transaction is the one
+     * of a shelter, so all the operations must be on the same shelter.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long shelterId = operations.isEmpty() ? PetContract.DEFAULT_SHELTER_ID
+                : PetContract.getShelterId(operations.get(0).getUri());
+        for (ContentProviderOperation operation : operations) {
+            if (PetContract.getShelterId(operation.getUri()) != shelterId) {
+                throw new IllegalArgumentException("Cannot apply a batch across shelters " + operation.getUri());
+            }
+        }
+        PetShard shard = getShard(shelterId);
+        shard.mLock.readLock().lock();
+        try {
+            // gets a writable copy of the database.
+            SQLiteDatabase database = shard.mDbHelper.getWritableDatabase();
+
+            boolean committed = false;
+            shard.mChangeNotifier.beginBatch();
+            database.beginTransactionNonExclusive();
+            try {
+                ContentProviderResult[] results = super.applyBatch(operations);
+                database.setTransactionSuccessful();
+                committed = true;
+                return results;
+            } finally {
+                database.endTransaction();
+                shard.mBreeds.endTransaction(committed);
+                if (committed) {
+                    deleteUnusedPhotos(shard, database);
+                }
+
+                // rows read while the batch wasn't committed yet may have been cached as they were
+                // before the batch.
+                shard.mRowCache.invalidateAll();
+                shard.mQueryCache.invalidateAll();
+                shard.mChangeNotifier.endBatch(committed);
+            }
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the photo of a pet. Reading opens the current photo. Writing opens a new photo,
+     * which replaces the current one only once the returned descriptor is closed, see
+     * {@link PetPhotos}.
+     */
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != PET_PHOTO) {
+            throw new IllegalArgumentException("Cannot open unknown Uri " + uri);
+        }
+        final PetShard shard = getShard(uri);
+
+        // the _ID is the segment before photo/
+        List<String> segments = uri.getPathSegments();
+        long id = Long.parseLong(segments.get(segments.size() - 2));
+        int fileMode = ParcelFileDescriptor.parseMode(mode);
+
+        shard.mLock.readLock().lock();
+        try {
+            if (fileMode == ParcelFileDescriptor.MODE_READ_ONLY) {
+                String photo = getPhoto(shard.mDbHelper.getReadableDatabase(), id);
+                if (photo == null) {
+                    throw new FileNotFoundException("No photo for " + uri);
+                }
+                return shard.mPhotos.openForReading(photo);
+            }
+
+            // a new photo is always written from its start.
+            if ((fileMode & ParcelFileDescriptor.MODE_READ_WRITE) != ParcelFileDescriptor.MODE_WRITE_ONLY
+                    || (fileMode & ParcelFileDescriptor.MODE_APPEND) != 0) {
+                throw new IllegalArgumentException("Unsupported mode " + mode + " for " + uri);
+            }
+            if (DatabaseUtils.queryNumEntries(shard.mDbHelper.getReadableDatabase(), PetEntry.TABLE_NAME,
+                    PetEntry._ID + "=?", new String[]{String.valueOf(id)}) == 0) {
+                throw new FileNotFoundException("No pet for " + uri);
+            }
+            return shard.mPhotos.openForWriting(id, new PetPhotos.Listener() {
+                @Override
+                public boolean onPhotoWritten(long petId, String name) {
+                    return setPhoto(shard, petId, name);
+                }
+            });
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the pet reference its newly written photo and deletes the photo it replaces.
+     *
+     * @return false if the pet doesn't exist anymore.
+     */
+    private boolean setPhoto(PetShard shard, long id, String photo) {
+        shard.mLock.readLock().lock();
+        try {
+            SQLiteDatabase database = shard.mDbHelper.getWritableDatabase();
+
+            ContentValues values = new ContentValues();
+            values.put(PetEntry.COLUMN_PET_PHOTO, photo);
+
+            String replaced;
+            int update;
+            database.beginTransactionNonExclusive();
+            try {
+                replaced = getPhoto(database, id);
+                update = database.update(PetEntry.TABLE_NAME, values, PetEntry._ID + "=?",
+                        new String[]{String.valueOf(id)});
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+
+            shard.mRowCache.invalidate(id);
+            shard.mQueryCache.invalidateAll();
+            if (update == 0) {
+                return false;
+            }
+            shard.mPhotos.delete(replaced);
+            shard.mDbHelper.onRowsWritten(update);
+            shard.mChangeNotifier.rowChanged(id, PetEntry.OPERATION_UPDATE);
+            return true;
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the photos of the deleted pets, unless the deletes are part of a batch that isn't
+     * committed yet.
+     */
+    private static void deleteUnusedPhotos(PetShard shard, SQLiteDatabase database) {
+        if (!database.inTransaction()) {
+            shard.mPhotos.deleteUnused(database);
+        }
+    }
+
+    /**
+     * Returns the name of the photo of the pet with the given _ID, or null if it has none.
+     */
+    private static String getPhoto(SQLiteDatabase database, long id) {
+        Cursor cursor = database.query(PetEntry.TABLE_NAME, new String[]{PetEntry.COLUMN_PET_PHOTO},
+                PetEntry._ID + "=?", new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Calls a provider specific method, see the METHOD_ constants of {@link PetContract}. The
+     * methods work on the shelter of {@link PetContract#KEY_SHELTER_ID} in the extras.
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if (PetContract.METHOD_GET_METRICS.equals(method)) {
+            return mMetrics.toBundle();
+        }
+        if (PetContract.METHOD_ADD_SHELTER.equals(method)) {
+            addShelter(extras);
+            return null;
+        }
+
+        if (PetContract.METHOD_RESTORE.equals(method)) {
+            // the restore waits for the other operations on the shelter itself.
+            restore(getShard(extras), arg);
+            return null;
+        }
+
+        PetShard shard = getShard(extras);
+        // the long running methods lock the shelter for each chunk they read or write, so a
+        // restore doesn't wait for all of them.
+        switch (method) {
+            case PetContract.METHOD_IMPORT_PETS:
+                return importPets(shard, arg, extras);
+            case PetContract.METHOD_EXPORT_PETS:
+                return exportPets(shard, arg, extras);
+            case PetContract.METHOD_GENERATE_PETS:
+                return generatePets(shard, arg, extras);
+            case PetContract.METHOD_BACKUP:
+                return backup(shard);
             default:
+                break;
+        }
+
+        shard.mLock.readLock().lock();
+        try {
+            return callMethod(shard, method, arg, extras);
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Calls the method on the shard, see {@link #call}.
+     */
+    private Bundle callMethod(PetShard shard, String method, String arg, Bundle extras) {
+        switch (method) {
+            case PetContract.METHOD_GET_ROW_CACHE_STATS:
+                Bundle stats = new Bundle();
+                stats.putInt(PetContract.KEY_HIT_COUNT, shard.mRowCache.hitCount());
+                stats.putInt(PetContract.KEY_MISS_COUNT, shard.mRowCache.missCount());
+                stats.putInt(PetContract.KEY_EVICTION_COUNT, shard.mRowCache.evictionCount());
+                stats.putInt(PetContract.KEY_SIZE, shard.mRowCache.size());
+                stats.putInt(PetContract.KEY_MAX_SIZE, shard.mRowCache.maxSize());
+                return stats;
+
+            case PetContract.METHOD_REBUILD_STATS:
+                shard.mDbHelper.rebuildStats(shard.mDbHelper.getWritableDatabase());
+                shard.mChangeNotifier.tableChanged();
                 return null;
+
+            case PetContract.METHOD_COMPACT_CHANGES:
+                shard.mDbHelper.compactChanges(shard.mDbHelper.getWritableDatabase(), ChangeEntry.DELETE_RETENTION_MS);
+                return null;
+
+            default:
+                throw new IllegalArgumentException("Unknown method " + method);
         }
     }
 
-    private int ValidationCode(ContentValues values) {
-        String name;
-        Integer gender;
-        Integer weight;
-        String breed;
+    /**
+     * Imports the pets of the file at the source uri of the extras into the shelter, see
+     * {@link PetContract#METHOD_IMPORT_PETS}. Each chunk is inserted in its own transaction,
+     * locking the shelter.
+     */
+    private Bundle importPets(final PetShard shard, String format, Bundle extras) {
+        Uri source = getUriExtra(extras, PetContract.KEY_SOURCE_URI);
+        Uri errorReportUri = extras.getParcelable(PetContract.KEY_ERROR_REPORT_URI);
+        ContentResolver resolver = getContext().getContentResolver();
+
+        // the importer validates the pets itself, to report the rejected ones.
+        PetImporter importer = new PetImporter(new PetImporter.Inserter() {
+            @Override
+            public int insert(ContentValues[] pets) {
+                return insertPets(shard, pets, true);
+            }
+        });
 
-        if (values.containsKey(PetEntry.COLUMN_PET_NAME)) {
-            name = values.getAsString(PetEntry.COLUMN_PET_NAME).trim();
-            if (TextUtils.isEmpty(name)) {
-                return PetEntry.NOT_VALID_NAME;
+        int imported;
+        try (InputStream in = resolver.openInputStream(source);
+             OutputStream errorStream = errorReportUri == null ? null
+                     : resolver.openOutputStream(errorReportUri, "w")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Cannot open " + source);
             }
+            Writer errorReport = errorStream == null ? null
+                    : new OutputStreamWriter(errorStream, StandardCharsets.UTF_8);
+
+            imported = importer.importPets(in, format, errorReport, new ProgressListener() {
+                @Override
+                public void onProgress(int processedRows, int rejectedRows) {
+                    Log.d(LOG_TAG, "Imported " + processedRows + " pets, " + rejectedRows + " rejected");
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to import " + source, e);
         }
 
-        if (values.containsKey(PetEntry.COLUMN_PET_GENDER)) {
-            gender = values.getAsInteger(PetEntry.COLUMN_PET_GENDER);
-            if (gender == null || !PetEntry.isValidGender(gender)) {
-                return PetEntry.NOT_VALID_GENDER;
+        Bundle result = new Bundle();
+        result.putInt(PetContract.KEY_IMPORTED_COUNT, imported);
+        result.putInt(PetContract.KEY_REJECTED_COUNT, importer.getRejectedCount());
+        return result;
+    }
+
+    /**
+     * Exports all the pets of the shelter to the file at the destination uri of the extras, see
+     * {@link PetContract#METHOD_EXPORT_PETS}. The pets are read by pages, each read in full
+     * while the shelter is locked.
+     */
+    private Bundle exportPets(final PetShard shard, String format, Bundle extras) {
+        Uri destination = getUriExtra(extras, PetContract.KEY_DESTINATION_URI);
+        ContentResolver resolver = getContext().getContentResolver();
+
+        int exported;
+        try (OutputStream out = resolver.openOutputStream(destination, "w")) {
+            if (out == null) {
+                throw new IllegalArgumentException("Cannot open " + destination);
             }
+            exported = new PetExporter(new PetExporter.Reader() {
+                @Override
+                public Cursor read(long afterId, int limit) {
+                    return readExportPage(shard, afterId, limit);
+                }
+            }).exportPets(out, format, null);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to export to " + destination, e);
         }
 
-        if (values.containsKey(PetEntry.COLUMN_PET_WEIGHT)) {
-            weight = values.getAsInteger(PetEntry.COLUMN_PET_WEIGHT);
-            if (weight != null && weight < 0) {
-                return PetEntry.NOT_VALID_WEIGHT;
+        Bundle result = new Bundle();
+        result.putInt(PetContract.KEY_EXPORTED_COUNT, exported);
+        return result;
+    }
+
+    /**
+     * Reads a page of the pets exported by {@link #exportPets}, without the query cache.
+     */
+    private static Cursor readExportPage(PetShard shard, long afterId, int limit) {
+        shard.mLock.readLock().lock();
+        try {
+            SQLiteDatabase database = shard.mDbHelper.getReadableDatabase();
+            Cursor cursor = readPets(database, PetQuery.parse(PetEntry.buildPageUri(afterId, limit)),
+                    PetExporter.COLUMNS, null, null, null);
+            // fills the page while its database can't be replaced by a restore.
+            cursor.getCount();
+            return cursor;
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts the number of generated pets given as argument into the shelter, see
+     * {@link PetContract#METHOD_GENERATE_PETS}. Each chunk is inserted in its own transaction,
+     * locking the shelter.
+     */
+    private Bundle generatePets(final PetShard shard, String count, Bundle extras) {
+        int petCount;
+        try {
+            petCount = Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid pet count " + count, e);
+        }
+        long seed = extras == null ? PetDataGenerator.DEFAULT_SEED
+                : extras.getLong(PetContract.KEY_SEED, PetDataGenerator.DEFAULT_SEED);
+
+        // validated like the pets of bulkInsert().
+        int generated = new PetDataGenerator(seed).insertPets(new PetImporter.Inserter() {
+            @Override
+            public int insert(ContentValues[] pets) {
+                return insertPets(shard, pets, false);
+            }
+        }, petCount, new ProgressListener() {
+            @Override
+            public void onProgress(int processedRows, int rejectedRows) {
+                Log.d(LOG_TAG, "Generated " + processedRows + " pets, " + rejectedRows + " rejected");
             }
+        });
+
+        Bundle result = new Bundle();
+        result.putInt(PetContract.KEY_GENERATED_COUNT, generated);
+        return result;
+    }
+
+    /**
+     * Writes a backup of the database into the backups directory, see
+     * {@link PetContract#METHOD_BACKUP}. The snapshot is written to a temporary file and only
+     * renamed once it is complete. The shelter is only locked while the snapshot is written.
+     */
+    private Bundle backup(PetShard shard) {
+        File directory = new File(getContext().getFilesDir(), BACKUP_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + directory);
         }
 
-        if(values.containsKey(PetEntry.COLUMN_PET_BREED)){
-            breed = values.getAsString(PetEntry.COLUMN_PET_BREED).trim();
-            if(TextUtils.isEmpty(breed)){
-                return PetEntry.NOT_VALID_BREED;
+        // the backups are named after the database of their shelter.
+        String prefix = shard.mDatabaseName.substring(0, shard.mDatabaseName.lastIndexOf('.'));
+        File backup = new File(directory, prefix + "-" + System.currentTimeMillis() + ".db");
+        File temporary = new File(backup.getPath() + ".tmp");
+        SQLiteDatabase.deleteDatabase(temporary);
+
+        String checksum = null;
+        try {
+            shard.mLock.readLock().lock();
+            try {
+                shard.mDbHelper.writeSnapshot(temporary);
+            } finally {
+                shard.mLock.readLock().unlock();
+            }
+            if (!temporary.renameTo(backup)) {
+                throw new IOException("Cannot rename " + temporary);
+            }
+            checksum = PetBackup.writeChecksum(backup);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to back up the database", e);
+        } finally {
+            // the snapshot may also fail with an SQLException.
+            SQLiteDatabase.deleteDatabase(temporary);
+            if (checksum == null) {
+                PetBackup.delete(backup);
             }
         }
 
-        return PetEntry.VALID_DATA;
+        Bundle result = new Bundle();
+        result.putString(PetContract.KEY_BACKUP_PATH, backup.getPath());
+        result.putString(PetContract.KEY_CHECKSUM, checksum);
+        return result;
     }
-}
 
+    /**
+     * Replaces the database of the shelter with the backup at the given path, see
+     * {@link PetContract#METHOD_RESTORE}. The backup is checked and copied next to the database
+     * first, then swapped in with a rename, so the database is either fully replaced or left
+     * as it was. The swap waits for the operations on the shelter that are running, and the
+     * operations that start meanwhile wait for the restored database, see {@link PetShard#mLock}.
+     * Cursors returned before the swap can't be read further.
+     *
+     * The backups don't hold the photos, the restored pets whose photo was replaced or deleted
+     * since the backup lose their photo.
+     */
+    private void restore(PetShard shard, String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("Missing backup path");
+        }
+        File backup = new File(path);
+        File database = getContext().getDatabasePath(shard.mDatabaseName);
+        File staged = new File(database.getPath() + ".restore");
+
+        try {
+            PetBackup.verifyChecksum(backup);
+            PetBackup.copy(backup, staged);
+        } catch (IOException e) {
+            staged.delete();
+            throw new IllegalArgumentException("Cannot restore " + path, e);
+        }
+
+        // a backup written by a newer version of the app can't be opened by this one.
+        boolean checked = false;
+        try {
+            SQLiteDatabase check = SQLiteDatabase.openDatabase(staged.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+            int version;
+            try {
+                version = check.getVersion();
+            } finally {
+                check.close();
+            }
+            if (version > PetDbHelper.DATABASE_VERSION) {
+                throw new IllegalArgumentException("Backup version " + version + " is newer than the database");
+            }
+            checked = true;
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Cannot restore " + path, e);
+        } finally {
+            if (!checked) {
+                SQLiteDatabase.deleteDatabase(staged);
+            }
+        }
+
+        shard.mLock.writeLock().lock();
+        try {
+            // every cached row, query result and breed may no longer exist, they are dropped
+            // before the swap so no operation reads them from the restored database.
+            shard.mRowCache.invalidateAll();
+            shard.mQueryCache.invalidateAll();
+            shard.mBreeds.clear();
+            shard.mStatements.close();
+            shard.mDbHelper.close();
+
+            // the log files of the old database must not be applied to the restored one.
+            new File(database.getPath() + "-wal").delete();
+            new File(database.getPath() + "-shm").delete();
+            new File(database.getPath() + "-journal").delete();
+
+            if (!staged.renameTo(database)) {
+                staged.delete();
+                throw new IllegalStateException("Cannot replace " + database);
+            }
+            shard.mDbHelper = new PetDbHelper(getContext(), shard.mDatabaseName);
+
+            // the readers of the change log have to start over.
+            SQLiteDatabase restored = shard.mDbHelper.getWritableDatabase();
+            shard.mDbHelper.resetChangeLogId(restored);
+            shard.mPhotos.clearMissing(restored);
+            deleteUnusedPhotos(shard, restored);
+        } finally {
+            shard.mLock.writeLock().unlock();
+        }
+        shard.mChangeNotifier.tableChanged();
+    }
+
+    /**
+     * Prints the operation metrics and the statistics of the caches, for
+     * adb shell dumpsys activity provider com.msaye7.pets/.data.PetProvider
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mMetrics.dump(writer);
+
+        // only the shelters opened since the provider started have caches.
+        List<PetShard> shards = new ArrayList<>();
+        synchronized (mShards) {
+            for (int i = 0; i < mShards.size(); i++) {
+                shards.add(mShards.valueAt(i));
+            }
+        }
+        for (PetShard shard : shards) {
+            writer.println("Shelter " + shard.mShelterId + " (" + shard.mDatabaseName + "):");
+            writer.println("  Row cache: hits=" + shard.mRowCache.hitCount() + " misses=" + shard.mRowCache.missCount()
+                    + " evictions=" + shard.mRowCache.evictionCount() + " size=" + shard.mRowCache.size()
+                    + "/" + shard.mRowCache.maxSize());
+            writer.println("  Query cache: hits=" + shard.mQueryCache.hitCount() + " misses="
+                    + shard.mQueryCache.missCount() + " size=" + shard.mQueryCache.size() + "/"
+                    + shard.mQueryCache.maxSize());
+        }
+    }
+
+    /**
+     * Returns the {@link PetMetrics} pattern of the uri matching the given code.
+     */
+    private static int getMetricsPattern(int match) {
+        switch (match) {
+            case PETS:
+                return PetMetrics.PATTERN_PETS;
+            case PET_ID:
+                return PetMetrics.PATTERN_PET_ID;
+            case SEARCH:
+            case ALL_SEARCH:
+                return PetMetrics.PATTERN_SEARCH;
+            default:
+                return PetMetrics.PATTERN_STATS;
+        }
+    }
+
+    private static Uri getUriExtra(Bundle extras, String key) {
+        Uri uri = extras == null ? null : extras.<Uri>getParcelable(key);
+        if (uri == null) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return uri;
+    }
+
+    /**
+     * Validates the values in a single pass, correcting the fields that have a default value.
+     * Returns false if the values must not be written.
+     */
+    private boolean isValid(ContentValues values) {
+        // the photo is only written through openFile().
+        values.remove(PetEntry.COLUMN_PET_PHOTO);
+
+        int failures = PetValidator.validate(values);
+        mMetrics.recordValidation(failures);
+        if (PetValidator.isRejected(failures)) {
+            Log.w(LOG_TAG, "Rejected pet values: " + PetValidator.describe(failures));
+            return false;
+        }
+        return true;
+    }
+}
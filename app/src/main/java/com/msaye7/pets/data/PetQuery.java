@@ -0,0 +1,307 @@
+package com.msaye7.pets.data;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The sort, filter and page parameters of a query of the pets uri, checked and normalized.
+ * Only the SORT_ values of {@link PetEntry} are accepted, and each of them is served by an index
+ * of {@link PetDbHelper}, so a page is read from the index in order without sorting the table.
+ *
+ * Sorted pages use keyset paging like the pages by _ID: a page holds the pets after the pet
+ * given as after_id, found by seeking the index to the sort key given as after_key. Without it
+ * the current sort key of that pet is used, so the page is empty once the pet is deleted. Pets
+ * with the same sort key are ordered by _ID. A page read again ends the same way at the pet
+ * given as until_id and until_key.
+ */
+final class PetQuery {
+
+    /** the sort key of the pet of a page start or end, read with its _ID as argument. */
+    private static final String AFTER_NAME = "(SELECT " + PetEntry.COLUMN_PET_NAME + " FROM "
+            + PetEntry.TABLE_NAME + " WHERE " + PetEntry._ID + " = ?)";
+    private static final String AFTER_WEIGHT = "(SELECT " + PetEntry.COLUMN_PET_WEIGHT + " FROM "
+            + PetEntry.TABLE_NAME + " WHERE " + PetEntry._ID + " = ?)";
+
+    /** names are sorted ignoring case, like the name indexes. */
+    private static final String NAME_KEY = PetEntry.COLUMN_PET_NAME + " COLLATE NOCASE";
+
+    /** one of the SORT_ values, null if the uri doesn't set one. */
+    private final String mSort;
+
+    /** the gender of the kept pets, or {@link PetEntry#GENDER_ANY}. */
+    private final int mGender;
+
+    /** the _ID of the pet of the page start, 0 for the first page. */
+    private final long mAfterId;
+
+    /** the sort key of the pet of the page start, null to read it from that pet. */
+    private final String mAfterKey;
+
+    /** the _ID of the last pet of a page read again, 0 if the page isn't given an end. */
+    private final long mUntilId;
+
+    /** the sort key of the last pet of a page read again, null to read it from that pet. */
+    private final String mUntilKey;
+
+    /** the maximum number of pets, 0 if the query isn't paged. */
+    private final int mLimit;
+
+    private PetQuery(String sort, int gender, long afterId, String afterKey, long untilId, String untilKey,
+                     int limit) {
+        mSort = sort;
+        mGender = gender;
+        mAfterId = afterId;
+        mAfterKey = afterKey;
+        mUntilId = untilId;
+        mUntilKey = untilKey;
+        mLimit = limit;
+    }
+
+    /**
+     * Reads the parameters of the pets uri.
+     *
+     * @throws IllegalArgumentException if a parameter has a value that isn't allowed.
+     */
+    static PetQuery parse(Uri uri) {
+        String sort = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_SORT);
+        if (sort != null) {
+            switch (sort) {
+                case PetEntry.SORT_ID:
+                case PetEntry.SORT_NAME:
+                case PetEntry.SORT_WEIGHT:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown sort " + uri);
+            }
+        }
+
+        // only the sorted pages have a sort key other than the _ID.
+        boolean sorted = PetEntry.SORT_NAME.equals(sort) || PetEntry.SORT_WEIGHT.equals(sort);
+        String afterKey = sorted ? uri.getQueryParameter(PetEntry.QUERY_PARAMETER_AFTER_KEY) : null;
+        String untilKey = sorted ? uri.getQueryParameter(PetEntry.QUERY_PARAMETER_UNTIL_KEY) : null;
+
+        int gender = PetEntry.GENDER_ANY;
+        int limit = 0;
+        long afterId = 0;
+        long untilId = 0;
+        try {
+            String genderParameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_GENDER);
+            if (genderParameter != null) {
+                gender = Integer.parseInt(genderParameter);
+                if (!PetEntry.isValidGender(gender)) {
+                    throw new IllegalArgumentException("Unknown gender " + uri);
+                }
+            }
+
+            String limitParameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_LIMIT);
+            if (limitParameter != null) {
+                limit = Integer.parseInt(limitParameter);
+                if (limit <= 0) {
+                    throw new IllegalArgumentException("Invalid page size " + uri);
+                }
+            }
+
+            String afterParameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_AFTER_ID);
+            if (afterParameter != null) {
+                afterId = Long.parseLong(afterParameter);
+            }
+
+            String untilParameter = uri.getQueryParameter(PetEntry.QUERY_PARAMETER_UNTIL_ID);
+            if (untilParameter != null) {
+                untilId = Long.parseLong(untilParameter);
+            }
+
+            // the weights are compared as numbers, like the column.
+            if (PetEntry.SORT_WEIGHT.equals(sort)) {
+                if (afterKey != null) {
+                    afterKey = String.valueOf(Long.parseLong(afterKey));
+                }
+                if (untilKey != null) {
+                    untilKey = String.valueOf(Long.parseLong(untilKey));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page parameters " + uri, e);
+        }
+
+        // a page always has an order, _ID unless the uri sets another one.
+        if (sort == null && (limit > 0 || untilId > 0)) {
+            sort = PetEntry.SORT_ID;
+        }
+        return new PetQuery(sort, gender, afterId, afterKey, untilId, untilKey, limit);
+    }
+
+    /**
+     * Returns the caller's selection with the filter and the page start added to it.
+     */
+    String getSelection(String selection) {
+        List<String> clauses = new ArrayList<>(3);
+        if (!TextUtils.isEmpty(selection)) {
+            clauses.add("(" + selection + ")");
+        }
+
+        if (mGender == PetEntry.GENDER_UNKNOWN) {
+            clauses.add("(" + PetEntry.COLUMN_PET_GENDER + " = ? OR " + PetEntry.COLUMN_PET_GENDER + " IS NULL)");
+        } else if (mGender != PetEntry.GENDER_ANY) {
+            clauses.add(PetEntry.COLUMN_PET_GENDER + " = ?");
+        }
+
+        if (mAfterId > 0) {
+            // the first condition seeks the index to the key of the page start, the second one
+            // skips the pets before it among those with the same key.
+            switch (mSort == null ? PetEntry.SORT_ID : mSort) {
+                case PetEntry.SORT_NAME:
+                    String afterName = mAfterKey != null ? "?" : AFTER_NAME;
+                    clauses.add(NAME_KEY + " >= " + afterName + " AND (" + NAME_KEY + " > "
+                            + afterName + " OR " + PetEntry._ID + " > ?)");
+                    break;
+                case PetEntry.SORT_WEIGHT:
+                    String afterWeight = mAfterKey != null ? "CAST(? AS INTEGER)" : AFTER_WEIGHT;
+                    clauses.add(PetEntry.COLUMN_PET_WEIGHT + " >= " + afterWeight + " AND ("
+                            + PetEntry.COLUMN_PET_WEIGHT + " > " + afterWeight + " OR " + PetEntry._ID + " > ?)");
+                    break;
+                default:
+                    clauses.add(PetEntry._ID + " > ?");
+                    break;
+            }
+        }
+
+        if (mUntilId > 0) {
+            // the same conditions, ending the page at its last pet.
+            switch (mSort) {
+                case PetEntry.SORT_NAME:
+                    String untilName = mUntilKey != null ? "?" : AFTER_NAME;
+                    clauses.add(NAME_KEY + " <= " + untilName + " AND (" + NAME_KEY + " < "
+                            + untilName + " OR " + PetEntry._ID + " <= ?)");
+                    break;
+                case PetEntry.SORT_WEIGHT:
+                    String untilWeight = mUntilKey != null ? "CAST(? AS INTEGER)" : AFTER_WEIGHT;
+                    clauses.add(PetEntry.COLUMN_PET_WEIGHT + " <= " + untilWeight + " AND ("
+                            + PetEntry.COLUMN_PET_WEIGHT + " < " + untilWeight + " OR " + PetEntry._ID + " <= ?)");
+                    break;
+                default:
+                    clauses.add(PetEntry._ID + " <= ?");
+                    break;
+            }
+        }
+
+        return clauses.isEmpty() ? null : TextUtils.join(" AND ", clauses);
+    }
+
+    /**
+     * Returns the caller's selection arguments followed by the ones of {@link #getSelection}.
+     */
+    String[] getSelectionArgs(String[] selectionArgs) {
+        List<String> args = new ArrayList<>();
+        if (selectionArgs != null) {
+            args.addAll(Arrays.asList(selectionArgs));
+        }
+
+        if (mGender != PetEntry.GENDER_ANY) {
+            args.add(String.valueOf(mGender));
+        }
+
+        if (mAfterId > 0) {
+            String afterId = String.valueOf(mAfterId);
+            if (PetEntry.SORT_NAME.equals(mSort) || PetEntry.SORT_WEIGHT.equals(mSort)) {
+                String afterKey = mAfterKey != null ? mAfterKey : afterId;
+                args.add(afterKey);
+                args.add(afterKey);
+            }
+            args.add(afterId);
+        }
+
+        if (mUntilId > 0) {
+            String untilId = String.valueOf(mUntilId);
+            if (PetEntry.SORT_NAME.equals(mSort) || PetEntry.SORT_WEIGHT.equals(mSort)) {
+                String untilKey = mUntilKey != null ? mUntilKey : untilId;
+                args.add(untilKey);
+                args.add(untilKey);
+            }
+            args.add(untilId);
+        }
+
+        return args.isEmpty() ? null : args.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the order of the pets, the caller's sort order if the uri doesn't set one.
+     *
+     * @throws IllegalArgumentException if both the uri and the caller set an order.
+     */
+    String getOrderBy(String sortOrder) {
+        if (mSort == null) {
+            return sortOrder;
+        }
+        if (sortOrder != null) {
+            throw new IllegalArgumentException("Paged and sorted queries can't have a sort order");
+        }
+
+        switch (mSort) {
+            case PetEntry.SORT_NAME:
+                return NAME_KEY + " ASC, " + PetEntry._ID + " ASC";
+            case PetEntry.SORT_WEIGHT:
+                return PetEntry.COLUMN_PET_WEIGHT + " ASC, " + PetEntry._ID + " ASC";
+            default:
+                return PetEntry._ID + " ASC";
+        }
+    }
+
+    /**
+     * Returns the limit of the query, null if it isn't paged.
+     */
+    String getLimit() {
+        return mLimit > 0 ? String.valueOf(mLimit) : null;
+    }
+
+    /**
+     * Returns true if the query returns at most the given number of rows.
+     */
+    boolean isBounded(int maxRows) {
+        return mLimit > 0 && mLimit <= maxRows;
+    }
+
+    /**
+     * Returns the key of the results of this query with the given arguments in
+     * {@link PetQueryCache}. Queries with the same key return the same rows.
+     */
+    String getCacheKey(String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        StringBuilder key = new StringBuilder();
+        key.append(mSort).append(',').append(mGender).append(',').append(mAfterId).append(',')
+                .append(mUntilId).append(',').append(mLimit);
+        append(key, mAfterKey);
+        append(key, mUntilKey);
+        append(key, sortOrder);
+        append(key, selection);
+        appendAll(key, projection);
+        appendAll(key, selectionArgs);
+        return key.toString();
+    }
+
+    private static void appendAll(StringBuilder key, String[] values) {
+        key.append(values == null ? '\u0002' : '\u0003');
+        if (values != null) {
+            for (String value : values) {
+                append(key, value);
+            }
+        }
+    }
+
+    /**
+     * Appends a separated value to the key, null being distinct from every string.
+     */
+    private static void append(StringBuilder key, String value) {
+        key.append('\u0000');
+        if (value == null) {
+            key.append('\u0001');
+        } else {
+            key.append(value);
+        }
+    }
+}
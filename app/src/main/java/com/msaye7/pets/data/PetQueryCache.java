@@ -0,0 +1,164 @@
+package com.msaye7.pets.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+/**
+ * Bounded cache of the results of the pets queries, by the key of their normalized
+ * {@link PetQuery}, so switching back to an order or filter that was just shown doesn't query
+ * the database again. Every write of the pets drops all the cached results. Its size is
+ * measured in approximate bytes of the cached values.
+ */
+final class PetQueryCache {
+
+    /** only the queries limited to this number of rows are cached, see {@link PetQuery#isBounded}. */
+    static final int MAX_CACHED_ROWS = 200;
+
+    /** approximate size of a cached result or row without its values, in bytes. */
+    private static final int ROW_OVERHEAD_BYTES = 64;
+
+    /** approximate size of a cached value without its content, in bytes. */
+    private static final int VALUE_OVERHEAD_BYTES = 24;
+
+    private final LruCache<String, Result> mResults;
+
+    /**
+     * Incremented by every invalidation. Results read from the database are only cached if no
+     * invalidation happened since the read started, like in {@link PetRowCache}.
+     */
+    private long mGeneration;
+
+    /**
+     * @param maxSizeBytes approximate maximum size of the cached results, in bytes.
+     */
+    PetQueryCache(int maxSizeBytes) {
+        mResults = new LruCache<String, Result>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(String key, Result result) {
+                int size = ROW_OVERHEAD_BYTES + 2 * key.length();
+                for (Object[] row : result.mRows) {
+                    size += ROW_OVERHEAD_BYTES;
+                    for (Object value : row) {
+                        size += VALUE_OVERHEAD_BYTES;
+                        if (value instanceof String) {
+                            size += 2 * ((String) value).length();
+                        } else if (value instanceof byte[]) {
+                            size += ((byte[]) value).length;
+                        }
+                    }
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns a cursor holding the cached result of the query with the given key, or null if it
+     * isn't cached.
+     */
+    Cursor get(String key) {
+        Result result = mResults.get(key);
+        if (result == null) {
+            return null;
+        }
+        return result.toCursor(new PetRowCache.CachedCursor(result.mColumns, result.mRows.length));
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put} for a result read from now on.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Reads all the rows of the cursor, caches them unless an invalidation happened since the
+     * given generation, and returns them as a new cursor. The given cursor is closed.
+     */
+    Cursor put(String key, Cursor cursor, long generation) {
+        Result result;
+        try {
+            result = new Result(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mResults.put(key, result);
+            }
+        }
+        return result.toCursor(new MatrixCursor(result.mColumns, result.mRows.length));
+    }
+
+    /**
+     * Drops all the cached results.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mResults.evictAll();
+    }
+
+    int hitCount() {
+        return mResults.hitCount();
+    }
+
+    int missCount() {
+        return mResults.missCount();
+    }
+
+    int size() {
+        return mResults.size();
+    }
+
+    int maxSize() {
+        return mResults.maxSize();
+    }
+
+    /**
+     * The rows of a query, never changed once read.
+     */
+    private static final class Result {
+
+        final String[] mColumns;
+        final Object[][] mRows;
+
+        Result(Cursor cursor) {
+            mColumns = cursor.getColumnNames();
+            mRows = new Object[cursor.getCount()][];
+
+            cursor.moveToPosition(-1);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                Object[] row = new Object[mColumns.length];
+                for (int column = 0; column < row.length; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_NULL:
+                            row[column] = null;
+                            break;
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[column] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[column] = cursor.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            row[column] = cursor.getBlob(column);
+                            break;
+                        default:
+                            row[column] = cursor.getString(column);
+                            break;
+                    }
+                }
+                mRows[i] = row;
+            }
+        }
+
+        MatrixCursor toCursor(MatrixCursor cursor) {
+            for (Object[] row : mRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.msaye7.pets.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+/**
+ * Bounded cache of the most recently read rows of the pets table, by _ID, so single pet queries
+ * can be answered without touching the database. Its size is measured in approximate bytes of
+ * the cached values.
+ */
+final class PetRowCache {
+
+    /** columns of the cached rows, in the order of their values. */
+    static final String[] COLUMNS = new String[]{
+            PetEntry._ID,
+            PetEntry.COLUMN_PET_NAME,
+            PetEntry.COLUMN_PET_BREED,
+            PetEntry.COLUMN_PET_GENDER,
+            PetEntry.COLUMN_PET_WEIGHT,
+            PetEntry.COLUMN_PET_PHOTO
+    };
+
+    /** approximate size of a cached row without its values, in bytes. */
+    private static final int ROW_OVERHEAD_BYTES = 64;
+
+    /** approximate size of a cached value without its characters, in bytes. */
+    private static final int VALUE_OVERHEAD_BYTES = 24;
+
+    private final LruCache<Long, Object[]> mRows;
+
+    /**
+     * Incremented by every invalidation. A row read from the database is only cached if no
+     * invalidation happened since the read started, so a read racing with a write can't cache
+     * the row as it was before the write.
+     */
+    private long mGeneration;
+
+    /**
+     * @param maxSizeBytes approximate maximum size of the cached rows, in bytes.
+     */
+    PetRowCache(int maxSizeBytes) {
+        mRows = new LruCache<Long, Object[]>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Long key, Object[] row) {
+                int size = ROW_OVERHEAD_BYTES;
+                for (Object value : row) {
+                    size += VALUE_OVERHEAD_BYTES;
+                    if (value instanceof String) {
+                        size += 2 * ((String) value).length();
+                    }
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns true if every column of the projection can be served from the cache.
+     */
+    static boolean canServe(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (getColumnPosition(column) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a cursor holding the cached row of the pet with the given projection, or null if
+     * the pet isn't cached.
+     */
+    Cursor get(long id, String[] projection) {
+        Object[] row = mRows.get(id);
+        if (row == null) {
+            return null;
+        }
+        return toCursor(row, projection, true);
+    }
+
+    /**
+     * Returns the cached values of the pet in the order of the {@link #COLUMNS}, or null if the
+     * pet isn't cached.
+     */
+    Object[] getRow(long id) {
+        return mRows.get(id);
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put} for a row read from now on.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Reads the current row of the cursor, which must hold the {@link #COLUMNS}, caches it
+     * unless an invalidation happened since the given generation, and returns it as a cursor
+     * with the given projection.
+     */
+    Cursor put(Cursor cursor, long generation, String[] projection) {
+        return toCursor(put(cursor, generation), projection, false);
+    }
+
+    /**
+     * Reads the current row of the cursor like {@link #put(Cursor, long, String[])} and returns
+     * its values in the order of the {@link #COLUMNS}.
+     */
+    Object[] put(Cursor cursor, long generation) {
+        Object[] row = new Object[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            int column = cursor.getColumnIndexOrThrow(COLUMNS[i]);
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    row[i] = null;
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(column);
+                    break;
+                default:
+                    row[i] = cursor.getString(column);
+                    break;
+            }
+        }
+
+        long id = (Long) row[0];
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mRows.put(id, row);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Drops the cached row of the pet with the given _ID.
+     */
+    synchronized void invalidate(long id) {
+        mGeneration++;
+        mRows.remove(id);
+    }
+
+    /**
+     * Drops all the cached rows.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mRows.evictAll();
+    }
+
+    int hitCount() {
+        return mRows.hitCount();
+    }
+
+    int missCount() {
+        return mRows.missCount();
+    }
+
+    int evictionCount() {
+        return mRows.evictionCount();
+    }
+
+    int size() {
+        return mRows.size();
+    }
+
+    int maxSize() {
+        return mRows.maxSize();
+    }
+
+    private static Cursor toCursor(Object[] row, String[] projection, boolean cached) {
+        if (projection == null) {
+            projection = COLUMNS;
+        }
+
+        MatrixCursor cursor = cached ? new CachedCursor(projection, 1) : new MatrixCursor(projection, 1);
+        cursor.addRow(project(row, projection));
+        return cursor;
+    }
+
+    /**
+     * Returns the values of the row, in the order of the {@link #COLUMNS}, for the columns of
+     * the projection, which must be served by the cache.
+     */
+    static Object[] project(Object[] row, String[] projection) {
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            values[i] = row[getColumnPosition(projection[i])];
+        }
+        return values;
+    }
+
+    private static int getColumnPosition(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Cursor of rows served from this cache or from {@link PetQueryCache}, so callers can tell
+     * they weren't read from the database.
+     */
+    static final class CachedCursor extends MatrixCursor {
+
+        CachedCursor(String[] columnNames, int initialCapacity) {
+            super(columnNames, initialCapacity);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.msaye7.pets.data;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The database of one shelter, with everything {@link PetProvider} keeps for it: its caches,
+ * compiled statements, breed _IDs, photos and change notifications. Each shelter has its own
+ * database file, so the queries, locks, checkpoints and imports of a shelter never wait for
+ * another one, and the writes of a shelter only drop the caches of that shelter.
+ */
+final class PetShard {
+
+    // LOG_TAG of the class.
+    private static final String LOG_TAG = PetShard.class.getSimpleName();
+
+    /** runs the backfills of all the shelters, one shelter after the other. */
+    private static final ExecutorService sBackfillExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "PetBackfills");
+        }
+    });
+
+    /** prefix of the names of the database files of the shelters but the default one. */
+    private static final String SHELTER_DATABASE_PREFIX = "pets-shelter-";
+
+    private static final String DATABASE_SUFFIX = ".db";
+
+    /** directory of the pet photos of the default shelter, in the files directory of the app. */
+    private static final String PHOTO_DIRECTORY = "photos";
+
+    final long mShelterId;
+
+    /** name of the database file of the shelter. */
+    final String mDatabaseName;
+
+    /** the pets uri of the shelter, see {@link PetContract#forShelter}. */
+    final Uri mPetsUri;
+
+    /** replaced when a backup is restored, see {@link #mLock}. */
+    volatile PetDbHelper mDbHelper;
+
+    /**
+     * Held for reading by every operation on the database of the shelter, and for writing by
+     * the restore of a backup, which replaces the database once the running operations ended.
+     */
+    final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    final PetChangeNotifier mChangeNotifier;
+
+    final PetRowCache mRowCache;
+
+    final PetQueryCache mQueryCache;
+
+    final BreedDictionary mBreeds = new BreedDictionary();
+
+    final PetStatements mStatements = new PetStatements();
+
+    final PetPhotos mPhotos;
+
+    /** set once the shard is closed, guarded by {@link #mLock}. */
+    private boolean mClosed;
+
+    /**
+     * @param rowCacheSizeBytes   approximate maximum size of the cached pets, in bytes.
+     * @param queryCacheSizeBytes approximate maximum size of the cached query results, in bytes.
+     */
+    PetShard(Context context, long shelterId, int rowCacheSizeBytes, int queryCacheSizeBytes) {
+        mShelterId = shelterId;
+        mDatabaseName = getDatabaseName(shelterId);
+        mPetsUri = PetContract.forShelter(PetEntry.CONTENT_URI, shelterId);
+        mDbHelper = new PetDbHelper(context, mDatabaseName);
+        mChangeNotifier = new PetChangeNotifier(context.getContentResolver(), mPetsUri);
+        mRowCache = new PetRowCache(rowCacheSizeBytes);
+        mQueryCache = new PetQueryCache(queryCacheSizeBytes);
+
+        String photoDirectory = shelterId == PetContract.DEFAULT_SHELTER_ID ? PHOTO_DIRECTORY
+                : PHOTO_DIRECTORY + "-shelter-" + shelterId;
+        mPhotos = new PetPhotos(new File(context.getFilesDir(), photoDirectory));
+    }
+
+    /**
+     * Returns the name of the database file of the shelter. The default shelter keeps the
+     * database of the app from before there were shelters.
+     */
+    static String getDatabaseName(long shelterId) {
+        return shelterId == PetContract.DEFAULT_SHELTER_ID ? PetDbHelper.DATABASE_NAME
+                : SHELTER_DATABASE_PREFIX + shelterId + DATABASE_SUFFIX;
+    }
+
+    /**
+     * Returns the _ID of the shelter whose database file has the given name, or -1 if it isn't
+     * the database of a shelter other than the default one.
+     */
+    static long getShelterId(String databaseName) {
+        if (!databaseName.startsWith(SHELTER_DATABASE_PREFIX) || !databaseName.endsWith(DATABASE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(databaseName.substring(SHELTER_DATABASE_PREFIX.length(),
+                    databaseName.length() - DATABASE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Opens (and upgrades) the database in the background and finishes the data rewrites left
+     * by upgrades in small batches, so the first queries don't wait for them. The shelter is
+     * locked for each batch, so a restore only waits for the batch that is running. The
+     * backfills of a database restored meanwhile go on on the restored database.
+     */
+    void startBackfills() {
+        sBackfillExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    boolean more = true;
+                    while (more) {
+                        mLock.readLock().lock();
+                        try {
+                            more = !mClosed && mDbHelper.runBackfillBatch();
+                        } finally {
+                            mLock.readLock().unlock();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // the backfills resume where they stopped the next time the shelter is opened.
+                    Log.e(LOG_TAG, "Failed to run the backfills of " + mDatabaseName, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes the database of the shelter once the operations running on it ended. The
+     * backfills stop before their next batch.
+     */
+    void close() {
+        mLock.writeLock().lock();
+        try {
+            mClosed = true;
+            mStatements.close();
+            mDbHelper.close();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true once the shard is closed. The caller holds a lock of the shard, and doesn't
+     * open its database when it is closed.
+     */
+    boolean isClosed() {
+        return mClosed;
+    }
+}
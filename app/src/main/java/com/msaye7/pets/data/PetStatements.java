@@ -0,0 +1,266 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of compiled statements for the single pet writes of {@link PetProvider}: inserts,
+ * updates and deletes by _ID. A statement is compiled once per operation and set of written
+ * columns, then only its parameters are bound for each write, so the SQL isn't built and
+ * compiled again.
+ *
+ * A statement is taken out of the pool while it is used, so two threads never bind the same
+ * statement. Values with columns the pets table doesn't have aren't pooled, they go through
+ * {@link SQLiteDatabase}. A write that fails is logged and changes no row, like
+ * {@link SQLiteDatabase#insert} does.
+ */
+final class PetStatements {
+
+    // LOG_TAG of the class.
+    private static final String LOG_TAG = PetStatements.class.getSimpleName();
+
+    /** the columns that can be written, their position is their bit in the keys. */
+    private static final String[] COLUMNS = {PetEntry.COLUMN_PET_NAME, PetDbHelper.COLUMN_BREED_ID,
+            PetEntry.COLUMN_PET_GENDER, PetEntry.COLUMN_PET_WEIGHT};
+
+    /** number of bits of the columns in the keys, at least the number of {@link #COLUMNS}. */
+    private static final int COLUMN_BITS = 4;
+
+    /** identify the operations, above the bits of the columns in the keys. */
+    private static final int INSERT = 1 << COLUMN_BITS;
+    private static final int UPDATE = 2 << COLUMN_BITS;
+    private static final int DELETE = 3 << COLUMN_BITS;
+
+    static {
+        if (COLUMNS.length > COLUMN_BITS) {
+            throw new AssertionError("The keys have " + COLUMN_BITS + " bits for " + COLUMNS.length + " columns");
+        }
+    }
+
+    /** statements kept per key, about the number of threads writing at the same time. */
+    private static final int MAX_POOLED_PER_KEY = 4;
+
+    /**
+     * The idle statements by key, an operation and the bits of its columns. The keys are small,
+     * below DELETE + INSERT, so they index the array.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<SQLiteStatement>[] mPool = new ArrayDeque[DELETE + INSERT];
+
+    /** the database of the pooled statements. */
+    private SQLiteDatabase mDatabase;
+
+    /**
+     * Inserts a pet, like {@link SQLiteDatabase#insert}.
+     *
+     * @return the _ID of the new pet, or -1 if it couldn't be inserted.
+     */
+    long insert(SQLiteDatabase db, ContentValues values) {
+        int columns = getColumns(values);
+        if (columns <= 0) {
+            return db.insert(PetEntry.TABLE_NAME, null, values);
+        }
+
+        SQLiteStatement statement = acquire(db, INSERT | columns);
+        try {
+            bind(statement, columns, values);
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Failed to insert " + values, e);
+            return -1;
+        } finally {
+            release(db, INSERT | columns, statement);
+        }
+    }
+
+    /**
+     * Updates the pet with the given _ID. Failures are logged like the ones of {@link #insert}.
+     *
+     * @return the number of updated pets, 0 or 1, 0 if it couldn't be updated.
+     */
+    int update(SQLiteDatabase db, long id, ContentValues values) {
+        int columns = getColumns(values);
+        if (columns <= 0) {
+            try {
+                return db.update(PetEntry.TABLE_NAME, values, PetEntry._ID + "=?",
+                        new String[]{String.valueOf(id)});
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Failed to update " + id + " with " + values, e);
+                return 0;
+            }
+        }
+
+        SQLiteStatement statement = acquire(db, UPDATE | columns);
+        try {
+            int index = bind(statement, columns, values);
+            statement.bindLong(index, id);
+            return statement.executeUpdateDelete();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Failed to update " + id + " with " + values, e);
+            return 0;
+        } finally {
+            release(db, UPDATE | columns, statement);
+        }
+    }
+
+    /**
+     * Deletes the pet with the given _ID. Failures are logged like the ones of {@link #insert}.
+     *
+     * @return the number of deleted pets, 0 or 1, 0 if it couldn't be deleted.
+     */
+    int delete(SQLiteDatabase db, long id) {
+        SQLiteStatement statement = acquire(db, DELETE);
+        try {
+            statement.bindLong(1, id);
+            return statement.executeUpdateDelete();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Failed to delete " + id, e);
+            return 0;
+        } finally {
+            release(db, DELETE, statement);
+        }
+    }
+
+    /**
+     * Closes the pooled statements, when their database is closed.
+     */
+    synchronized void close() {
+        for (int i = 0; i < mPool.length; i++) {
+            if (mPool[i] != null) {
+                for (SQLiteStatement statement : mPool[i]) {
+                    statement.close();
+                }
+                mPool[i] = null;
+            }
+        }
+        mDatabase = null;
+    }
+
+    /**
+     * Returns the bits of the columns of the values, 0 if there are none, or -1 if one of them
+     * can't be written.
+     */
+    private static int getColumns(ContentValues values) {
+        int columns = 0;
+        for (String column : values.keySet()) {
+            int bit = getColumnBit(column);
+            if (bit == 0) {
+                return -1;
+            }
+            columns |= bit;
+        }
+        return columns;
+    }
+
+    private static int getColumnBit(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Binds the values of the given columns in the order of {@link #COLUMNS}.
+     *
+     * @return the index of the next parameter.
+     */
+    private static int bind(SQLiteStatement statement, int columns, ContentValues values) {
+        int index = 1;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if ((columns & (1 << i)) != 0) {
+                DatabaseUtils.bindObjectToProgram(statement, index++, values.get(COLUMNS[i]));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Takes an idle statement of the key out of the pool, or compiles a new one.
+     */
+    private SQLiteStatement acquire(SQLiteDatabase db, int key) {
+        synchronized (this) {
+            if (db != mDatabase) {
+                // the database was replaced, its statements can't be used anymore.
+                close();
+                mDatabase = db;
+            }
+            ArrayDeque<SQLiteStatement> idle = mPool[key];
+            if (idle != null && !idle.isEmpty()) {
+                return idle.pop();
+            }
+        }
+        return db.compileStatement(getSql(key));
+    }
+
+    /**
+     * Gives the statement back to the pool, or closes it if the pool of its key is full.
+     */
+    private void release(SQLiteDatabase db, int key, SQLiteStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (db == mDatabase) {
+                ArrayDeque<SQLiteStatement> idle = mPool[key];
+                if (idle == null) {
+                    idle = new ArrayDeque<>(MAX_POOLED_PER_KEY);
+                    mPool[key] = idle;
+                }
+                if (idle.size() < MAX_POOLED_PER_KEY) {
+                    idle.push(statement);
+                    return;
+                }
+            }
+        }
+        statement.close();
+    }
+
+    private static String getSql(int key) {
+        int operation = key & ~(INSERT - 1);
+        int columns = key & (INSERT - 1);
+
+        StringBuilder sql = new StringBuilder();
+        switch (operation) {
+            case INSERT:
+                sql.append("INSERT INTO ").append(PetEntry.TABLE_NAME).append(" (");
+                appendColumns(sql, columns, ", ", "");
+                sql.append(") VALUES (");
+                for (int i = 0; i < Integer.bitCount(columns); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                break;
+            case UPDATE:
+                sql.append("UPDATE ").append(PetEntry.TABLE_NAME).append(" SET ");
+                appendColumns(sql, columns, ", ", " = ?");
+                sql.append(" WHERE ").append(PetEntry._ID).append(" = ?");
+                break;
+            default:
+                sql.append("DELETE FROM ").append(PetEntry.TABLE_NAME).append(" WHERE ")
+                        .append(PetEntry._ID).append(" = ?");
+                break;
+        }
+        return sql.toString();
+    }
+
+    private static void appendColumns(StringBuilder sql, int columns, String separator, String suffix) {
+        boolean first = true;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if ((columns & (1 << i)) != 0) {
+                if (!first) {
+                    sql.append(separator);
+                }
+                sql.append(COLUMNS[i]).append(suffix);
+                first = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import com.msaye7.pets.data.PetContract.ChangeEntry;
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sends the changes of the pets to a sync server, reading only the changes the server doesn't
+ * have yet from the change log, see {@link ChangeEntry}.
+ *
+ * The server stores the _ID of the log and the sequence of the last change it applied, and
+ * applies each page of changes at once, so a sync interrupted by an error resumes after the
+ * last applied page. When the log was replaced by a restore, or compacted past deletes the
+ * server didn't get, the server is reset and every pet is sent again.
+ */
+public final class PetSyncClient {
+
+    /** number of changes read and sent at once. */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * A page of the change log.
+     */
+    public static final class ChangePage {
+
+        private final String mLogId;
+        private final boolean mResetRequired;
+        private final List<PetChange> mChanges;
+
+        /**
+         * @param resetRequired true if deletes after the read sequence were compacted away.
+         */
+        public ChangePage(String logId, boolean resetRequired, List<PetChange> changes) {
+            mLogId = logId;
+            mResetRequired = resetRequired;
+            mChanges = Collections.unmodifiableList(changes);
+        }
+
+        public String getLogId() {
+            return mLogId;
+        }
+
+        public boolean isResetRequired() {
+            return mResetRequired;
+        }
+
+        /**
+         * Returns the changes in the order of their sequence.
+         */
+        public List<PetChange> getChanges() {
+            return mChanges;
+        }
+    }
+
+    /**
+     * Reads the change log, see {@link #fromProvider}.
+     */
+    public interface ChangeFeed {
+
+        /**
+         * Returns at most limit changes whose sequence is greater than the given one.
+         */
+        ChangePage getChangesAfter(long sequence, int limit) throws IOException;
+    }
+
+    /**
+     * The server the pets are synced to.
+     */
+    public interface SyncServer {
+
+        /**
+         * Returns the _ID of the log the server is synced with, null if it was never synced.
+         */
+        @Nullable
+        String getLogId() throws IOException;
+
+        /**
+         * Returns the sequence of the last change the server applied.
+         */
+        long getSequence() throws IOException;
+
+        /**
+         * Deletes all the pets of the server, which then syncs with the given log from its
+         * start.
+         */
+        void reset(String logId) throws IOException;
+
+        /**
+         * Applies the changes at once and stores the sequence of the last one. Changes whose
+         * sequence isn't after the stored one are ignored, so a page sent again after a lost
+         * response isn't applied twice. Inserts and updates both replace the whole pet.
+         */
+        void apply(String logId, List<PetChange> changes) throws IOException;
+    }
+
+    private final ChangeFeed mFeed;
+    private final SyncServer mServer;
+    private final int mPageSize;
+
+    public PetSyncClient(ChangeFeed feed, SyncServer server) {
+        this(feed, server, DEFAULT_PAGE_SIZE);
+    }
+
+    public PetSyncClient(ChangeFeed feed, SyncServer server, int pageSize) {
+        if (pageSize <= 0 || pageSize > ChangeEntry.MAX_LIMIT) {
+            throw new IllegalArgumentException("Invalid page size " + pageSize);
+        }
+        mFeed = feed;
+        mServer = server;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Sends the changes the server doesn't have yet, page by page. Call it off the main thread.
+     *
+     * @return the number of changes sent.
+     */
+    public int sync() throws IOException {
+        String logId = mServer.getLogId();
+        long sequence = logId == null ? 0 : mServer.getSequence();
+
+        int sent = 0;
+        while (true) {
+            ChangePage page = mFeed.getChangesAfter(sequence, mPageSize);
+
+            // the deltas can't bring the server up to date, it starts over from the whole log.
+            if (!page.getLogId().equals(logId) || (page.isResetRequired() && sequence > 0)) {
+                boolean readFromStart = sequence == 0;
+                logId = page.getLogId();
+                sequence = 0;
+                mServer.reset(logId);
+                if (!readFromStart) {
+                    continue;
+                }
+            }
+
+            List<PetChange> changes = page.getChanges();
+            if (changes.isEmpty()) {
+                return sent;
+            }
+            mServer.apply(logId, changes);
+            sent += changes.size();
+            sequence = changes.get(changes.size() - 1).getSequence();
+
+            if (changes.size() < mPageSize) {
+                return sent;
+            }
+        }
+    }
+
+    /**
+     * Returns a feed reading the change log of the given shelter through the provider.
+     */
+    public static ChangeFeed fromProvider(final ContentResolver resolver, final long shelterId) {
+        return new ChangeFeed() {
+            @Override
+            public ChangePage getChangesAfter(long sequence, int limit) throws IOException {
+                Uri uri = PetContract.forShelter(ChangeEntry.buildChangesUri(sequence, limit), shelterId);
+                Cursor cursor = resolver.query(uri, null, null, null, null);
+                if (cursor == null) {
+                    throw new IOException("Cannot read " + uri);
+                }
+                try {
+                    Bundle extras = cursor.getExtras();
+                    String logId = extras.getString(ChangeEntry.EXTRA_LOG_ID);
+                    if (logId == null) {
+                        throw new IOException("No change log in " + uri);
+                    }
+                    return new ChangePage(logId, extras.getBoolean(ChangeEntry.EXTRA_RESET_REQUIRED),
+                            readChanges(cursor));
+                } finally {
+                    cursor.close();
+                }
+            }
+        };
+    }
+
+    private static List<PetChange> readChanges(Cursor cursor) {
+        int sequenceColumn = cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_SEQUENCE);
+        int petIdColumn = cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_PET_ID);
+        int operationColumn = cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_OPERATION);
+        int nameColumn = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME);
+        int breedColumn = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_BREED);
+        int genderColumn = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_GENDER);
+        int weightColumn = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_WEIGHT);
+
+        List<PetChange> changes = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            changes.add(new PetChange(cursor.getLong(sequenceColumn), cursor.getLong(petIdColumn),
+                    cursor.getString(operationColumn), cursor.getString(nameColumn),
+                    cursor.getString(breedColumn), cursor.getInt(genderColumn), cursor.getInt(weightColumn)));
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,133 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+import android.text.TextUtils;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+/**
+ * Validates the values written to the pets table. Every field is checked in a single pass and
+ * all the failures are reported together as FAILURE_ flags. Fields with a default value (breed,
+ * gender and weight) are corrected in place, only an empty name rejects the values.
+ *
+ * Only the fields present in the values are checked, so the same validation serves inserts and
+ * partial updates.
+ */
+public final class PetValidator {
+
+    /** identify the failure flags. */
+    public static final int FAILURE_NAME = 1;
+    public static final int FAILURE_BREED = 1 << 1;
+    public static final int FAILURE_GENDER = 1 << 2;
+    public static final int FAILURE_WEIGHT = 1 << 3;
+
+    /** weight given to pets whose weight is missing, invalid or negative. */
+    private static final int DEFAULT_WEIGHT = 0;
+
+    private PetValidator() { }
+
+    /**
+     * Validates the values, replacing the invalid fields that have a default value.
+     *
+     * @return the FAILURE_ flags of all the invalid fields, 0 if all of them are valid.
+     */
+    public static int validate(ContentValues values) {
+        int failures = 0;
+
+        if (values.containsKey(PetEntry.COLUMN_PET_NAME)
+                && isBlank(values.get(PetEntry.COLUMN_PET_NAME))) {
+            failures |= FAILURE_NAME;
+        }
+
+        if (values.containsKey(PetEntry.COLUMN_PET_BREED)
+                && isBlank(values.get(PetEntry.COLUMN_PET_BREED))) {
+            failures |= FAILURE_BREED;
+            values.put(PetEntry.COLUMN_PET_BREED, PetEntry.BREED_UNKNOWN);
+        }
+
+        if (values.containsKey(PetEntry.COLUMN_PET_GENDER)) {
+            Object gender = values.get(PetEntry.COLUMN_PET_GENDER);
+            if (!(gender instanceof Number) || !PetEntry.isValidGender(((Number) gender).intValue())) {
+                // genders given as text are stored as numbers, or replaced if they aren't one.
+                int parsed = parseInt(gender, -1);
+                if (!PetEntry.isValidGender(parsed)) {
+                    failures |= FAILURE_GENDER;
+                    parsed = PetEntry.GENDER_UNKNOWN;
+                }
+                values.put(PetEntry.COLUMN_PET_GENDER, parsed);
+            }
+        }
+
+        if (values.containsKey(PetEntry.COLUMN_PET_WEIGHT)) {
+            Object weight = values.get(PetEntry.COLUMN_PET_WEIGHT);
+            if (!(weight instanceof Number) || ((Number) weight).intValue() < 0) {
+                // weights given as text are stored as numbers, or replaced if they aren't one.
+                int parsed = parseInt(weight, -1);
+                if (parsed < 0) {
+                    failures |= FAILURE_WEIGHT;
+                    parsed = DEFAULT_WEIGHT;
+                }
+                values.put(PetEntry.COLUMN_PET_WEIGHT, parsed);
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Returns true if the values with the given failures must not be written.
+     */
+    public static boolean isRejected(int failures) {
+        return (failures & FAILURE_NAME) != 0;
+    }
+
+    /**
+     * Returns a readable list of the fields named by the failure flags, for logs and reports.
+     */
+    public static String describe(int failures) {
+        StringBuilder description = new StringBuilder();
+        appendFailure(description, failures, FAILURE_NAME, "empty name");
+        appendFailure(description, failures, FAILURE_BREED, "empty breed");
+        appendFailure(description, failures, FAILURE_GENDER, "invalid gender");
+        appendFailure(description, failures, FAILURE_WEIGHT, "invalid weight");
+        return description.toString();
+    }
+
+    private static void appendFailure(StringBuilder description, int failures, int failure, String text) {
+        if ((failures & failure) == 0) {
+            return;
+        }
+        if (description.length() > 0) {
+            description.append(", ");
+        }
+        description.append(text);
+    }
+
+    /**
+     * Returns true if the value is null or text made of white space only, without copying it.
+     */
+    private static boolean isBlank(Object value) {
+        if (value == null) {
+            return true;
+        }
+        return value instanceof CharSequence && TextUtils.getTrimmedLength((CharSequence) value) == 0;
+    }
+
+    /**
+     * Parses a number given as a Number or as text, returning the fallback when it isn't one.
+     * Blank text is checked first, so the common empty field doesn't pay for an exception.
+     */
+    private static int parseInt(Object value, int fallback) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (isBlank(value)) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * App-wide queue running the writes of the UI on a background thread, so saving a pet never
+ * waits for the disk on the main thread.
+ *
+ * Writes wait a short window before they run. A write of a pet that is still waiting replaces
+ * the waiting one, so repeated saves of the same pet only write its last values, but nothing
+ * replaces a waiting deletion. Writes run in the order they were queued, and their results are
+ * delivered on the main thread. {@link #flush()} runs the waiting writes right away, and is
+ * called when the UI is paused.
+ */
+public final class PetWriteQueue {
+
+    /**
+     * Receives the result of a queued write, on the main thread.
+     */
+    public interface Callback {
+
+        /**
+         * @param uri the uri of the written pet, for inserts the uri of the new pet, for photos
+         *            the photo uri of the pet.
+         */
+        void onWriteSucceeded(Uri uri);
+
+        /**
+         * @param uri   the uri of the pet that wasn't written, the pets uri for inserts.
+         * @param error the error of the write, or null if the provider rejected the values or
+         *              the pet doesn't exist, or no longer will once its deletion runs.
+         */
+        void onWriteFailed(Uri uri, @Nullable Exception error);
+    }
+
+    // LOG_TAG of the class.
+    private static final String LOG_TAG = PetWriteQueue.class.getSimpleName();
+
+    /** how long a write waits for a newer write of the same pet, in milliseconds. */
+    private static final long COALESCE_WINDOW_MS = 250;
+
+    /** identify the writes copying a photo, next to the operations of {@link PetEntry}. */
+    private static final String OPERATION_PHOTO = "photo";
+
+    /** size of the buffer copying the photos, in bytes. */
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private static PetWriteQueue sInstance;
+
+    private final ContentResolver mResolver;
+
+    /** runs the writes, one at a time. */
+    private final Handler mWriteHandler;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object mLock = new Object();
+
+    /**
+     * The writes that didn't start yet in queue order, by the uri of the pet they write. Inserts
+     * have no uri yet and are never replaced, so each one has its own key.
+     */
+    private final Map<Object, Write> mPendingWrites = new LinkedHashMap<>();
+
+    private boolean mDrainScheduled;
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * The app shares the queue of {@link #getInstance}, the tests create their own.
+     */
+    PetWriteQueue(ContentResolver resolver) {
+        mResolver = resolver;
+
+        HandlerThread thread = new HandlerThread("PetWriteQueue");
+        thread.start();
+        mWriteHandler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized PetWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PetWriteQueue(context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues the insertion of a new pet.
+     */
+    public void insert(ContentValues values, @Nullable Callback callback) {
+        enqueue(new Object(), new Write(PetEntry.OPERATION_INSERT, PetEntry.CONTENT_URI, values, null, callback));
+    }
+
+    /**
+     * Queues the update of the pet with the given uri, replacing a waiting update of the pet.
+     * Fails if the deletion of the pet is waiting.
+     */
+    public void update(Uri uri, ContentValues values, @Nullable Callback callback) {
+        enqueue(uri, new Write(PetEntry.OPERATION_UPDATE, uri, values, null, callback));
+    }
+
+    /**
+     * Queues the deletion of the pet with the given uri, replacing a waiting update of the pet.
+     */
+    public void delete(Uri uri, @Nullable Callback callback) {
+        enqueue(uri, new Write(PetEntry.OPERATION_DELETE, uri, null, null, callback));
+    }
+
+    /**
+     * Queues the copy of the image at the source uri as the photo of the pet with the given
+     * uri, replacing a waiting photo of the pet. The callback gets the photo uri of the pet, in
+     * the shelter of the pet uri.
+     */
+    public void writePhoto(Uri uri, Uri source, @Nullable Callback callback) {
+        Uri photoUri = Uri.withAppendedPath(uri, PetContract.PATH_PHOTO);
+        enqueue(photoUri, new Write(OPERATION_PHOTO, photoUri, null, source, callback));
+    }
+
+    /**
+     * Runs the waiting writes without waiting for the end of their window. Doesn't block, wait
+     * for the returned future to know when the writes queued so far are done. Their callbacks
+     * may still be on their way to the main thread then.
+     */
+    public Future<Void> flush() {
+        FutureTask<Void> done = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                // the writes before it are done.
+            }
+        }, null);
+        synchronized (mLock) {
+            if (!mPendingWrites.isEmpty()) {
+                mWriteHandler.removeCallbacks(mDrainRunnable);
+                mWriteHandler.post(mDrainRunnable);
+                mDrainScheduled = true;
+            }
+            // runs after the drain, or after the write running now if nothing is waiting.
+            mWriteHandler.post(done);
+        }
+        return done;
+    }
+
+    private void enqueue(Object key, Write write) {
+        synchronized (mLock) {
+            Write waiting = mPendingWrites.get(key);
+            if (waiting != null) {
+                waiting.replaceWith(write);
+            } else {
+                mPendingWrites.put(key, write);
+            }
+
+            if (!mDrainScheduled) {
+                mWriteHandler.postDelayed(mDrainRunnable, COALESCE_WINDOW_MS);
+                mDrainScheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Runs the waiting writes, on the write thread.
+     */
+    private void drain() {
+        List<Write> writes;
+        synchronized (mLock) {
+            writes = new ArrayList<>(mPendingWrites.values());
+            mPendingWrites.clear();
+            mDrainScheduled = false;
+        }
+
+        for (Write write : writes) {
+            run(write);
+        }
+    }
+
+    private void run(final Write write) {
+        Uri resultUri = write.mUri;
+        boolean succeeded;
+        Exception error = null;
+        try {
+            switch (write.mOperation) {
+                case PetEntry.OPERATION_INSERT:
+                    Uri inserted = mResolver.insert(write.mUri, write.mValues);
+                    succeeded = inserted != null;
+                    if (succeeded) {
+                        resultUri = inserted;
+                    }
+                    break;
+                case PetEntry.OPERATION_UPDATE:
+                    int updated = mResolver.update(write.mUri, write.mValues, null, null);
+                    succeeded = updated != PetEntry.NOT_VALID_DATA && updated > 0;
+                    break;
+                case OPERATION_PHOTO:
+                    copyPhoto(write.mSource, write.mUri);
+                    succeeded = true;
+                    break;
+                default:
+                    succeeded = mResolver.delete(write.mUri, null, null) > 0;
+                    break;
+            }
+        } catch (RuntimeException | IOException e) {
+            Log.e(LOG_TAG, "Failed to " + write.mOperation + " " + write.mUri, e);
+            succeeded = false;
+            error = e;
+        }
+
+        final Uri uri = resultUri;
+        final boolean result = succeeded;
+        final Exception exception = error;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback callback : write.mCallbacks) {
+                    if (result) {
+                        callback.onWriteSucceeded(uri);
+                    } else {
+                        callback.onWriteFailed(uri, exception);
+                    }
+                }
+                for (Callback callback : write.mDroppedCallbacks) {
+                    callback.onWriteFailed(write.mUri, null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the image at the source uri into the photo at the given uri. A failed copy closes
+     * the photo with an error, so the provider drops it instead of showing a partial photo.
+     */
+    private void copyPhoto(Uri source, Uri photoUri) throws IOException {
+        ParcelFileDescriptor photo = mResolver.openFileDescriptor(photoUri, "w");
+        if (photo == null) {
+            throw new FileNotFoundException("Cannot open " + photoUri);
+        }
+
+        try (InputStream in = mResolver.openInputStream(source)) {
+            if (in == null) {
+                throw new FileNotFoundException("Cannot open " + source);
+            }
+            // the stream doesn't own the descriptor, which is closed below.
+            OutputStream out = new FileOutputStream(photo.getFileDescriptor());
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            photo.closeWithError(e.toString());
+            throw e;
+        }
+        photo.close();
+    }
+
+    /**
+     * A queued write. Only changed under the lock of the queue until it starts.
+     */
+    private static final class Write {
+
+        String mOperation;
+        final Uri mUri;
+        ContentValues mValues;
+
+        /** the image copied by a photo write, null for the other writes. */
+        Uri mSource;
+
+        /** the callbacks of this write and of the writes it replaced. */
+        final List<Callback> mCallbacks = new ArrayList<>(1);
+
+        /** the callbacks of the updates queued after this deletion, which fail. */
+        final List<Callback> mDroppedCallbacks = new ArrayList<>(0);
+
+        Write(String operation, Uri uri, ContentValues values, Uri source, Callback callback) {
+            mOperation = operation;
+            mUri = uri;
+            mValues = values == null ? null : new ContentValues(values);
+            mSource = source;
+            if (callback != null) {
+                mCallbacks.add(callback);
+            }
+        }
+
+        /**
+         * Makes this write write the newer one instead. An update replacing an update keeps
+         * the fields only the older one changed. A deletion is kept, the updates after it are
+         * dropped.
+         */
+        void replaceWith(Write newer) {
+            if (PetEntry.OPERATION_DELETE.equals(mOperation)) {
+                if (!PetEntry.OPERATION_DELETE.equals(newer.mOperation)) {
+                    mDroppedCallbacks.addAll(newer.mCallbacks);
+                    return;
+                }
+            } else if (PetEntry.OPERATION_UPDATE.equals(mOperation)
+                    && PetEntry.OPERATION_UPDATE.equals(newer.mOperation)) {
+                mValues.putAll(newer.mValues);
+            } else {
+                mValues = newer.mValues;
+            }
+            mSource = newer.mSource;
+            mOperation = newer.mOperation;
+            mCallbacks.addAll(newer.mCallbacks);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.msaye7.pets.data;
+
+/**
+ * Receives the progress of a long running data operation, such as an import or an export.
+ */
+public interface ProgressListener {
+
+    /**
+     * Called after every chunk of rows.
+     *
+     * @param processedRows number of rows processed so far, including the rejected ones.
+     * @param rejectedRows  number of rows rejected so far.
+     */
+    void onProgress(int processedRows, int rejectedRows);
+}
@@ -0,0 +1,81 @@
+package com.msaye7.pets.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the parsing of the CSV streams read by {@link PetImporter}.
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void readRecord_splitsFieldsOnCommas() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("name,breed,gender,weight\nTommy,,1,4\n"));
+
+        assertArrayEquals(new String[]{"name", "breed", "gender", "weight"}, csv.readRecord());
+        assertArrayEquals(new String[]{"Tommy", "", "1", "4"}, csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void readRecord_keepsCommasQuotesAndLineBreaksOfQuotedFields() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader(
+                "\"Tommy, the cat\",\"Persian \"\"blue\"\"\",\"line 1\nline 2\",4"));
+
+        assertArrayEquals(new String[]{"Tommy, the cat", "Persian \"blue\"", "line 1\nline 2", "4"},
+                csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void readRecord_endsRecordsOnCrlfAndLoneCr() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,b\r\nc,d\re,f"));
+
+        assertArrayEquals(new String[]{"a", "b"}, csv.readRecord());
+        assertArrayEquals(new String[]{"c", "d"}, csv.readRecord());
+        assertArrayEquals(new String[]{"e", "f"}, csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void readRecord_skipsEmptyLines() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("\n\r\na\n\n\nb\n"));
+
+        assertArrayEquals(new String[]{"a"}, csv.readRecord());
+        assertArrayEquals(new String[]{"b"}, csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void getRecordLineNumber_countsTheLinesOfQuotedFieldsAndEveryLineEnding() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a\r\n\"b\nb\"\n\nc\rd\r\ne\n"));
+
+        String[] lines = {"a", "b\nb", "c", "d", "e"};
+        int[] lineNumbers = {1, 2, 5, 6, 7};
+        for (int i = 0; i < lines.length; i++) {
+            assertArrayEquals(new String[]{lines[i]}, csv.readRecord());
+            assertEquals(lineNumbers[i], csv.getRecordLineNumber());
+        }
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void readRecord_failsOnUnterminatedQuotedField() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a\n\"b,c\n"));
+        csv.readRecord();
+
+        try {
+            csv.readRecord();
+            fail("the quoted field isn't terminated");
+        } catch (IOException e) {
+            assertEquals("Unterminated quoted field on line 2", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.msaye7.pets.data;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pets and change log kept in memory the way the provider keeps them in the database: every
+ * write logs a change, the changes are read with the current values of their pet, and the
+ * compaction keeps the last change of each pet and drops the deletes. It drives the state
+ * machine of the client, the SQL of the log itself is checked by {@link PetDbHelperTest} and
+ * {@link PetProviderTest}.
+ */
+final class InMemoryChangeLog implements PetSyncClient.ChangeFeed {
+
+    private static final class Change {
+        final long mSequence;
+        final long mPetId;
+        final String mOperation;
+
+        Change(long sequence, long petId, String operation) {
+            mSequence = sequence;
+            mPetId = petId;
+            mOperation = operation;
+        }
+    }
+
+    private final Map<Long, PetChange> mPets = new TreeMap<>();
+    private final List<Change> mChanges = new ArrayList<>();
+    private String mLogId = "log-1";
+    private int mLogCount = 1;
+    private long mLastSequence;
+    private long mLastPetId;
+    private long mCompactedSequence;
+    private int mReadCount;
+
+    long insert(String name, String breed, int gender, int weight) {
+        long id = ++mLastPetId;
+        write(id, PetEntry.OPERATION_INSERT, name, breed, gender, weight);
+        return id;
+    }
+
+    void update(long id, String name, String breed, int gender, int weight) {
+        write(id, PetEntry.OPERATION_UPDATE, name, breed, gender, weight);
+    }
+
+    void delete(long id) {
+        mPets.remove(id);
+        mChanges.add(new Change(++mLastSequence, id, PetEntry.OPERATION_DELETE));
+    }
+
+    private void write(long id, String operation, String name, String breed, int gender, int weight) {
+        mPets.put(id, new PetChange(0, id, operation, name, breed, gender, weight));
+        mChanges.add(new Change(++mLastSequence, id, operation));
+    }
+
+    /**
+     * Keeps only the last change of each pet, and drops the deletes too if dropDeletes is true,
+     * like {@link PetDbHelper#compactChanges} with a retention of 0.
+     */
+    void compact(boolean dropDeletes) {
+        Map<Long, Long> lastSequences = new TreeMap<>();
+        for (Change change : mChanges) {
+            lastSequences.put(change.mPetId, change.mSequence);
+        }
+        for (Iterator<Change> changes = mChanges.iterator(); changes.hasNext(); ) {
+            Change change = changes.next();
+            boolean expiredDelete = dropDeletes && PetEntry.OPERATION_DELETE.equals(change.mOperation);
+            if (expiredDelete) {
+                mCompactedSequence = Math.max(mCompactedSequence, change.mSequence);
+            }
+            if (expiredDelete || lastSequences.get(change.mPetId) != change.mSequence) {
+                changes.remove();
+            }
+        }
+    }
+
+    /**
+     * Replaces the log like a restore of a backup: a new log holding an insert per pet, whose
+     * sequences start over.
+     */
+    void restore() {
+        mLogId = "log-" + ++mLogCount;
+        mChanges.clear();
+        mLastSequence = 0;
+        mCompactedSequence = 0;
+        for (long id : mPets.keySet()) {
+            mChanges.add(new Change(++mLastSequence, id, PetEntry.OPERATION_INSERT));
+        }
+    }
+
+    @Override
+    public PetSyncClient.ChangePage getChangesAfter(long sequence, int limit) {
+        mReadCount++;
+        List<PetChange> page = new ArrayList<>();
+        for (Change change : mChanges) {
+            if (change.mSequence > sequence && page.size() < limit) {
+                PetChange pet = mPets.get(change.mPetId);
+                page.add(pet == null
+                        ? new PetChange(change.mSequence, change.mPetId, change.mOperation, null, null, 0, 0)
+                        : new PetChange(change.mSequence, change.mPetId, change.mOperation, pet.getName(),
+                        pet.getBreed(), pet.getGender(), pet.getWeight()));
+            }
+        }
+        return new PetSyncClient.ChangePage(mLogId, sequence > 0 && sequence < mCompactedSequence, page);
+    }
+
+    /**
+     * Returns the current pets by _ID, each described by {@link #describe}.
+     */
+    Map<Long, String> getPets() {
+        Map<Long, String> pets = new TreeMap<>();
+        for (PetChange pet : mPets.values()) {
+            pets.put(pet.getPetId(), describe(pet.getName(), pet.getBreed(), pet.getGender(), pet.getWeight()));
+        }
+        return pets;
+    }
+
+    int getReadCount() {
+        return mReadCount;
+    }
+
+    static String describe(String name, String breed, int gender, int weight) {
+        return name + "|" + breed + "|" + gender + "|" + weight;
+    }
+}
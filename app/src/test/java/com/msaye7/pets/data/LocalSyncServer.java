@@ -0,0 +1,90 @@
+package com.msaye7.pets.data;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stand-in for the central sync server, keeping the synced pets in memory so the delta
+ * protocol of {@link PetSyncClient} can be checked without a network. It can fail the next
+ * page it receives, like a lost connection.
+ */
+final class LocalSyncServer implements PetSyncClient.SyncServer {
+
+    private final Map<Long, String> mPets = new TreeMap<>();
+    private String mLogId;
+    private long mSequence;
+
+    private int mResetCount;
+    private int mAppliedCount;
+    private boolean mFailNextApply;
+
+    @Override
+    public String getLogId() {
+        return mLogId;
+    }
+
+    @Override
+    public long getSequence() {
+        return mSequence;
+    }
+
+    @Override
+    public void reset(String logId) {
+        mPets.clear();
+        mLogId = logId;
+        mSequence = 0;
+        mResetCount++;
+    }
+
+    @Override
+    public void apply(String logId, List<PetChange> changes) throws IOException {
+        if (mFailNextApply) {
+            mFailNextApply = false;
+            throw new IOException("Connection lost");
+        }
+        if (!logId.equals(mLogId)) {
+            throw new IOException("Changes of log " + logId + " sent to log " + mLogId);
+        }
+
+        for (PetChange change : changes) {
+            if (change.getSequence() <= mSequence) {
+                continue;
+            }
+            if (change.isDelete()) {
+                mPets.remove(change.getPetId());
+            } else {
+                mPets.put(change.getPetId(), InMemoryChangeLog.describe(change.getName(), change.getBreed(),
+                        change.getGender(), change.getWeight()));
+            }
+            mSequence = change.getSequence();
+            mAppliedCount++;
+        }
+    }
+
+    /**
+     * Fails the next page of changes sent, without applying any of them.
+     */
+    void failNextApply() {
+        mFailNextApply = true;
+    }
+
+    /**
+     * Returns the synced pets by _ID, see {@link InMemoryChangeLog#getPets()}.
+     */
+    Map<Long, String> getPets() {
+        return mPets;
+    }
+
+    int getResetCount() {
+        return mResetCount;
+    }
+
+    /**
+     * Returns the number of changes applied, without the ones sent again.
+     */
+    int getAppliedCount() {
+        return mAppliedCount;
+    }
+}
@@ -0,0 +1,318 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.msaye7.pets.data.PetContract.ChangeEntry;
+import com.msaye7.pets.data.PetContract.PetEntry;
+import com.msaye7.pets.data.PetContract.StatsEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the SQL of {@link PetDbHelper} against a real database.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetDbHelperTest {
+
+    private static final String DATABASE_NAME = "pets-test.db";
+
+    private Context mContext;
+    private PetDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+    private File mSnapshot;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mDbHelper = new PetDbHelper(mContext, DATABASE_NAME);
+        mDatabase = mDbHelper.getWritableDatabase();
+        mSnapshot = new File(mContext.getCacheDir(), "snapshot.db");
+        SQLiteDatabase.deleteDatabase(mSnapshot);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+        SQLiteDatabase.deleteDatabase(mSnapshot);
+    }
+
+    @Test
+    public void writeSnapshot_copiesThePetsAndRebuildsWhatDerivesFromThem() {
+        insertPet("Tommy", 4);
+        long garfield = insertPet("Garfield", 14);
+        deletePet(garfield);
+
+        mDbHelper.writeSnapshot(mSnapshot);
+
+        SQLiteDatabase snapshot = openSnapshot();
+        try {
+            assertEquals(1, DatabaseUtils.queryNumEntries(snapshot, PetEntry.TABLE_NAME));
+            assertEquals(1, DatabaseUtils.longForQuery(snapshot,
+                    "SELECT " + StatsEntry.COLUMN_COUNT + " FROM " + StatsEntry.TOTALS_TABLE_NAME, null));
+            assertEquals(1, DatabaseUtils.queryNumEntries(snapshot, PetDbHelper.CHANGES_TABLE_NAME,
+                    ChangeEntry.COLUMN_OPERATION + "=?", new String[]{PetEntry.OPERATION_INSERT}));
+            assertEquals(PetDbHelper.DATABASE_VERSION, snapshot.getVersion());
+
+            // the _ID of the deleted pet isn't given again.
+            assertEquals(garfield, DatabaseUtils.longForQuery(snapshot,
+                    "SELECT seq FROM sqlite_sequence WHERE name = ?", new String[]{PetEntry.TABLE_NAME}));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void writeSnapshot_letsTheAppWriteDuringTheCopy() {
+        insertPet("Tommy", 4);
+        insertPet("Garfield", 14);
+
+        // the write would wait for the busy timeout and fail if the copy locked the database.
+        mDbHelper.writeSnapshot(mSnapshot, new Runnable() {
+            @Override
+            public void run() {
+                insertPet("Binx", 3);
+            }
+        });
+
+        assertEquals(3, DatabaseUtils.queryNumEntries(mDatabase, PetEntry.TABLE_NAME));
+        SQLiteDatabase snapshot = openSnapshot();
+        try {
+            // the copy reads the database as it was when the copy started.
+            assertEquals(2, DatabaseUtils.queryNumEntries(snapshot, PetEntry.TABLE_NAME));
+            assertEquals(0, DatabaseUtils.queryNumEntries(snapshot, PetEntry.TABLE_NAME,
+                    PetEntry.COLUMN_PET_NAME + "=?", new String[]{"Binx"}));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void triggers_keepTheStatsSearchAndChangeLogInStepWithThePets() {
+        long tommy = insertPet("Tommy", 4);
+        long garfield = insertPet("Garfield", 14);
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, "Binx");
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
+        mDatabase.update(PetEntry.TABLE_NAME, values, PetEntry._ID + "=?", new String[]{String.valueOf(tommy)});
+        deletePet(garfield);
+
+        assertEquals(1, DatabaseUtils.longForQuery(mDatabase,
+                "SELECT " + StatsEntry.COLUMN_COUNT + " FROM " + StatsEntry.TOTALS_TABLE_NAME, null));
+        assertEquals(4, DatabaseUtils.longForQuery(mDatabase,
+                "SELECT " + StatsEntry.COLUMN_TOTAL_WEIGHT + " FROM " + StatsEntry.TOTALS_TABLE_NAME, null));
+        // the counts dropping to 0 are deleted.
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, StatsEntry.GENDER_TABLE_NAME));
+        assertEquals(1, DatabaseUtils.longForQuery(mDatabase, "SELECT " + StatsEntry.COLUMN_COUNT + " FROM "
+                + StatsEntry.GENDER_TABLE_NAME + " WHERE " + StatsEntry.COLUMN_GENDER + " = ?",
+                new String[]{String.valueOf(PetEntry.GENDER_MALE)}));
+
+        assertEquals(Arrays.asList(tommy), search("binx"));
+        assertEquals(Arrays.<Long>asList(), search("tommy"));
+        assertEquals(Arrays.<Long>asList(), search("garfield"));
+
+        assertEquals(Arrays.asList(tommy + " insert", garfield + " insert", tommy + " update", garfield + " delete"),
+                readChanges());
+    }
+
+    @Test
+    public void compactChanges_keepsTheLastChangeOfEachPetAndDropsExpiredDeletes() {
+        long tommy = insertPet("Tommy", 4);
+        long garfield = insertPet("Garfield", 14);
+        updateWeight(tommy, 5);
+        deletePet(garfield);
+        long binx = insertPet("Binx", 3);
+        deletePet(binx);
+
+        assertEquals(3, mDbHelper.compactChanges(mDatabase, ChangeEntry.DELETE_RETENTION_MS));
+        assertEquals(Arrays.asList(tommy + " update", garfield + " delete", binx + " delete"), readChanges());
+        assertEquals(0, getCompactedSequence());
+
+        // the delete of Garfield is older than the retention, the one of Binx isn't.
+        long expiredSequence = DatabaseUtils.longForQuery(mDatabase, "SELECT " + ChangeEntry.COLUMN_SEQUENCE
+                + " FROM " + PetDbHelper.CHANGES_TABLE_NAME + " WHERE " + ChangeEntry.COLUMN_PET_ID + " = ?",
+                new String[]{String.valueOf(garfield)});
+        ContentValues time = new ContentValues();
+        time.put(ChangeEntry.COLUMN_TIME, System.currentTimeMillis() - ChangeEntry.DELETE_RETENTION_MS - 1000);
+        mDatabase.update(PetDbHelper.CHANGES_TABLE_NAME, time, ChangeEntry.COLUMN_SEQUENCE + "=?",
+                new String[]{String.valueOf(expiredSequence)});
+
+        assertEquals(1, mDbHelper.compactChanges(mDatabase, ChangeEntry.DELETE_RETENTION_MS));
+        assertEquals(Arrays.asList(tommy + " update", binx + " delete"), readChanges());
+        assertEquals(expiredSequence, getCompactedSequence());
+    }
+
+    @Test
+    public void upgrade_backfillsThePetsStoredBeforeTheChangeLogAfterTheChangesLoggedSince() {
+        long tommy = insertPet("Tommy", 4);
+        long garfield = insertPet("Garfield", 14);
+        long binx = insertPet("Binx", 3);
+        downgradeToVersion8();
+
+        mDbHelper = new PetDbHelper(mContext, DATABASE_NAME);
+        mDatabase = mDbHelper.getWritableDatabase();
+        // the app writes before the backfill runs.
+        updateWeight(garfield, 15);
+        deletePet(binx);
+        long felix = insertPet("Felix", 5);
+        mDbHelper.runBackfills();
+
+        // the readers that read the changes logged since the upgrade still get the older pets,
+        // in the order of their _IDs. The deleted pet isn't logged again, the pet inserted after
+        // the upgrade only once.
+        assertEquals(Arrays.asList(garfield + " update", binx + " delete", felix + " insert",
+                tommy + " insert", garfield + " insert"), readChanges());
+
+        // the backfill is done.
+        mDbHelper.runBackfills();
+        assertEquals(5, DatabaseUtils.queryNumEntries(mDatabase, PetDbHelper.CHANGES_TABLE_NAME));
+    }
+
+    @Test
+    public void upgrade_fromVersion2_keepsThePetsAndBuildsWhatDerivesFromThem() {
+        String name = "pets-v2.db";
+        SQLiteDatabase v2 = SQLiteDatabase.openOrCreateDatabase(mContext.getDatabasePath(name), null);
+        try {
+            // the schema of version 2, with the breed stored as text.
+            v2.execSQL("CREATE TABLE pets(_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                    + "breed TEXT, gender INTEGER, weight INTEGER DEFAULT 0);");
+            v2.execSQL("INSERT INTO pets(name, breed, gender, weight) VALUES ('Tommy', 'Tabby', 1, 4);");
+            v2.execSQL("INSERT INTO pets(name, breed, gender, weight) VALUES ('Garfield', 'Tabby', 1, 14);");
+            v2.execSQL("INSERT INTO pets(name, breed, gender, weight) VALUES ('Binx', NULL, 2, 3);");
+            v2.execSQL("INSERT INTO pets(name, breed, gender, weight) VALUES ('Felix', 'Tuxedo', 1, 5);");
+            v2.execSQL("DELETE FROM pets WHERE name = 'Felix';");
+            v2.setVersion(2);
+        } finally {
+            v2.close();
+        }
+
+        PetDbHelper dbHelper = new PetDbHelper(mContext, name);
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            assertEquals(PetDbHelper.DATABASE_VERSION, db.getVersion());
+
+            // the breeds moved into the dictionary.
+            assertEquals("Tabby", DatabaseUtils.stringForQuery(db, "SELECT " + PetEntry.COLUMN_PET_BREED
+                    + " FROM " + PetDbHelper.PETS_VIEW_NAME + " WHERE " + PetEntry.COLUMN_PET_NAME + " = 'Garfield'", null));
+            assertEquals(0, DatabaseUtils.queryNumEntries(db, PetDbHelper.PETS_VIEW_NAME,
+                    PetEntry.COLUMN_PET_NAME + " = 'Binx' AND " + PetEntry.COLUMN_PET_BREED + " IS NOT NULL"));
+
+            // the statistics count the stored pets.
+            assertEquals(3, DatabaseUtils.longForQuery(db,
+                    "SELECT " + StatsEntry.COLUMN_COUNT + " FROM " + StatsEntry.TOTALS_TABLE_NAME, null));
+            assertEquals(21, DatabaseUtils.longForQuery(db,
+                    "SELECT " + StatsEntry.COLUMN_TOTAL_WEIGHT + " FROM " + StatsEntry.TOTALS_TABLE_NAME, null));
+            assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT " + StatsEntry.COLUMN_COUNT + " FROM "
+                    + PetDbHelper.BREED_COUNTS_VIEW_NAME + " WHERE " + StatsEntry.COLUMN_BREED + " = 'Tabby'", null));
+
+            // the _ID of the deleted pet isn't given again.
+            assertEquals(4, DatabaseUtils.longForQuery(db,
+                    "SELECT seq FROM sqlite_sequence WHERE name = ?", new String[]{PetEntry.TABLE_NAME}));
+
+            // the search index and the change log are filled by the backfills.
+            dbHelper.runBackfills();
+            assertEquals(Arrays.asList(1L, 2L), searchIn(db, "tabby"));
+            assertEquals(Arrays.asList(3L), searchIn(db, "binx"));
+            assertEquals(3, DatabaseUtils.queryNumEntries(db, PetDbHelper.CHANGES_TABLE_NAME,
+                    ChangeEntry.COLUMN_OPERATION + "=?", new String[]{PetEntry.OPERATION_INSERT}));
+        } finally {
+            dbHelper.close();
+            mContext.deleteDatabase(name);
+        }
+    }
+
+    private long insertPet(String name, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_UNKNOWN);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return mDatabase.insertOrThrow(PetEntry.TABLE_NAME, null, values);
+    }
+
+    private void updateWeight(long id, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        mDatabase.update(PetEntry.TABLE_NAME, values, PetEntry._ID + "=?", new String[]{String.valueOf(id)});
+    }
+
+    private void deletePet(long id) {
+        mDatabase.delete(PetEntry.TABLE_NAME, PetEntry._ID + "=?", new String[]{String.valueOf(id)});
+    }
+
+    /**
+     * Returns the _IDs of the pets matching the full-text query.
+     */
+    private List<Long> search(String match) {
+        return searchIn(mDatabase, match);
+    }
+
+    private static List<Long> searchIn(SQLiteDatabase db, String match) {
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT docid FROM " + PetDbHelper.SEARCH_TABLE_NAME + " WHERE "
+                + PetDbHelper.SEARCH_TABLE_NAME + " MATCH ?", new String[]{match});
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the changes of the log as "pet_id operation", oldest first.
+     */
+    private List<String> readChanges() {
+        List<String> changes = new ArrayList<>();
+        Cursor cursor = mDatabase.query(PetDbHelper.CHANGES_TABLE_NAME,
+                new String[]{ChangeEntry.COLUMN_PET_ID, ChangeEntry.COLUMN_OPERATION},
+                null, null, null, null, ChangeEntry.COLUMN_SEQUENCE);
+        try {
+            while (cursor.moveToNext()) {
+                changes.add(cursor.getLong(0) + " " + cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return changes;
+    }
+
+    private long getCompactedSequence() {
+        return DatabaseUtils.longForQuery(mDatabase, "SELECT " + PetDbHelper.COLUMN_COMPACTED_SEQUENCE
+                + " FROM " + PetDbHelper.CHANGE_LOG_TABLE_NAME, null);
+    }
+
+    /**
+     * Turns the database back into one of version 8, which had no change log, and closes it.
+     */
+    private void downgradeToVersion8() {
+        mDatabase.execSQL("DROP TRIGGER pets_changes_insert;");
+        mDatabase.execSQL("DROP TRIGGER pets_changes_update;");
+        mDatabase.execSQL("DROP TRIGGER pets_changes_delete;");
+        mDatabase.execSQL("DROP TABLE " + PetDbHelper.CHANGES_TABLE_NAME + ";");
+        mDatabase.execSQL("DROP TABLE " + PetDbHelper.CHANGE_LOG_TABLE_NAME + ";");
+        mDatabase.setVersion(8);
+        mDbHelper.close();
+    }
+
+    private SQLiteDatabase openSnapshot() {
+        return SQLiteDatabase.openDatabase(mSnapshot.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+}
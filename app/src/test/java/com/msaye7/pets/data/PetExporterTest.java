@@ -0,0 +1,93 @@
+package com.msaye7.pets.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link PetExporter} reads the pets by pages and writes them as CSV and JSON.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetExporterTest {
+
+    /** the pets of the reader, their _ID is their position + 1. */
+    private final List<Object[]> mPets = new ArrayList<>();
+
+    /** the afterId of each page read. */
+    private final List<Long> mPageStarts = new ArrayList<>();
+
+    private final PetExporter mExporter = new PetExporter(new PetExporter.Reader() {
+        @Override
+        public Cursor read(long afterId, int limit) {
+            mPageStarts.add(afterId);
+            MatrixCursor cursor = new MatrixCursor(PetExporter.COLUMNS);
+            for (int i = (int) afterId; i < mPets.size() && i < afterId + limit; i++) {
+                cursor.addRow(mPets.get(i));
+            }
+            return cursor;
+        }
+    });
+
+    @Test
+    public void exportCsv_readsThePagesAfterTheLastPetOfThePreviousOne() throws IOException {
+        int count = PetExporter.PAGE_SIZE * 2 + 1;
+        for (int i = 0; i < count; i++) {
+            addPet("Pet " + i, "Tabby", 4);
+        }
+
+        String csv = export(PetContract.FORMAT_CSV);
+
+        assertEquals(count, csv.split("\n").length - 1);
+        assertTrue(csv.startsWith("name,breed,gender,weight\nPet 0,Tabby,1,4\n"));
+        assertTrue(csv.endsWith("Pet " + (count - 1) + ",Tabby,1,4\n"));
+        List<Long> pageStarts = new ArrayList<>();
+        pageStarts.add(0L);
+        pageStarts.add((long) PetExporter.PAGE_SIZE);
+        pageStarts.add((long) PetExporter.PAGE_SIZE * 2);
+        assertEquals(pageStarts, mPageStarts);
+    }
+
+    @Test
+    public void exportCsv_quotesTheFieldsWithCommasAndQuotes() throws IOException {
+        addPet("Tommy, Jr.", "\"Tabby\"", 4);
+
+        assertEquals("name,breed,gender,weight\n\"Tommy, Jr.\",\"\"\"Tabby\"\"\",1,4\n",
+                export(PetContract.FORMAT_CSV));
+    }
+
+    @Test
+    public void exportJson_writesASingleArrayOverThePages() throws IOException {
+        for (int i = 0; i < PetExporter.PAGE_SIZE; i++) {
+            addPet("Pet", null, 4);
+        }
+
+        String json = export(PetContract.FORMAT_JSON);
+
+        assertTrue(json.startsWith("[{\"name\":\"Pet\",\"breed\":null,\"gender\":1,\"weight\":4},"));
+        assertTrue(json.endsWith("}]"));
+        // a full page is followed by an empty one.
+        assertEquals(2, mPageStarts.size());
+    }
+
+    private void addPet(String name, String breed, int weight) {
+        mPets.add(new Object[]{mPets.size() + 1, name, breed, 1, weight});
+    }
+
+    private String export(String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mExporter.exportPets(out, format, null);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
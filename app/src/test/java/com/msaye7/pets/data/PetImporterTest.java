@@ -0,0 +1,136 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link PetImporter} validates, reports and inserts the pets of CSV and JSON streams.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetImporterTest {
+
+    /** the pets given to the inserter, which inserts all of them. */
+    private final List<ContentValues> mInserted = new ArrayList<>();
+
+    private PetImporter mImporter;
+    private StringWriter mErrorReport;
+
+    @Before
+    public void setUp() {
+        mImporter = new PetImporter(new PetImporter.Inserter() {
+            @Override
+            public int insert(ContentValues[] pets) {
+                // the importer reuses its chunks.
+                mInserted.addAll(Arrays.asList(pets));
+                return pets.length;
+            }
+        });
+        mErrorReport = new StringWriter();
+    }
+
+    @Test
+    public void importCsv_insertsTheCorrectedPetsAndReportsTheRejectedOnes() throws IOException {
+        int imported = mImporter.importPets(stream("weight,name,gender\n"
+                        + "4,Tommy,1\n"
+                        + "-3,,7\n"
+                        + "heavy,Garfield,male\n"),
+                PetContract.FORMAT_CSV, mErrorReport, null);
+
+        assertEquals(2, imported);
+        assertEquals(1, mImporter.getRejectedCount());
+        assertEquals(2, mInserted.size());
+        assertEquals("Tommy", mInserted.get(0).getAsString(PetEntry.COLUMN_PET_NAME));
+        assertEquals(Integer.valueOf(4), mInserted.get(0).getAsInteger(PetEntry.COLUMN_PET_WEIGHT));
+        assertEquals(Integer.valueOf(0), mInserted.get(1).getAsInteger(PetEntry.COLUMN_PET_WEIGHT));
+        assertEquals(Integer.valueOf(PetEntry.GENDER_UNKNOWN),
+                mInserted.get(1).getAsInteger(PetEntry.COLUMN_PET_GENDER));
+        // the reason holds commas, so it's quoted.
+        assertEquals("position,reason\n3,\"empty name, invalid gender, invalid weight\"\n",
+                mErrorReport.toString());
+    }
+
+    @Test
+    public void importCsv_rejectsPetsWithoutNameColumn() throws IOException {
+        int imported = mImporter.importPets(stream("breed,weight\nPersian,4\n"),
+                PetContract.FORMAT_CSV, mErrorReport, null);
+
+        assertEquals(0, imported);
+        assertEquals(1, mImporter.getRejectedCount());
+        assertEquals("position,reason\n2,empty name\n", mErrorReport.toString());
+    }
+
+    @Test
+    public void importJson_readsFractionsAndHugeNumbersAsInvalidWeights() throws IOException {
+        int imported = mImporter.importPets(stream("["
+                        + "{\"name\": \"Tommy\", \"weight\": 7.5},"
+                        + "{\"name\": \"Garfield\", \"weight\": 99999999999999999999},"
+                        + "{\"name\": \"Binx\", \"weight\": 3, \"owner\": {\"name\": \"Dani\"}}"
+                        + "]"),
+                PetContract.FORMAT_JSON, mErrorReport, null);
+
+        assertEquals(3, imported);
+        assertEquals(0, mImporter.getRejectedCount());
+        assertEquals(Integer.valueOf(0), mInserted.get(0).getAsInteger(PetEntry.COLUMN_PET_WEIGHT));
+        assertEquals(Integer.valueOf(0), mInserted.get(1).getAsInteger(PetEntry.COLUMN_PET_WEIGHT));
+        assertEquals(Integer.valueOf(3), mInserted.get(2).getAsInteger(PetEntry.COLUMN_PET_WEIGHT));
+        assertEquals("position,reason\n", mErrorReport.toString());
+    }
+
+    @Test
+    public void importJson_rejectsPetsWithNullOrMissingName() throws IOException {
+        int imported = mImporter.importPets(stream("["
+                        + "{\"name\": null, \"weight\": 4},"
+                        + "{\"breed\": \"Persian\"},"
+                        + "{\"name\": \"Binx\"}"
+                        + "]"),
+                PetContract.FORMAT_JSON, mErrorReport, null);
+
+        assertEquals(1, imported);
+        assertEquals(2, mImporter.getRejectedCount());
+        assertEquals("Binx", mInserted.get(0).getAsString(PetEntry.COLUMN_PET_NAME));
+        assertEquals("position,reason\n0,empty name\n1,empty name\n", mErrorReport.toString());
+    }
+
+    @Test
+    public void importPets_insertsInChunksAndReportsProgress() throws IOException {
+        StringBuilder csv = new StringBuilder("name\n");
+        int count = PetImporter.CHUNK_SIZE + 1;
+        for (int i = 0; i < count; i++) {
+            csv.append("Pet ").append(i).append('\n');
+        }
+        final List<Integer> progress = new ArrayList<>();
+
+        int imported = mImporter.importPets(stream(csv.toString()), PetContract.FORMAT_CSV, null,
+                new ProgressListener() {
+                    @Override
+                    public void onProgress(int processedRows, int rejectedRows) {
+                        progress.add(processedRows);
+                    }
+                });
+
+        assertEquals(count, imported);
+        assertEquals(count, mInserted.size());
+        assertEquals(Arrays.asList(PetImporter.CHUNK_SIZE, count), progress);
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
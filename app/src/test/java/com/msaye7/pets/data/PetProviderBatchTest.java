@@ -0,0 +1,118 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the batch writes of {@link PetProvider}: bulkInsert and applyBatch.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetProviderBatchTest {
+
+    private PetProvider mProvider;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class, PetContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void bulkInsert_insertsAllThePets() {
+        ContentValues[] pets = {pet("Tommy"), pet("Garfield"), pet("Binx")};
+
+        assertEquals(3, mResolver.bulkInsert(PetEntry.CONTENT_URI, pets));
+        assertEquals(Arrays.asList("Tommy", "Garfield", "Binx"), queryNames());
+    }
+
+    @Test
+    public void applyBatch_appliesTheOperationsInOrder() throws RemoteException, OperationApplicationException {
+        Uri tommy = mResolver.insert(PetEntry.CONTENT_URI, pet("Tommy"));
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(tommy).withValue(PetEntry.COLUMN_PET_NAME, "Binx").build());
+        operations.add(ContentProviderOperation.newInsert(PetEntry.CONTENT_URI).withValues(pet("Garfield")).build());
+        operations.add(ContentProviderOperation.newDelete(tommy).build());
+
+        ContentProviderResult[] results = mResolver.applyBatch(PetContract.CONTENT_AUTHORITY, operations);
+
+        assertEquals(3, results.length);
+        assertEquals(Integer.valueOf(1), results[0].count);
+        assertEquals(Integer.valueOf(1), results[2].count);
+        assertEquals(Arrays.asList("Garfield"), queryNames());
+    }
+
+    @Test
+    public void applyBatch_rollsBackEveryOperationWhenOneFails() throws RemoteException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(PetEntry.CONTENT_URI).withValues(pet("Tommy")).build());
+        // there is no such pet, so the update changes no row.
+        operations.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(PetEntry.CONTENT_URI, 1000))
+                .withValue(PetEntry.COLUMN_PET_NAME, "Binx")
+                .withExpectedCount(1)
+                .build());
+
+        try {
+            mResolver.applyBatch(PetContract.CONTENT_AUTHORITY, operations);
+            fail("The update of a missing pet was applied");
+        } catch (OperationApplicationException e) {
+            // expected.
+        }
+        assertEquals(Arrays.<String>asList(), queryNames());
+    }
+
+    private static ContentValues pet(String name) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_BREED, "Tabby");
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 4);
+        return values;
+    }
+
+    /**
+     * Returns the names of all the pets, by _ID.
+     */
+    private List<String> queryNames() {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = mResolver.query(PetEntry.CONTENT_URI, new String[]{PetEntry.COLUMN_PET_NAME},
+                null, null, PetEntry._ID);
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,114 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the keyset pages of {@link PetProvider}: pages by name after the last row of the
+ * previous page, the gender filter, and pages read again between their bounds.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetProviderPagingTest {
+
+    private PetProvider mProvider;
+    private ContentResolver mResolver;
+
+    private long mBinxId;
+    private long mAlfieId;
+    private long mTommyId;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class, PetContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+
+        mBinxId = insertPet("binx", PetEntry.GENDER_MALE);
+        insertPet("Garfield", PetEntry.GENDER_FEMALE);
+        mTommyId = insertPet("Tommy", PetEntry.GENDER_MALE);
+        mAlfieId = insertPet("Alfie", PetEntry.GENDER_FEMALE);
+        insertPet("Tommy", PetEntry.GENDER_FEMALE);
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void query_pagesByNameStartAfterTheLastPetOfThePreviousPage() {
+        assertEquals(Arrays.asList("Alfie", "binx"),
+                queryNames(PetEntry.buildPageUri(0, null, 2, PetEntry.SORT_NAME, PetEntry.GENDER_ANY)));
+        assertEquals(Arrays.asList("Garfield", "Tommy"),
+                queryNames(PetEntry.buildPageUri(mBinxId, "binx", 2, PetEntry.SORT_NAME, PetEntry.GENDER_ANY)));
+        // the pets with the same name are in _ID order.
+        assertEquals(Arrays.asList("Tommy"),
+                queryNames(PetEntry.buildPageUri(mTommyId, "Tommy", 2, PetEntry.SORT_NAME, PetEntry.GENDER_ANY)));
+    }
+
+    @Test
+    public void query_pageAfterADeletedPetStartsAtItsSortKey() {
+        mResolver.delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI, mBinxId), null, null);
+
+        assertEquals(Arrays.asList("Garfield", "Tommy"),
+                queryNames(PetEntry.buildPageUri(mBinxId, "binx", 2, PetEntry.SORT_NAME, PetEntry.GENDER_ANY)));
+    }
+
+    @Test
+    public void query_pagesOfAGenderSkipTheOtherPets() {
+        assertEquals(Arrays.asList("Alfie", "Garfield", "Tommy"),
+                queryNames(PetEntry.buildPageUri(0, null, 10, PetEntry.SORT_NAME, PetEntry.GENDER_FEMALE)));
+        assertEquals(Arrays.asList("Tommy"),
+                queryNames(PetEntry.buildPageUri(mBinxId, "binx", 2, PetEntry.SORT_NAME, PetEntry.GENDER_MALE)));
+    }
+
+    @Test
+    public void query_pageReadAgainHoldsThePetsBetweenItsBounds() {
+        Uri range = PetEntry.buildPageRangeUri(mAlfieId, "Alfie", mTommyId, "Tommy",
+                PetEntry.SORT_NAME, PetEntry.GENDER_ANY);
+        assertEquals(Arrays.asList("binx", "Garfield", "Tommy"), queryNames(range));
+
+        insertPet("Charlie", PetEntry.GENDER_MALE);
+
+        assertEquals(Arrays.asList("binx", "Charlie", "Garfield", "Tommy"), queryNames(range));
+    }
+
+    private long insertPet(String name, int gender) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_GENDER, gender);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 4);
+        return ContentUris.parseId(mResolver.insert(PetEntry.CONTENT_URI, values));
+    }
+
+    private List<String> queryNames(Uri uri) {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = mResolver.query(uri, new String[]{PetEntry.COLUMN_PET_NAME}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+}
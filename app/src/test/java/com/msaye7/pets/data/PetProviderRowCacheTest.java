@@ -0,0 +1,107 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the single pet queries of {@link PetProvider} are served by the row cache, and
+ * never return a pet as it was before a write.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetProviderRowCacheTest {
+
+    private static final String[] PROJECTION = {PetEntry._ID, PetEntry.COLUMN_PET_NAME, PetEntry.COLUMN_PET_WEIGHT};
+
+    private PetProvider mProvider;
+    private ContentResolver mResolver;
+    private Uri mTommy;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class, PetContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, "Tommy");
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 4);
+        mTommy = mResolver.insert(PetEntry.CONTENT_URI, values);
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void query_servesThePetReadBeforeFromTheCache() {
+        assertEquals("Tommy 4", queryPet(mTommy));
+        assertEquals("Tommy 4", queryPet(mTommy));
+
+        Bundle stats = getStats();
+        assertEquals(1, stats.getInt(PetContract.KEY_MISS_COUNT));
+        assertEquals(1, stats.getInt(PetContract.KEY_HIT_COUNT));
+        // the size of the cache is measured in bytes.
+        assertTrue(stats.getInt(PetContract.KEY_SIZE) > 0);
+    }
+
+    @Test
+    public void update_dropsTheCachedPet() {
+        queryPet(mTommy);
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 5);
+        mResolver.update(mTommy, values, null, null);
+
+        assertEquals("Tommy 5", queryPet(mTommy));
+        assertEquals(2, getStats().getInt(PetContract.KEY_MISS_COUNT));
+    }
+
+    @Test
+    public void delete_dropsTheCachedPet() {
+        queryPet(mTommy);
+        mResolver.delete(mTommy, null, null);
+
+        Cursor cursor = mResolver.query(mTommy, PROJECTION, null, null, null);
+        try {
+            assertFalse(cursor.moveToFirst());
+        } finally {
+            cursor.close();
+        }
+        assertEquals(0, getStats().getInt(PetContract.KEY_HIT_COUNT));
+    }
+
+    /**
+     * Returns the pet as "name weight".
+     */
+    private String queryPet(Uri uri) {
+        Cursor cursor = mResolver.query(uri, PROJECTION, null, null, null);
+        try {
+            cursor.moveToFirst();
+            assertEquals(ContentUris.parseId(uri), cursor.getLong(0));
+            return cursor.getString(1) + " " + cursor.getInt(2);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle getStats() {
+        return mResolver.call(PetContract.BASE_CONTENT_URI, PetContract.METHOD_GET_ROW_CACHE_STATS, null, null);
+    }
+}
@@ -0,0 +1,90 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the full-text search of the pets through {@link PetProvider}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetProviderSearchTest {
+
+    private PetProvider mProvider;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class, PetContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        insertPet("Tommy", "Tabby");
+        insertPet("Tabitha", "Persian");
+        insertPet("Garfield", "Tabby");
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void search_ranksTheNamesStartingWithTheQueryBeforeTheBreeds() {
+        assertEquals(Arrays.asList("Tabitha", "Tommy", "Garfield"), search("tab"));
+        assertEquals(Arrays.asList("Tabitha"), search("PERS"));
+    }
+
+    @Test
+    public void search_matchesEveryWordAsAPrefix() {
+        assertEquals(Arrays.asList("Garfield"), search("garf tab"));
+        assertEquals(Arrays.<String>asList(), search("garf persian"));
+    }
+
+    @Test
+    public void search_ignoresTheSearchOperators() {
+        assertEquals(Arrays.asList("Garfield"), search("garf* \"tab"));
+        assertEquals(Arrays.<String>asList(), search("*"));
+    }
+
+    private void insertPet(String name, String breed) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_BREED, breed);
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_UNKNOWN);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 4);
+        mResolver.insert(PetEntry.CONTENT_URI, values);
+    }
+
+    /**
+     * Returns the names of the pets found by the query, in the order of the results.
+     */
+    private List<String> search(String query) {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = mResolver.query(PetEntry.buildSearchUri(query),
+                new String[]{PetEntry._ID, PetEntry.COLUMN_PET_NAME}, null, null, null);
+        try {
+            int name = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME);
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(name));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+}
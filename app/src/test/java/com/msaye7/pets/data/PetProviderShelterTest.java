@@ -0,0 +1,107 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how {@link PetProvider} routes the uris of the shelters to their own database.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetProviderShelterTest {
+
+    private PetProvider mProvider;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class, PetContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void insert_keepsThePetsOfEachShelterApart() {
+        addShelter(2);
+        Uri shelterPets = PetContract.forShelter(PetEntry.CONTENT_URI, 2);
+
+        mResolver.insert(PetEntry.CONTENT_URI, pet("Tommy"));
+        Uri garfield = mResolver.insert(shelterPets, pet("Garfield"));
+
+        assertEquals(Arrays.asList("Tommy"), queryNames(PetEntry.CONTENT_URI));
+        assertEquals(Arrays.asList("Garfield"), queryNames(shelterPets));
+        // the uri of the new pet stays in its shelter.
+        assertEquals(Arrays.asList("Garfield"), queryNames(garfield));
+    }
+
+    @Test
+    public void addShelter_keepsThePetsOfAShelterThatExists() {
+        addShelter(2);
+        Uri shelterPets = PetContract.forShelter(PetEntry.CONTENT_URI, 2);
+        mResolver.insert(shelterPets, pet("Garfield"));
+
+        addShelter(2);
+
+        assertEquals(Arrays.asList("Garfield"), queryNames(shelterPets));
+    }
+
+    @Test
+    public void query_throwsForAShelterThatWasNotAdded() {
+        try {
+            mResolver.query(PetContract.forShelter(PetEntry.CONTENT_URI, 3), null, null, null, null);
+            fail("Queried a shelter that was not added");
+        } catch (IllegalArgumentException e) {
+            // expected.
+        }
+    }
+
+    private void addShelter(long shelterId) {
+        Bundle extras = new Bundle();
+        extras.putLong(PetContract.KEY_SHELTER_ID, shelterId);
+        mResolver.call(PetContract.BASE_CONTENT_URI, PetContract.METHOD_ADD_SHELTER, null, extras);
+    }
+
+    private static ContentValues pet(String name) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 4);
+        return values;
+    }
+
+    private List<String> queryNames(Uri uri) {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = mResolver.query(uri, new String[]{PetEntry.COLUMN_PET_NAME}, null, null, PetEntry._ID);
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+}
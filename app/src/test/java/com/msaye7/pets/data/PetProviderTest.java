@@ -0,0 +1,209 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.msaye7.pets.data.PetContract.ChangeEntry;
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the change log as the readers see it through {@link PetProvider}, against a real
+ * database.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetProviderTest {
+
+    private Context mContext;
+    private PetProvider mProvider;
+    private ContentResolver mResolver;
+    private String mBackupPath;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mProvider = Robolectric.setupContentProvider(PetProvider.class, PetContract.CONTENT_AUTHORITY);
+        mResolver = mContext.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+        if (mBackupPath != null) {
+            SQLiteDatabase.deleteDatabase(new File(mBackupPath));
+        }
+    }
+
+    @Test
+    public void queryChanges_returnsTheChangesWithTheCurrentValuesOfTheirPets() {
+        long tommy = insertPet("Tommy");
+        long garfield = insertPet("Garfield");
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, "Binx");
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(PetEntry.CONTENT_URI, tommy),
+                values, null, null));
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI, garfield),
+                null, null));
+
+        Cursor changes = queryChanges(0, 2);
+        try {
+            assertEquals(Arrays.asList(tommy + " insert Binx", garfield + " insert null"), readChanges(changes));
+            assertFalse(changes.getExtras().getBoolean(ChangeEntry.EXTRA_RESET_REQUIRED));
+        } finally {
+            changes.close();
+        }
+
+        // the next page starts after the last change of the previous one.
+        changes = queryChanges(getSequence(garfield, PetEntry.OPERATION_INSERT), 2);
+        try {
+            assertEquals(Arrays.asList(tommy + " update Binx", garfield + " delete null"), readChanges(changes));
+        } finally {
+            changes.close();
+        }
+    }
+
+    @Test
+    public void queryChanges_asksTheReadersBeforeAnExpiredDeleteToStartOver() {
+        long tommy = insertPet("Tommy");
+        long garfield = insertPet("Garfield");
+        mResolver.delete(ContentUris.withAppendedId(PetEntry.CONTENT_URI, garfield), null, null);
+        long tommyInserted = getSequence(tommy, PetEntry.OPERATION_INSERT);
+        long garfieldDeleted = getSequence(garfield, PetEntry.OPERATION_DELETE);
+
+        // the delete of Garfield is older than the retention.
+        PetDbHelper dbHelper = new PetDbHelper(mContext, PetDbHelper.DATABASE_NAME);
+        try {
+            ContentValues time = new ContentValues();
+            time.put(ChangeEntry.COLUMN_TIME, System.currentTimeMillis() - ChangeEntry.DELETE_RETENTION_MS - 1000);
+            dbHelper.getWritableDatabase().update(PetDbHelper.CHANGES_TABLE_NAME, time,
+                    ChangeEntry.COLUMN_SEQUENCE + "=?", new String[]{String.valueOf(garfieldDeleted)});
+        } finally {
+            dbHelper.close();
+        }
+        mResolver.call(PetContract.BASE_CONTENT_URI, PetContract.METHOD_COMPACT_CHANGES, null, null);
+
+        // the readers that read the insert of Garfield but not its delete missed the delete.
+        assertTrue(isResetRequired(tommyInserted));
+        assertFalse(isResetRequired(garfieldDeleted));
+        // the readers that start from the beginning miss nothing.
+        assertFalse(isResetRequired(0));
+
+        Cursor changes = queryChanges(0, 10);
+        try {
+            assertEquals(Arrays.asList(tommy + " insert Tommy"), readChanges(changes));
+        } finally {
+            changes.close();
+        }
+    }
+
+    @Test
+    public void restore_givesTheChangeLogANewId() {
+        long tommy = insertPet("Tommy");
+        String logId = getLogId();
+        Bundle backup = mResolver.call(PetContract.BASE_CONTENT_URI, PetContract.METHOD_BACKUP, null, null);
+        assertNotNull(backup);
+        mBackupPath = backup.getString(PetContract.KEY_BACKUP_PATH);
+        insertPet("Garfield");
+
+        mResolver.call(PetContract.BASE_CONTENT_URI, PetContract.METHOD_RESTORE, mBackupPath, null);
+
+        // the sequences of the restored log may be given again, so the readers start over.
+        assertNotEquals(logId, getLogId());
+        Cursor changes = queryChanges(0, 10);
+        try {
+            assertEquals(Arrays.asList(tommy + " insert Tommy"), readChanges(changes));
+        } finally {
+            changes.close();
+        }
+    }
+
+    private long insertPet(String name) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_UNKNOWN);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 4);
+        Uri uri = mResolver.insert(PetEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return ContentUris.parseId(uri);
+    }
+
+    private Cursor queryChanges(long after, int limit) {
+        Cursor cursor = mResolver.query(ChangeEntry.buildChangesUri(after, limit), null, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    /**
+     * Returns the changes of the cursor as "pet_id operation name".
+     */
+    private static List<String> readChanges(Cursor cursor) {
+        List<String> changes = new ArrayList<>();
+        int petId = cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_PET_ID);
+        int operation = cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_OPERATION);
+        int name = cursor.getColumnIndexOrThrow(PetEntry.COLUMN_PET_NAME);
+        while (cursor.moveToNext()) {
+            changes.add(cursor.getLong(petId) + " " + cursor.getString(operation) + " " + cursor.getString(name));
+        }
+        return changes;
+    }
+
+    /**
+     * Returns the sequence of the given change of the pet, or -1 if it isn't in the log.
+     */
+    private long getSequence(long petId, String operation) {
+        Cursor cursor = queryChanges(0, ChangeEntry.MAX_LIMIT);
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_PET_ID)) == petId
+                        && operation.equals(cursor.getString(cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_OPERATION)))) {
+                    return cursor.getLong(cursor.getColumnIndexOrThrow(ChangeEntry.COLUMN_SEQUENCE));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return -1;
+    }
+
+    private boolean isResetRequired(long after) {
+        Cursor cursor = queryChanges(after, 1);
+        try {
+            return cursor.getExtras().getBoolean(ChangeEntry.EXTRA_RESET_REQUIRED);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String getLogId() {
+        Cursor cursor = queryChanges(0, 1);
+        try {
+            return cursor.getExtras().getString(ChangeEntry.EXTRA_LOG_ID);
+        } finally {
+            cursor.close();
+        }
+    }
+}
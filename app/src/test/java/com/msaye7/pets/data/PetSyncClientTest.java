@@ -0,0 +1,129 @@
+package com.msaye7.pets.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the delta sync protocol of {@link PetSyncClient} against the stand-in server.
+ */
+public class PetSyncClientTest {
+
+    private InMemoryChangeLog mLog;
+    private LocalSyncServer mServer;
+    private PetSyncClient mClient;
+
+    @Before
+    public void setUp() {
+        mLog = new InMemoryChangeLog();
+        mServer = new LocalSyncServer();
+        mClient = new PetSyncClient(mLog, mServer, 2);
+    }
+
+    @Test
+    public void firstSync_sendsEveryPet_thenNothing() throws IOException {
+        mLog.insert("Tommy", "Persian", 1, 4);
+        mLog.insert("Garfield", null, 1, 14);
+        mLog.insert("Binx", "Bombay", 0, 3);
+
+        assertEquals(3, mClient.sync());
+        assertEquals(mLog.getPets(), mServer.getPets());
+
+        assertEquals(0, mClient.sync());
+        assertEquals(1, mServer.getResetCount());
+    }
+
+    @Test
+    public void sync_sendsOnlyTheChangesSinceTheLastSync() throws IOException {
+        long tommy = mLog.insert("Tommy", "Persian", 1, 4);
+        long garfield = mLog.insert("Garfield", null, 1, 14);
+        mClient.sync();
+
+        mLog.update(tommy, "Tommy", "Persian", 1, 5);
+        mLog.delete(garfield);
+        mLog.insert("Binx", "Bombay", 0, 3);
+
+        assertEquals(3, mClient.sync());
+        assertEquals(mLog.getPets(), mServer.getPets());
+    }
+
+    @Test
+    public void sync_readsLongLogsPageByPage() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            mLog.insert("Pet " + i, null, 0, i);
+        }
+
+        assertEquals(5, mClient.sync());
+        assertEquals(mLog.getPets(), mServer.getPets());
+        // pages of 2, 2 and 1 changes.
+        assertEquals(3, mLog.getReadCount());
+    }
+
+    @Test
+    public void sync_resumesAfterTheLastAppliedPage() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            mLog.insert("Pet " + i, null, 0, i);
+        }
+        mServer.failNextApply();
+        try {
+            mClient.sync();
+            fail("The lost page must fail the sync");
+        } catch (IOException expected) {
+            // the server applied nothing.
+        }
+
+        assertEquals(5, mClient.sync());
+        assertEquals(mLog.getPets(), mServer.getPets());
+        assertEquals(5, mServer.getAppliedCount());
+    }
+
+    @Test
+    public void sync_sendsTheLastValuesOfCompactedPets() throws IOException {
+        long tommy = mLog.insert("Tommy", "Persian", 1, 4);
+        long garfield = mLog.insert("Garfield", null, 1, 14);
+        mClient.sync();
+
+        mLog.update(tommy, "Tommy", "Persian", 1, 5);
+        mLog.update(tommy, "Tom", "Persian", 1, 6);
+        mLog.insert("Binx", "Bombay", 0, 3);
+        mLog.delete(garfield);
+        mLog.compact(false);
+
+        assertEquals(3, mClient.sync());
+        assertEquals(mLog.getPets(), mServer.getPets());
+        assertEquals(1, mServer.getResetCount());
+    }
+
+    @Test
+    public void droppedDeletes_resetTheServer() throws IOException {
+        mLog.insert("Tommy", "Persian", 1, 4);
+        long garfield = mLog.insert("Garfield", null, 1, 14);
+        mClient.sync();
+
+        mLog.delete(garfield);
+        mLog.insert("Binx", "Bombay", 0, 3);
+        mLog.compact(true);
+
+        mClient.sync();
+        assertEquals(mLog.getPets(), mServer.getPets());
+        assertEquals(2, mServer.getResetCount());
+    }
+
+    @Test
+    public void restoredLog_resetsTheServer() throws IOException {
+        long tommy = mLog.insert("Tommy", "Persian", 1, 4);
+        mLog.insert("Garfield", null, 1, 14);
+        mClient.sync();
+
+        mLog.delete(tommy);
+        mLog.restore();
+
+        assertEquals(1, mClient.sync());
+        assertEquals(mLog.getPets(), mServer.getPets());
+        assertEquals(2, mServer.getResetCount());
+    }
+}
@@ -0,0 +1,75 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link PetValidator} reports and corrects the invalid fields.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetValidatorTest {
+
+    @Test
+    public void validate_acceptsValidValuesUnchanged() {
+        ContentValues values = pet("Tommy", "Tabby", PetEntry.GENDER_MALE, 4);
+
+        assertEquals(0, PetValidator.validate(values));
+        assertEquals(pet("Tommy", "Tabby", PetEntry.GENDER_MALE, 4), values);
+    }
+
+    @Test
+    public void validate_reportsEveryInvalidFieldAndCorrectsTheOnesWithADefault() {
+        ContentValues values = pet(" ", "", 7, -3);
+
+        int failures = PetValidator.validate(values);
+
+        assertEquals(PetValidator.FAILURE_NAME | PetValidator.FAILURE_BREED | PetValidator.FAILURE_GENDER
+                | PetValidator.FAILURE_WEIGHT, failures);
+        assertTrue(PetValidator.isRejected(failures));
+        assertEquals("empty name, empty breed, invalid gender, invalid weight", PetValidator.describe(failures));
+        assertEquals(PetEntry.BREED_UNKNOWN, values.getAsString(PetEntry.COLUMN_PET_BREED));
+        assertEquals(Integer.valueOf(PetEntry.GENDER_UNKNOWN), values.getAsInteger(PetEntry.COLUMN_PET_GENDER));
+        assertEquals(Integer.valueOf(0), values.getAsInteger(PetEntry.COLUMN_PET_WEIGHT));
+    }
+
+    @Test
+    public void validate_storesTheNumbersGivenAsTextAsNumbers() {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_GENDER, " 2 ");
+        values.put(PetEntry.COLUMN_PET_WEIGHT, "heavy");
+
+        int failures = PetValidator.validate(values);
+
+        assertEquals(PetValidator.FAILURE_WEIGHT, failures);
+        assertFalse(PetValidator.isRejected(failures));
+        assertEquals(PetEntry.GENDER_FEMALE, values.get(PetEntry.COLUMN_PET_GENDER));
+        assertEquals(0, values.get(PetEntry.COLUMN_PET_WEIGHT));
+    }
+
+    @Test
+    public void validate_onlyChecksTheFieldsOfAPartialUpdate() {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 5);
+
+        assertEquals(0, PetValidator.validate(values));
+        assertEquals(1, values.size());
+    }
+
+    private static ContentValues pet(String name, String breed, int gender, int weight) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_BREED, breed);
+        values.put(PetEntry.COLUMN_PET_GENDER, gender);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, weight);
+        return values;
+    }
+}
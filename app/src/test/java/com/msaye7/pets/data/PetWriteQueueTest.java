@@ -0,0 +1,149 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks how {@link PetWriteQueue} coalesces the waiting writes of a pet, against
+ * {@link PetProvider}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PetWriteQueueTest {
+
+    private PetProvider mProvider;
+    private ContentResolver mResolver;
+    private PetWriteQueue mQueue;
+
+    /** the results of the writes, as "succeeded uri" or "failed uri". */
+    private final List<String> mResults = new ArrayList<>();
+
+    private final PetWriteQueue.Callback mCallback = new PetWriteQueue.Callback() {
+        @Override
+        public void onWriteSucceeded(Uri uri) {
+            mResults.add("succeeded " + uri);
+        }
+
+        @Override
+        public void onWriteFailed(Uri uri, @Nullable Exception error) {
+            mResults.add("failed " + uri);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(PetProvider.class, PetContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mQueue = new PetWriteQueue(mResolver);
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void update_mergesTheWaitingUpdatesOfAPetIntoOneWrite() throws Exception {
+        Uri tommy = mResolver.insert(PetEntry.CONTENT_URI, pet("Tommy"));
+
+        ContentValues name = new ContentValues();
+        name.put(PetEntry.COLUMN_PET_NAME, "Binx");
+        mQueue.update(tommy, name, mCallback);
+        ContentValues weight = new ContentValues();
+        weight.put(PetEntry.COLUMN_PET_WEIGHT, 9);
+        mQueue.update(tommy, weight, mCallback);
+        flush();
+
+        assertEquals(Arrays.asList("succeeded " + tommy, "succeeded " + tommy), mResults);
+        assertEquals("Binx 9", queryPet(tommy));
+        Bundle updates = mResolver.call(PetContract.BASE_CONTENT_URI, PetContract.METHOD_GET_METRICS, null, null)
+                .getBundle("pet_id.update");
+        assertEquals(1, updates.getLong(PetContract.KEY_OPERATION_COUNT));
+    }
+
+    @Test
+    public void delete_failsTheUpdatesQueuedAfterIt() throws Exception {
+        Uri tommy = mResolver.insert(PetEntry.CONTENT_URI, pet("Tommy"));
+
+        mQueue.delete(tommy, mCallback);
+        mQueue.update(tommy, pet("Binx"), mCallback);
+        flush();
+
+        assertEquals(Arrays.asList("succeeded " + tommy, "failed " + tommy), mResults);
+        Cursor cursor = mResolver.query(tommy, null, null, null, null);
+        try {
+            assertFalse(cursor.moveToFirst());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void insert_writesEveryQueuedPet() throws Exception {
+        mQueue.insert(pet("Tommy"), mCallback);
+        mQueue.insert(pet("Tommy"), mCallback);
+        flush();
+
+        assertEquals(2, mResults.size());
+        Cursor cursor = mResolver.query(PetEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs the waiting writes, then delivers their results.
+     */
+    private void flush() throws Exception {
+        mQueue.flush().get(5, TimeUnit.SECONDS);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static ContentValues pet(String name) {
+        ContentValues values = new ContentValues();
+        values.put(PetEntry.COLUMN_PET_NAME, name);
+        values.put(PetEntry.COLUMN_PET_GENDER, PetEntry.GENDER_MALE);
+        values.put(PetEntry.COLUMN_PET_WEIGHT, 4);
+        return values;
+    }
+
+    /**
+     * Returns the pet as "name weight".
+     */
+    private String queryPet(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[]{PetEntry.COLUMN_PET_NAME, PetEntry.COLUMN_PET_WEIGHT},
+                null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getString(0) + " " + cursor.getInt(1);
+        } finally {
+            cursor.close();
+        }
+    }
+}
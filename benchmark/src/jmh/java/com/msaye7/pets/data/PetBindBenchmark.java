@@ -0,0 +1,68 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding a loaded cursor to the catalog: {@link Pet#fromCursor} and the comparison of the
+ * new pets with the shown ones that the adapter's diff runs when the cursor is reloaded.
+ *
+ * Views can't be inflated on a plain JVM, so the binding stops at the pets handed to the
+ * adapter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PetBindBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int tableSize;
+
+    private MatrixCursor mCursor;
+
+    private List<Pet> mShownPets;
+
+    @Setup
+    public void createCursor() {
+        PetDataGenerator generator = new PetDataGenerator(PetDataGenerator.DEFAULT_SEED);
+        mCursor = new MatrixCursor(new String[]{PetEntry._ID, PetEntry.COLUMN_PET_NAME,
+                PetEntry.COLUMN_PET_BREED, PetEntry.COLUMN_PET_PHOTO}, tableSize);
+        for (int i = 1; i <= tableSize; i++) {
+            ContentValues pet = generator.nextPet();
+            mCursor.addRow(new Object[]{(long) i, pet.getAsString(PetEntry.COLUMN_PET_NAME),
+                    pet.getAsString(PetEntry.COLUMN_PET_BREED), null});
+        }
+        mShownPets = Pet.fromCursor(mCursor);
+    }
+
+    @Benchmark
+    public List<Pet> readPets() {
+        return Pet.fromCursor(mCursor);
+    }
+
+    @Benchmark
+    public int reloadUnchangedPets() {
+        List<Pet> pets = Pet.fromCursor(mCursor);
+        int unchanged = 0;
+        for (int i = 0; i < pets.size(); i++) {
+            if (pets.get(i).equals(mShownPets.get(i))) {
+                unchanged++;
+            }
+        }
+        return unchanged;
+    }
+}
@@ -0,0 +1,34 @@
+package com.msaye7.pets.data;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The warm-up of PetProvider at startup: opening pets.db with a new {@link PetDbHelper}, which
+ * configures the connection and checks the version of the schema, and reading the first page
+ * of the catalog with the catalog projection. The files are in the page cache of the OS, so it
+ * measures the work of SQLite rather than the reads of a cold device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PetColdStartBenchmark {
+
+    @Benchmark
+    public void openAndQueryFirstPage(PetDatabaseState state, Blackhole blackhole) {
+        PetDbHelper dbHelper = new PetDbHelper(null, state.mDatabaseFile.getPath());
+        try {
+            PetQuery query = PetQuery.parse(PetEntry.buildPageUri(0, PetEntry.CATALOG_PAGE_SIZE));
+            PetQueryBenchmark.readAll(PetProvider.readPets(dbHelper.getWritableDatabase(), query,
+                    PetEntry.CATALOG_PROJECTION, null, null, null), blackhole);
+        } finally {
+            dbHelper.close();
+        }
+    }
+}
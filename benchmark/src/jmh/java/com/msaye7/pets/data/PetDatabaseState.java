@@ -0,0 +1,174 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * pets.db created by {@link PetDbHelper#onCreate}, filled with tableSize pets of
+ * {@link PetDataGenerator}, the same pets the app generates from the same seed. The pets are
+ * written like PetProvider writes them: validated by {@link PetValidator}, with their breeds
+ * encoded by {@link BreedDictionary}, through the compiled statements of {@link PetStatements}.
+ * The caches, change notifications and checkpoints of the provider are left out.
+ *
+ * SQLite runs through sqlite-jdbc, behind the SQLiteDatabase stand-in of the benchmark module.
+ * The filled database is written once per trial and copied before every iteration, so the
+ * benchmarks that write start each iteration from the same table.
+ */
+@State(Scope.Thread)
+public class PetDatabaseState {
+
+    @Param({"100", "1000", "10000"})
+    public int tableSize;
+
+    private File mDirectory;
+    private File mTemplate;
+
+    /** the database file of the iteration, copied from the template. */
+    File mDatabaseFile;
+
+    PetDbHelper mDbHelper;
+    SQLiteDatabase mDatabase;
+
+    final BreedDictionary mBreeds = new BreedDictionary();
+    final PetStatements mStatements = new PetStatements();
+
+    final Random mRandom = new Random(42);
+
+    /** the pets written by the benchmarks, different from the pets of the table. */
+    final PetDataGenerator mGenerator = new PetDataGenerator(42);
+
+    @Setup(Level.Trial)
+    public void createTemplate() throws IOException {
+        mDirectory = Files.createTempDirectory("pets-benchmark").toFile();
+        mTemplate = new File(mDirectory, "template.db");
+
+        // closing the database checkpoints the WAL, so the template is a single file.
+        open(mTemplate);
+        try {
+            PetDataGenerator generator = new PetDataGenerator(PetDataGenerator.DEFAULT_SEED);
+            for (int inserted = 0; inserted < tableSize; ) {
+                ContentValues[] chunk = new ContentValues[Math.min(PetDataGenerator.CHUNK_SIZE, tableSize - inserted)];
+                for (int i = 0; i < chunk.length; i++) {
+                    chunk[i] = generator.nextPet();
+                }
+                inserted += insertPets(chunk);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openDatabase() throws IOException {
+        mDatabaseFile = new File(mDirectory, PetDbHelper.DATABASE_NAME);
+        SQLiteDatabase.deleteDatabase(mDatabaseFile);
+        Files.copy(mTemplate.toPath(), mDatabaseFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open(mDatabaseFile);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeDatabase() {
+        close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabases() {
+        SQLiteDatabase.deleteDatabase(new File(mDirectory, PetDbHelper.DATABASE_NAME));
+        SQLiteDatabase.deleteDatabase(mTemplate);
+        mDirectory.delete();
+    }
+
+    /**
+     * Returns the _ID of a random pet of the filled table.
+     */
+    long randomId() {
+        return 1 + mRandom.nextInt(tableSize);
+    }
+
+    /**
+     * Inserts a pet like PetProvider#insert.
+     *
+     * @return the _ID of the new pet, or -1 if it was rejected or couldn't be inserted.
+     */
+    long insertPet(ContentValues pet) {
+        if (PetValidator.isRejected(PetValidator.validate(pet))) {
+            return -1;
+        }
+        return mStatements.insert(mDatabase, mBreeds.encode(mDatabase, pet));
+    }
+
+    /**
+     * Inserts the pets in one transaction like PetProvider#bulkInsert, skipping the rejected ones.
+     *
+     * @return the number of inserted pets.
+     */
+    int insertPets(ContentValues[] pets) {
+        int inserted = 0;
+        boolean committed = false;
+        mDatabase.beginTransactionNonExclusive();
+        try {
+            for (ContentValues pet : pets) {
+                if (PetValidator.isRejected(PetValidator.validate(pet))) {
+                    continue;
+                }
+                if (mStatements.insert(mDatabase, mBreeds.encode(mDatabase, pet)) != -1) {
+                    inserted++;
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            mDatabase.endTransaction();
+            mBreeds.endTransaction(committed);
+        }
+        return inserted;
+    }
+
+    /**
+     * Updates the pet with the given _ID like PetProvider#update of a PET_ID uri.
+     *
+     * @return the number of updated pets, 0 or 1.
+     */
+    int updatePet(long id, ContentValues pet) {
+        if (PetValidator.isRejected(PetValidator.validate(pet))) {
+            return 0;
+        }
+        return mStatements.update(mDatabase, id, mBreeds.encode(mDatabase, pet));
+    }
+
+    /**
+     * Deletes the pet with the given _ID like PetProvider#delete of a PET_ID uri.
+     *
+     * @return the number of deleted pets, 0 or 1.
+     */
+    int deletePet(long id) {
+        return mStatements.delete(mDatabase, id);
+    }
+
+    private void open(File file) {
+        mDbHelper = new PetDbHelper(null, file.getPath());
+        mDatabase = mDbHelper.getWritableDatabase();
+    }
+
+    /**
+     * Closes the database and forgets what was kept for it, like a restore does in PetProvider.
+     */
+    private void close() {
+        mStatements.close();
+        mBreeds.clear();
+        mDbHelper.close();
+    }
+}
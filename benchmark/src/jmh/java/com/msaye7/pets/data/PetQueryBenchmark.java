@@ -0,0 +1,76 @@
+package com.msaye7.pets.data;
+
+import android.database.Cursor;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries of PetProvider: the row of a PET_ID uri without the row cache, a page of the catalog
+ * in each of its orders and the whole PETS table with the catalog projection. They run the SQL
+ * of {@link PetProvider#readPet} and {@link PetProvider#readPets}, the query cache is skipped
+ * and every page is read from the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PetQueryBenchmark {
+
+    /** pets per page, as CatalogActivity loads them. */
+    private static final int PAGE_SIZE = PetEntry.CATALOG_PAGE_SIZE;
+
+    @Benchmark
+    public void queryPet(PetDatabaseState state, Blackhole blackhole) {
+        readAll(PetProvider.readPet(state.mDatabase, state.randomId()), blackhole);
+    }
+
+    @Benchmark
+    public void queryPage(PetDatabaseState state, Blackhole blackhole) {
+        queryPage(state, PetEntry.SORT_ID, PetEntry.GENDER_ANY, blackhole);
+    }
+
+    @Benchmark
+    public void queryPageByName(PetDatabaseState state, Blackhole blackhole) {
+        queryPage(state, PetEntry.SORT_NAME, PetEntry.GENDER_ANY, blackhole);
+    }
+
+    @Benchmark
+    public void queryFemalePageByWeight(PetDatabaseState state, Blackhole blackhole) {
+        queryPage(state, PetEntry.SORT_WEIGHT, PetEntry.GENDER_FEMALE, blackhole);
+    }
+
+    @Benchmark
+    public void queryAllPets(PetDatabaseState state, Blackhole blackhole) {
+        readAll(PetProvider.readPets(state.mDatabase, PetQuery.parse(PetEntry.CONTENT_URI),
+                PetEntry.CATALOG_PROJECTION, null, null, null), blackhole);
+    }
+
+    /**
+     * Reads the page after a random pet in the given order, as the catalog loads the pages
+     * after the first one.
+     */
+    private static void queryPage(PetDatabaseState state, String sort, int gender, Blackhole blackhole) {
+        PetQuery query = PetQuery.parse(PetEntry.buildPageUri(state.randomId(), PAGE_SIZE, sort, gender));
+        readAll(PetProvider.readPets(state.mDatabase, query, PetEntry.CATALOG_PROJECTION, null, null, null),
+                blackhole);
+    }
+
+    static void readAll(Cursor cursor, Blackhole blackhole) {
+        try {
+            int columns = cursor.getColumnCount();
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < columns; i++) {
+                    blackhole.consume(cursor.getString(i));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.msaye7.pets.data;
+
+import android.content.ContentValues;
+
+import com.msaye7.pets.data.PetContract.PetEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes of PetProvider: single inserts, bulkInsert chunks, updates and deletes of pets,
+ * through the validation, breed dictionary and compiled statements of the provider and the
+ * search, statistics and change log triggers they fire.
+ *
+ * The inserts grow the table during an iteration, tableSize is the size it starts from.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PetWriteBenchmark {
+
+    /** rows per bulkInsert transaction, as PetImporter writes them. */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * PetProvider#insert: one row in its own transaction.
+     */
+    @Benchmark
+    public long insertPet(PetDatabaseState state) {
+        return state.insertPet(state.mGenerator.nextPet());
+    }
+
+    /**
+     * PetProvider#bulkInsert: a chunk of rows in one transaction. Reported per row.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int bulkInsertPets(PetDatabaseState state) {
+        ContentValues[] pets = new ContentValues[BATCH_SIZE];
+        for (int i = 0; i < pets.length; i++) {
+            pets[i] = state.mGenerator.nextPet();
+        }
+        return state.insertPets(pets);
+    }
+
+    /**
+     * PetProvider#update of a PET_ID uri, changing every column.
+     */
+    @Benchmark
+    public int updatePet(PetDatabaseState state) {
+        return state.updatePet(state.randomId(), state.mGenerator.nextPet());
+    }
+
+    /**
+     * PetProvider#delete of a PET_ID uri. The pet is inserted back with the same _ID so the
+     * table keeps its size, subtract insertPet for the cost of the delete alone.
+     */
+    @Benchmark
+    public long deleteAndReinsertPet(PetDatabaseState state) {
+        long id = state.randomId();
+        int deleted = state.deletePet(id);
+
+        ContentValues pet = state.mGenerator.nextPet();
+        pet.put(PetEntry._ID, id);
+        return deleted + state.insertPet(pet);
+    }
+}
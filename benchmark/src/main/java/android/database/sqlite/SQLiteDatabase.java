@@ -0,0 +1,372 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.Properties;
+
+/**
+ * Stand-in of the Android SQLiteDatabase for the benchmarks, backed by a sqlite-jdbc connection.
+ * The SQLiteDatabase of the android-all jar calls the SQLite of the device through JNI, which a
+ * plain JVM doesn't have, so the benchmark module replaces it with this class. It has the part
+ * of the API the data classes of the app use, with the same SQL and transaction semantics, so
+ * {@link SQLiteOpenHelper}, PetDbHelper and PetStatements run unchanged.
+ *
+ * Unlike the Android class, it has a single connection and must only be used by one thread.
+ */
+public final class SQLiteDatabase {
+
+    public static final int OPEN_READWRITE = 0x00000000;
+    public static final int OPEN_READONLY = 0x00000001;
+    public static final int CREATE_IF_NECESSARY = 0x10000000;
+
+    /** the flags of sqlite3_open_v2, read by sqlite-jdbc from the open_mode property. */
+    private static final int SQLITE_OPEN_READONLY = 0x01;
+    private static final int SQLITE_OPEN_READWRITE = 0x02;
+    private static final int SQLITE_OPEN_CREATE = 0x04;
+
+    /**
+     * Used where Android takes a factory of cursors, the stand-in only has the default one.
+     */
+    public interface CursorFactory {
+    }
+
+    private final String mPath;
+    private final Connection mConnection;
+
+    /** the last inserted rowid of the connection, read after every insert. */
+    private final PreparedStatement mLastInsertRowId;
+
+    /** whether each nested transaction was marked successful, the innermost one on top. */
+    private final ArrayDeque<Boolean> mTransactions = new ArrayDeque<>();
+
+    /** whether a nested transaction ended without being marked successful. */
+    private boolean mTransactionFailed;
+
+    private SQLiteDatabase(String path, int flags) {
+        mPath = path;
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", String.valueOf((flags & OPEN_READONLY) != 0 ? SQLITE_OPEN_READONLY
+                : SQLITE_OPEN_READWRITE | ((flags & CREATE_IF_NECESSARY) != 0 ? SQLITE_OPEN_CREATE : 0)));
+        try {
+            mConnection = DriverManager.getConnection("jdbc:sqlite:" + path, properties);
+            mLastInsertRowId = mConnection.prepareStatement("SELECT last_insert_rowid()");
+        } catch (SQLException e) {
+            throw new SQLiteException("Failed to open " + path, e);
+        }
+    }
+
+    public static SQLiteDatabase openDatabase(String path, CursorFactory factory, int flags) {
+        return new SQLiteDatabase(path, flags);
+    }
+
+    public static SQLiteDatabase openOrCreateDatabase(File file, CursorFactory factory) {
+        return openOrCreateDatabase(file.getPath(), factory);
+    }
+
+    public static SQLiteDatabase openOrCreateDatabase(String path, CursorFactory factory) {
+        return new SQLiteDatabase(path, OPEN_READWRITE | CREATE_IF_NECESSARY);
+    }
+
+    /**
+     * Deletes the database file with its journal, WAL and shared memory files.
+     */
+    public static boolean deleteDatabase(File file) {
+        boolean deleted = file.delete();
+        deleted |= new File(file.getPath() + "-journal").delete();
+        deleted |= new File(file.getPath() + "-shm").delete();
+        deleted |= new File(file.getPath() + "-wal").delete();
+        return deleted;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public boolean isOpen() {
+        try {
+            return !mConnection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    public void close() {
+        try {
+            mLastInsertRowId.close();
+            mConnection.close();
+        } catch (SQLException e) {
+            throw new SQLiteException("Failed to close " + mPath, e);
+        }
+    }
+
+    public int getVersion() {
+        return (int) longForQuery("PRAGMA user_version");
+    }
+
+    public void setVersion(int version) {
+        execSQL("PRAGMA user_version = " + version);
+    }
+
+    /**
+     * Begins a transaction in EXCLUSIVE mode, or a nested one if a transaction is running.
+     */
+    public void beginTransaction() {
+        beginTransaction("BEGIN EXCLUSIVE");
+    }
+
+    /**
+     * Begins a transaction in IMMEDIATE mode, or a nested one if a transaction is running.
+     */
+    public void beginTransactionNonExclusive() {
+        beginTransaction("BEGIN IMMEDIATE");
+    }
+
+    private void beginTransaction(String sql) {
+        if (mTransactions.isEmpty()) {
+            execSQL(sql);
+            mTransactionFailed = false;
+        }
+        mTransactions.push(false);
+    }
+
+    public void setTransactionSuccessful() {
+        if (mTransactions.isEmpty()) {
+            throw new IllegalStateException("Cannot perform this operation because there is no current transaction.");
+        }
+        if (mTransactions.peek()) {
+            throw new IllegalStateException("Cannot perform this operation because the transaction has "
+                    + "already been marked successful.");
+        }
+        mTransactions.pop();
+        mTransactions.push(true);
+    }
+
+    /**
+     * Ends the innermost transaction. The outermost one commits if every transaction was marked
+     * successful, and rolls back otherwise.
+     */
+    public void endTransaction() {
+        if (mTransactions.isEmpty()) {
+            throw new IllegalStateException("Cannot perform this operation because there is no current transaction.");
+        }
+        if (!mTransactions.pop()) {
+            mTransactionFailed = true;
+        }
+        if (mTransactions.isEmpty()) {
+            execSQL(mTransactionFailed ? "ROLLBACK" : "COMMIT");
+        }
+    }
+
+    public boolean inTransaction() {
+        return !mTransactions.isEmpty();
+    }
+
+    public void execSQL(String sql) {
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+        try (PreparedStatement statement = mConnection.prepareStatement(sql)) {
+            for (int i = 0; i < bindArgs.length; i++) {
+                bind(statement, i + 1, bindArgs[i]);
+            }
+            statement.execute();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        return new SQLiteStatement(this, sql);
+    }
+
+    /**
+     * Runs the query and reads all of its rows into a cursor, like the CursorWindow of Android
+     * is filled on the first move of a cursor.
+     */
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        try (PreparedStatement statement = mConnection.prepareStatement(sql)) {
+            if (selectionArgs != null) {
+                for (int i = 0; i < selectionArgs.length; i++) {
+                    statement.setString(i + 1, selectionArgs[i]);
+                }
+            }
+            try (ResultSet rows = statement.executeQuery()) {
+                ResultSetMetaData metaData = rows.getMetaData();
+                String[] columns = new String[metaData.getColumnCount()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = metaData.getColumnLabel(i + 1);
+                }
+
+                MatrixCursor cursor = new MatrixCursor(columns);
+                while (rows.next()) {
+                    Object[] row = new Object[columns.length];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rows.getObject(i + 1);
+                    }
+                    cursor.addRow(row);
+                }
+                return cursor;
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy) {
+        return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+    }
+
+    public Cursor query(boolean distinct, String table, String[] columns, String selection,
+                        String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
+        return rawQuery(SQLiteQueryBuilder.buildQueryString(distinct, table, columns, selection, groupBy,
+                having, orderBy, limit), selectionArgs);
+    }
+
+    /**
+     * @return the rowid of the new row, or -1 if it couldn't be inserted.
+     */
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        try {
+            return insertOrThrow(table, nullColumnHack, values);
+        } catch (SQLiteException e) {
+            return -1;
+        }
+    }
+
+    public long insertOrThrow(String table, String nullColumnHack, ContentValues values) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        Object[] bindArgs = new Object[values.size()];
+        int i = 0;
+        for (String column : values.keySet()) {
+            sql.append(i > 0 ? ", " : "").append(column);
+            bindArgs[i++] = values.get(column);
+        }
+        if (bindArgs.length == 0) {
+            sql.append(nullColumnHack).append(") VALUES (NULL)");
+        } else {
+            sql.append(") VALUES (");
+            for (i = 0; i < bindArgs.length; i++) {
+                sql.append(i > 0 ? ", ?" : "?");
+            }
+            sql.append(")");
+        }
+
+        SQLiteStatement statement = compileStatement(sql.toString());
+        try {
+            for (i = 0; i < bindArgs.length; i++) {
+                statement.bind(i + 1, bindArgs[i]);
+            }
+            return statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        int i = 0;
+        for (String column : values.keySet()) {
+            sql.append(i++ > 0 ? ", " : "").append(column).append(" = ?");
+        }
+        if (whereClause != null && !whereClause.isEmpty()) {
+            sql.append(" WHERE ").append(whereClause);
+        }
+
+        SQLiteStatement statement = compileStatement(sql.toString());
+        try {
+            i = 1;
+            for (String column : values.keySet()) {
+                statement.bind(i++, values.get(column));
+            }
+            if (whereArgs != null) {
+                for (String arg : whereArgs) {
+                    statement.bind(i++, arg);
+                }
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        SQLiteStatement statement = compileStatement("DELETE FROM " + table
+                + (whereClause != null && !whereClause.isEmpty() ? " WHERE " + whereClause : ""));
+        try {
+            statement.bindAllArgsAsStrings(whereArgs);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    PreparedStatement prepare(String sql) {
+        try {
+            return mConnection.prepareStatement(sql);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the rowid of the last insert of the connection.
+     */
+    long getLastInsertRowId() throws SQLException {
+        try (ResultSet rows = mLastInsertRowId.executeQuery()) {
+            rows.next();
+            return rows.getLong(1);
+        }
+    }
+
+    private long longForQuery(String sql) {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet rows = statement.executeQuery(sql)) {
+            rows.next();
+            return rows.getLong(1);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Binds a value the way android.database.DatabaseUtils#bindObjectToProgram does.
+     */
+    static void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.NULL);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.setDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.setLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.setLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.setBytes(index, (byte[]) value);
+        } else {
+            statement.setString(index, value.toString());
+        }
+    }
+}
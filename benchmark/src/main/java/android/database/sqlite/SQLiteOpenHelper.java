@@ -0,0 +1,101 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * Stand-in of the Android SQLiteOpenHelper for the benchmarks, see {@link SQLiteDatabase}. It
+ * opens, creates and upgrades the database in the same order as Android: onConfigure, then
+ * onCreate, onUpgrade or onDowngrade in an EXCLUSIVE transaction, then onOpen.
+ *
+ * There is no Context on a plain JVM, so the name is the path of the database file.
+ */
+public abstract class SQLiteOpenHelper implements AutoCloseable {
+
+    private final String mName;
+    private final int mNewVersion;
+
+    private boolean mEnableWriteAheadLogging;
+    private SQLiteDatabase mDatabase;
+
+    public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
+        if (version < 1) {
+            throw new IllegalArgumentException("Version must be >= 1, was " + version);
+        }
+        mName = name;
+        mNewVersion = version;
+    }
+
+    public String getDatabaseName() {
+        return mName;
+    }
+
+    public synchronized void setWriteAheadLoggingEnabled(boolean enabled) {
+        mEnableWriteAheadLogging = enabled;
+    }
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        if (mDatabase != null && mDatabase.isOpen()) {
+            return mDatabase;
+        }
+
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(mName, null);
+        try {
+            if (mEnableWriteAheadLogging) {
+                // the journal and sync modes Android gives to WAL databases.
+                db.execSQL("PRAGMA journal_mode = WAL");
+                db.execSQL("PRAGMA synchronous = NORMAL");
+            }
+            onConfigure(db);
+
+            int version = db.getVersion();
+            if (version != mNewVersion) {
+                db.beginTransaction();
+                try {
+                    if (version == 0) {
+                        onCreate(db);
+                    } else if (version > mNewVersion) {
+                        onDowngrade(db, version, mNewVersion);
+                    } else {
+                        onUpgrade(db, version, mNewVersion);
+                    }
+                    db.setVersion(mNewVersion);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            onOpen(db);
+        } catch (RuntimeException e) {
+            db.close();
+            throw e;
+        }
+        mDatabase = db;
+        return db;
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        return getWritableDatabase();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mDatabase != null && mDatabase.isOpen()) {
+            mDatabase.close();
+        }
+        mDatabase = null;
+    }
+
+    public void onConfigure(SQLiteDatabase db) {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        throw new SQLiteException("Can't downgrade database from version " + oldVersion + " to " + newVersion);
+    }
+
+    public void onOpen(SQLiteDatabase db) {
+    }
+}
@@ -0,0 +1,80 @@
+package android.database.sqlite;
+
+import java.io.Closeable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Stand-in of the Android SQLiteProgram for the benchmarks, a statement compiled on the
+ * sqlite-jdbc connection of a {@link SQLiteDatabase}. Like on Android, the SQL is compiled when
+ * the program is created and the bound arguments stay until they are cleared.
+ */
+public abstract class SQLiteProgram implements Closeable {
+
+    final SQLiteDatabase mDatabase;
+    final PreparedStatement mStatement;
+
+    SQLiteProgram(SQLiteDatabase db, String sql) {
+        mDatabase = db;
+        mStatement = db.prepare(sql);
+    }
+
+    public void bindNull(int index) {
+        bind(index, null);
+    }
+
+    public void bindLong(int index, long value) {
+        bind(index, value);
+    }
+
+    public void bindDouble(int index, double value) {
+        bind(index, value);
+    }
+
+    public void bindString(int index, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        bind(index, value);
+    }
+
+    public void bindBlob(int index, byte[] value) {
+        if (value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        bind(index, value);
+    }
+
+    public void bindAllArgsAsStrings(String[] bindArgs) {
+        if (bindArgs != null) {
+            for (int i = bindArgs.length; i != 0; i--) {
+                bindString(i, bindArgs[i - 1]);
+            }
+        }
+    }
+
+    public void clearBindings() {
+        try {
+            mStatement.clearParameters();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            mStatement.close();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    void bind(int index, Object value) {
+        try {
+            SQLiteDatabase.bind(mStatement, index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+}
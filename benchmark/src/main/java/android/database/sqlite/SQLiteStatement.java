@@ -0,0 +1,74 @@
+package android.database.sqlite;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Stand-in of the Android SQLiteStatement for the benchmarks, see {@link SQLiteDatabase}.
+ */
+public final class SQLiteStatement extends SQLiteProgram {
+
+    SQLiteStatement(SQLiteDatabase db, String sql) {
+        super(db, sql);
+    }
+
+    public void execute() {
+        try {
+            mStatement.execute();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of rows changed by the statement.
+     */
+    public int executeUpdateDelete() {
+        try {
+            return mStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the rowid of the inserted row, or -1 if the statement inserted nothing.
+     */
+    public long executeInsert() {
+        try {
+            return mStatement.executeUpdate() > 0 ? mDatabase.getLastInsertRowId() : -1;
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the first column of the first row of the query.
+     * @throws SQLiteDoneException if the query returns no rows.
+     */
+    public long simpleQueryForLong() {
+        try (ResultSet rows = mStatement.executeQuery()) {
+            if (!rows.next()) {
+                throw new SQLiteDoneException();
+            }
+            return rows.getLong(1);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the first column of the first row of the query.
+     * @throws SQLiteDoneException if the query returns no rows.
+     */
+    public String simpleQueryForString() {
+        try (ResultSet rows = mStatement.executeQuery()) {
+            if (!rows.next()) {
+                throw new SQLiteDoneException();
+            }
+            return rows.getString(1);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+}